@@ -0,0 +1,225 @@
+package engine.index;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.IntFunction;
+
+/**
+ * An in-memory index over a dictionary segment (segmentXXa) written by BlockDictionaryWriter.
+ *
+ * The file starts with the header — MAGIC, number of blocks, number of words, the page the block index starts at and the
+ * number of bytes of the block index. The blocks follow, each one starts at the beginning of a page with the number of
+ * records and the number of used bytes of the block, followed by the sorted records. A block takes one page, unless
+ * a single record doesn't fit in a page. The block index stores for every block — the first page of the block, the number
+ * of pages of the block, length(first word), first word.
+ *
+ * Dictionaries written before the block format have the total number of bytes of the records on the first page instead
+ * of MAGIC, which is never a valid byte count, so both formats can be told apart by their first integer. Their records
+ * don't have the largest impact of the posting list, nor do the ones of the block dictionaries starting with
+ * MAGIC_WITHOUT_IMPACTS, written before the records had it.
+ *
+ * Pages are read through a function from page number to a ByteBuffer with capacity = PAGE_SIZE.
+ *
+ */
+
+public class BlockDictionary {
+
+    static final int MAGIC = 0xB10C0D1D;
+    static final int MAGIC_WITHOUT_IMPACTS = 0xB10C0D1C;
+    static final int HEADER_SIZE = 5 * 4;
+    static final int BLOCK_HEADER_SIZE = 2 * 4;
+
+    private final String[] firstWords;
+    private final int[] blockPages; // the first page of every block
+    private final int[] blockLengths; // the number of pages of every block
+    private final int numWords;
+    private final boolean hasImpacts; // whether the records have the largest impact of their posting list
+
+    private BlockDictionary(String[] firstWords, int[] blockPages, int[] blockLengths, int numWords,
+                            boolean hasImpacts) {
+        this.firstWords = firstWords;
+        this.blockPages = blockPages;
+        this.blockLengths = blockLengths;
+        this.numWords = numWords;
+        this.hasImpacts = hasImpacts;
+    }
+
+    /**
+     * Checks whether the first page of a dictionary file is the header of the block format.
+     */
+
+    public static boolean isBlockFormat(ByteBuffer firstPage) {
+        return firstPage.capacity() >= 4
+                && (firstPage.getInt(0) == MAGIC || firstPage.getInt(0) == MAGIC_WITHOUT_IMPACTS);
+    }
+
+    /**
+     * Gets the number of pages needed to store a number of bytes.
+     */
+
+    static int numPages(int numBytes) {
+        return (numBytes + PageFileChannel.PAGE_SIZE - 1) / PageFileChannel.PAGE_SIZE;
+    }
+
+    /**
+     * read a range of bytes starting at the beginning of a page, which may span several pages
+     *
+     * @param pageReader reads a page of the dictionary file
+     * @param pageID the first page being read
+     * @param length the number of bytes being read
+     * @return a buffer with position 0 and limit length
+     */
+
+    static ByteBuffer readBytes(IntFunction<ByteBuffer> pageReader, int pageID, int length) {
+        if (length == 0) {
+            return ByteBuffer.allocate(0);
+        }
+        if (length <= PageFileChannel.PAGE_SIZE) {
+            ByteBuffer page = pageReader.apply(pageID).duplicate();
+            page.clear();
+            page.limit(length);
+            return page.slice();
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(length);
+        for (; bytes.hasRemaining(); pageID++) {
+            ByteBuffer page = pageReader.apply(pageID).duplicate();
+            page.clear();
+            page.limit(Math.min(page.capacity(), bytes.remaining()));
+            bytes.put(page);
+        }
+        bytes.flip();
+        return bytes;
+    }
+
+    /**
+     * Loads the block index of a dictionary file.
+     *
+     * @param pageReader reads a page of the dictionary file
+     * @return the block index, null if the dictionary is in the legacy format
+     */
+
+    public static BlockDictionary load(IntFunction<ByteBuffer> pageReader) {
+        if (!isBlockFormat(pageReader.apply(0))) {
+            return null;
+        }
+        ByteBuffer header = readBytes(pageReader, 0, HEADER_SIZE);
+        boolean hasImpacts = header.getInt() == MAGIC;
+        int numBlocks = header.getInt();
+        int numWords = header.getInt();
+        int indexPage = header.getInt();
+        int indexBytes = header.getInt();
+
+        ByteBuffer indexBuffer = readBytes(pageReader, indexPage, indexBytes);
+        String[] firstWords = new String[numBlocks];
+        int[] blockPages = new int[numBlocks];
+        int[] blockLengths = new int[numBlocks];
+        for (int i = 0; i < numBlocks; i++) {
+            blockPages[i] = indexBuffer.getInt();
+            blockLengths[i] = indexBuffer.getInt();
+            byte[] word = new byte[indexBuffer.getInt()];
+            indexBuffer.get(word);
+            firstWords[i] = new String(word, StandardCharsets.UTF_8);
+        }
+        return new BlockDictionary(firstWords, blockPages, blockLengths, numWords, hasImpacts);
+    }
+
+    /**
+     * Gets the number of words in the dictionary.
+     */
+
+    public int getNumWords() {
+        return numWords;
+    }
+
+    /**
+     * Checks whether the records have the largest impact of their posting list, false if they were written before.
+     */
+
+    public boolean hasImpacts() {
+        return hasImpacts;
+    }
+
+    /**
+     * Gets the number of blocks in the dictionary.
+     */
+
+    public int getNumBlocks() {
+        return firstWords.length;
+    }
+
+    /**
+     * read a block, with position at its first record and limit at the end of its last record
+     */
+
+    private ByteBuffer readBlock(IntFunction<ByteBuffer> pageReader, int blockID) {
+        ByteBuffer block = readBytes(pageReader, blockPages[blockID], blockLengths[blockID] * PageFileChannel.PAGE_SIZE);
+        block.limit(block.getInt(4));
+        block.position(BLOCK_HEADER_SIZE);
+        return block;
+    }
+
+    /**
+     * Finds a word by a binary search on the block index and a scan of the only block that could contain it.
+     *
+     * @param pageReader reads a page of the dictionary file
+     * @param word the word to look for
+     * @param entry the record the word info is read into
+     * @return true if the word is in the dictionary
+     */
+
+    public boolean find(IntFunction<ByteBuffer> pageReader, String word, DictionaryEntry entry) {
+        // find the last block whose first word is not larger than the word
+        int low = 0;
+        int high = firstWords.length - 1;
+        int blockID = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (firstWords[mid].compareTo(word) <= 0) {
+                blockID = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (blockID < 0) {
+            return false;
+        }
+
+        ByteBuffer block = readBlock(pageReader, blockID);
+        while (block.hasRemaining()) {
+            entry.readOneWord(block, hasImpacts);
+            int cmp = entry.getWord().compareTo(word);
+            if (cmp == 0) {
+                return true;
+            }
+            if (cmp > 0) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the records of all the blocks into one buffer of packed records, in the same layout as the remaining
+     * pages of a legacy dictionary, so that the records can be read one by one until the buffer has no remaining.
+     *
+     * @param pageReader reads a page of the dictionary file
+     * @return the buffer with position 0 and limit the total number of bytes of the records
+     */
+
+    public ByteBuffer readAllWords(IntFunction<ByteBuffer> pageReader) {
+        int total = 0;
+        ByteBuffer[] blocks = new ByteBuffer[firstWords.length];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = readBlock(pageReader, i);
+            total += blocks[i].remaining();
+        }
+        ByteBuffer words = ByteBuffer.allocate(total);
+        for (ByteBuffer block: blocks) {
+            words.put(block);
+        }
+        words.flip();
+        return words;
+    }
+
+}
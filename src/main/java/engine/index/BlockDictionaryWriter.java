@@ -0,0 +1,156 @@
+package engine.index;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a dictionary segment (segmentXXa) in the block format read by BlockDictionary.
+ *
+ * Words must be added in ascending order. Records are packed into blocks of one page and a record never spans two
+ * blocks. When the writer is closed, the block index is appended and the header is written.
+ *
+ */
+
+public class BlockDictionaryWriter implements AutoCloseable {
+
+    private final PageFileChannel pfc;
+    private ByteBuffer block;
+    private final List<byte[]> firstWords;
+    private final List<Integer> blockPages;
+    private final List<Integer> blockLengths;
+    private final int headerPages;
+    private int blockWords; // the number of records in the current block
+    private int numWords;
+    private String lastWord;
+
+    public BlockDictionaryWriter(PageFileChannel pfc) {
+        Preconditions.checkArgument(pfc.getNumPages() == 0, "the dictionary file must be empty");
+        this.pfc = pfc;
+        this.block = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+        this.firstWords = new ArrayList<>();
+        this.blockPages = new ArrayList<>();
+        this.blockLengths = new ArrayList<>();
+        this.blockWords = 0;
+        this.numWords = 0;
+
+        // reserve the first pages for the header, it is written when the writer is closed
+        this.headerPages = BlockDictionary.numPages(BlockDictionary.HEADER_SIZE);
+        for (int i = 0; i < headerPages; i++) {
+            pfc.appendPage(ByteBuffer.allocate(PageFileChannel.PAGE_SIZE));
+        }
+        block.position(BlockDictionary.BLOCK_HEADER_SIZE);
+    }
+
+    /**
+     * Adds a record to the dictionary, records must be added in ascending order of their words.
+     *
+     * @param entry the record being added
+     */
+
+    public void add(DictionaryEntry entry) {
+        Preconditions.checkArgument(lastWord == null || lastWord.compareTo(entry.getWord()) < 0,
+                "words must be added in ascending order");
+        int size = entry.getByteSize();
+
+        // if the record doesn't fit in the current block, start a new one
+        if (blockWords > 0 && block.remaining() < size) {
+            finishBlock();
+        }
+
+        // a single record larger than a page takes a block of several pages
+        if (block.remaining() < size) {
+            int capacity = BlockDictionary.numPages(BlockDictionary.BLOCK_HEADER_SIZE + size) * PageFileChannel.PAGE_SIZE;
+            block = ByteBuffer.allocate(capacity);
+            block.position(BlockDictionary.BLOCK_HEADER_SIZE);
+        }
+
+        if (blockWords == 0) {
+            firstWords.add(entry.getWord().getBytes(StandardCharsets.UTF_8));
+        }
+        entry.writeOneWord(block);
+        blockWords += 1;
+        numWords += 1;
+        lastWord = entry.getWord();
+    }
+
+    /**
+     * Adds all the records in a buffer of packed records, from its position to its limit.
+     *
+     * @param bb the buffer being read
+     * @param entry a reusable record used to decode the buffer
+     */
+
+    public void addAll(ByteBuffer bb, DictionaryEntry entry) {
+        while (bb.hasRemaining()) {
+            entry.readOneWord(bb);
+            add(entry);
+        }
+    }
+
+    /**
+     * write the current block with its number of records and used bytes, then clear it for the next block
+     */
+
+    private void finishBlock() {
+        block.putInt(0, blockWords);
+        block.putInt(4, block.position());
+        int numPages = BlockDictionary.numPages(block.position());
+        blockPages.add(pfc.getNumPages());
+        blockLengths.add(numPages);
+        if (block.capacity() == PageFileChannel.PAGE_SIZE) {
+            pfc.appendPage(block);
+        } else {
+            pfc.appendAllBytes(block);
+            block = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+        }
+        block.clear();
+        block.position(BlockDictionary.BLOCK_HEADER_SIZE);
+        blockWords = 0;
+    }
+
+    /**
+     * Writes the last block, the block index and the header. The file channel is not closed.
+     */
+
+    @Override
+    public void close() {
+        if (blockWords > 0) {
+            finishBlock();
+        }
+        int numBlocks = firstWords.size();
+        int indexPage = pfc.getNumPages();
+
+        // the block index is page(block), number of pages(block), len(first word), first word of every block
+        int indexBytes = 0;
+        for (byte[] word: firstWords) {
+            indexBytes += 3 * 4 + word.length;
+        }
+        if (indexBytes > 0) {
+            ByteBuffer indexBuffer = ByteBuffer.allocate(indexBytes);
+            for (int i = 0; i < numBlocks; i++) {
+                indexBuffer.putInt(blockPages.get(i));
+                indexBuffer.putInt(blockLengths.get(i));
+                indexBuffer.putInt(firstWords.get(i).length);
+                indexBuffer.put(firstWords.get(i));
+            }
+            pfc.appendAllBytes(indexBuffer);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(headerPages * PageFileChannel.PAGE_SIZE);
+        header.putInt(BlockDictionary.MAGIC);
+        header.putInt(numBlocks);
+        header.putInt(numWords);
+        header.putInt(indexPage);
+        header.putInt(indexBytes);
+        for (int i = 0; i < headerPages; i++) {
+            ByteBuffer page = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+            page.put(header.array(), i * PageFileChannel.PAGE_SIZE, PageFileChannel.PAGE_SIZE);
+            pfc.writePage(i, page);
+        }
+    }
+
+}
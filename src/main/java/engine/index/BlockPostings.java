@@ -0,0 +1,418 @@
+package engine.index;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The block format of a posting list of the inverted index in segmentXXb, and a reader of one posting list.
+ *
+ * The (docID, length(position list)) pairs of a posting list are grouped into blocks of BLOCK_SIZE postings. A list of
+ * more than one block is preceded by its skip list: level 0 has one entry per block, level l + 1 one entry per
+ * SKIP_INTERVAL entries of level l, up to a level of at most SKIP_INTERVAL entries. Every entry is the last docID of the
+ * blocks it covers, the offset of the first of them, in bytes from the first posting, the largest length of position
+ * list of their postings, and the largest impact of their postings: the length of the position list divided by the norm
+ * of the document (see DocumentNorms), rounded up to a float. The levels are stored from level 0 up. The size of the
+ * skip list only depends on the length of the list, so the dictionary still points to the start of the data of the
+ * word, and the postings follow the skip list.
+ *
+ * To find the block which may hold a docID, the reader goes down the levels, reading at most SKIP_INTERVAL entries of
+ * each, then reads this block only and gallops to the docID in it, so an intersection jumps over the blocks which can't
+ * match without reading them. The impacts of the blocks bound the term frequencies of the postings a ranked search
+ * may find in a block before reading it. The largest impact of the whole list is kept in the dictionary (see WordInfo),
+ * so it is known without reading segmentXXb, and it is the impact of the block of a list of a single block.
+ *
+ */
+
+public class BlockPostings {
+
+    public static final int BLOCK_SIZE = 128;
+    public static final int SKIP_INTERVAL = 8;
+    private static final int SKIP_ENTRY_BYTES = 4 * 4;
+
+    private final SegmentReader reader;
+    private final int postingsOffset; // the offset of the first posting in segmentXXb
+    private final int len;
+    private final int[][] lastDocIDs; // the last docID covered by every entry of every level, level 0 first
+    private final int[] blockOffsets; // the offset of every block from the first posting
+    private final int[] blockMaxFreqs; // the largest length of position list of every block
+    private final float[] blockMaxImpacts; // the largest impact of every block
+    private final float maxImpact; // the largest impact of the list
+
+    /**
+     * Opens a posting list, reading its skip list.
+     *
+     * @param reader the reader of the segment
+     * @param offset the offset of the data of the word in segmentXXb
+     * @param len the length of the posting list
+     * @param maxImpact the largest impact of the postings, from the dictionary
+     */
+
+    public BlockPostings(SegmentReader reader, int offset, int len, float maxImpact) {
+        this.reader = reader;
+        this.postingsOffset = offset + getSkipListBytes(len);
+        this.len = len;
+        this.maxImpact = maxImpact;
+
+        int[] levelSizes = getLevelSizes(len);
+        this.lastDocIDs = new int[levelSizes.length][];
+        int numBlocks = getNumBlocks(len);
+        this.blockOffsets = new int[numBlocks];
+        this.blockMaxFreqs = new int[numBlocks];
+        this.blockMaxImpacts = new float[numBlocks];
+        if (levelSizes.length == 0) {
+            // a single block without skip list, whose largest length of position list is unknown until it is read
+            this.blockOffsets[0] = 0;
+            this.blockMaxFreqs[0] = Integer.MAX_VALUE;
+            this.blockMaxImpacts[0] = maxImpact;
+            return;
+        }
+
+        ByteBuffer skipBuffer = ByteBuffer.wrap(reader.readBytes("b", offset, getSkipListBytes(len)));
+        for (int level = 0; level < levelSizes.length; level++) {
+            lastDocIDs[level] = new int[levelSizes[level]];
+            for (int i = 0; i < levelSizes[level]; i++) {
+                lastDocIDs[level][i] = skipBuffer.getInt();
+                int blockOffset = skipBuffer.getInt();
+                int maxFreq = skipBuffer.getInt();
+                float blockMaxImpact = skipBuffer.getFloat();
+                if (level == 0) {
+                    blockOffsets[i] = blockOffset;
+                    blockMaxFreqs[i] = maxFreq;
+                    blockMaxImpacts[i] = blockMaxImpact;
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of blocks of a posting list.
+     */
+
+    public static int getNumBlocks(int len) {
+        return Math.max(1, (len + BLOCK_SIZE - 1) / BLOCK_SIZE);
+    }
+
+    /**
+     * Gets the number of entries of every level of the skip list of a posting list, level 0 first, no level if the list
+     * has a single block.
+     */
+
+    public static int[] getLevelSizes(int len) {
+        List<Integer> sizes = new ArrayList<>();
+        int size = getNumBlocks(len);
+        if (size > 1) {
+            sizes.add(size);
+            while (size > SKIP_INTERVAL) {
+                size = (size + SKIP_INTERVAL - 1) / SKIP_INTERVAL;
+                sizes.add(size);
+            }
+        }
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Gets the number of bytes of the skip list of a posting list.
+     */
+
+    public static int getSkipListBytes(int len) {
+        int bytes = 0;
+        for (int size : getLevelSizes(len)) {
+            bytes += size * SKIP_ENTRY_BYTES;
+        }
+        return bytes;
+    }
+
+    /**
+     * Writes a posting list in the block format, its skip list then its postings.
+     *
+     * @param writer the writer of the segment, whose statistics of the documents are written
+     * @param docIDs the docIDs of the postings, in ascending order
+     * @param freqs the length of the position list of every posting
+     * @param len the length of the posting list
+     * @return the largest impact of the postings, for the dictionary
+     */
+
+    public static float write(SegmentWriter writer, int[] docIDs, int[] freqs, int len) {
+        int[] levelSizes = getLevelSizes(len);
+        int span = 1; // the number of blocks covered by an entry of the level
+        for (int level = 0; level < levelSizes.length; level++) {
+            for (int i = 0; i < levelSizes[level]; i++) {
+                int lastBlock = Math.min((i + 1) * span, getNumBlocks(len)) - 1;
+                int lastPosting = Math.min((lastBlock + 1) * BLOCK_SIZE, len) - 1;
+                int maxFreq = 0;
+                float maxImpact = 0;
+                for (int j = i * span * BLOCK_SIZE; j <= lastPosting; j++) {
+                    maxFreq = Math.max(maxFreq, freqs[j]);
+                    maxImpact = Math.max(maxImpact, getImpact(writer.getNorms(), docIDs[j], freqs[j]));
+                }
+                writer.writeInt("b", docIDs[lastPosting]);
+                writer.writeInt("b", i * span * BLOCK_SIZE * 4 * 2);
+                writer.writeInt("b", maxFreq);
+                writer.writeInt("b", Float.floatToIntBits(maxImpact));
+            }
+            span *= SKIP_INTERVAL;
+        }
+        float maxImpact = 0;
+        for (int i = 0; i < len; i++) {
+            writer.writeInt("b", docIDs[i]);
+            writer.writeInt("b", freqs[i]);
+            maxImpact = Math.max(maxImpact, getImpact(writer.getNorms(), docIDs[i], freqs[i]));
+        }
+        return maxImpact;
+    }
+
+    /**
+     * the length of a position list divided by the norm of its document, rounded up to a float so that it bounds the
+     * exact ratio, 1 if the norm is unknown as the length is at most the norm
+     */
+
+    private static float getImpact(DocumentNorms norms, int docID, int freq) {
+        if (norms == null) {
+            return 1;
+        }
+        return Math.nextUp((float) (freq / norms.getNorm(docID)));
+    }
+
+    /**
+     * Gets the number of blocks of the posting list.
+     */
+
+    public int getNumBlocks() {
+        return blockOffsets.length;
+    }
+
+    /**
+     * Gets the largest length of position list of the postings of a block, Integer.MAX_VALUE if the list has a single
+     * block, as it has no skip list.
+     */
+
+    public int getBlockMaxFreq(int block) {
+        return blockMaxFreqs[block];
+    }
+
+    /**
+     * Gets the largest impact of the postings of a block, the largest impact of the list if it has a single block.
+     */
+
+    public float getBlockMaxImpact(int block) {
+        return blockMaxImpacts[block];
+    }
+
+    /**
+     * Gets the largest impact of the postings of the list.
+     */
+
+    public float getMaxImpact() {
+        return maxImpact;
+    }
+
+    /**
+     * Gets the offset of the first posting in segmentXXb.
+     */
+
+    public int getPostingsOffset() {
+        return postingsOffset;
+    }
+
+    /**
+     * Finds the first block from a given block whose last docID is at least the target, so the only block which may
+     * hold the target after the given block.
+     *
+     * @param target the docID looked for
+     * @param fromBlock the first block which may be returned
+     * @return the block, the number of blocks if every docID from the given block is smaller than the target
+     */
+
+    public int findBlock(int target, int fromBlock) {
+        if (fromBlock >= getNumBlocks()) {
+            return getNumBlocks();
+        }
+        if (lastDocIDs.length == 0) {
+            return 0;
+        }
+
+        // start from the entry of the top level covering fromBlock, and go down the levels
+        int top = lastDocIDs.length - 1;
+        int entry = fromBlock / span(top);
+        for (int level = top; level >= 0; level--) {
+            while (entry < lastDocIDs[level].length && lastDocIDs[level][entry] < target) {
+                entry++;
+            }
+            if (entry == lastDocIDs[level].length) {
+                return getNumBlocks();
+            }
+            if (level > 0) {
+                entry = Math.max(entry * SKIP_INTERVAL, fromBlock / span(level - 1));
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * the number of blocks covered by an entry of a level
+     */
+
+    private static int span(int level) {
+        int span = 1;
+        for (int i = 0; i < level; i++) {
+            span *= SKIP_INTERVAL;
+        }
+        return span;
+    }
+
+    /**
+     * Reads the postings of a block.
+     *
+     * @param block the block
+     * @param docIDs the array the docIDs are read into, of length at least BLOCK_SIZE
+     * @param freqs the array the lengths of the position lists are read into, of length at least BLOCK_SIZE
+     * @return the number of postings of the block
+     */
+
+    public int readBlock(int block, int[] docIDs, int[] freqs) {
+        int blockLen = Math.min(BLOCK_SIZE, len - block * BLOCK_SIZE);
+        ByteBuffer blockBuffer = ByteBuffer.wrap(
+                reader.readBytes("b", postingsOffset + blockOffsets[block], blockLen * 4 * 2));
+        for (int i = 0; i < blockLen; i++) {
+            docIDs[i] = blockBuffer.getInt();
+            freqs[i] = blockBuffer.getInt();
+        }
+        return blockLen;
+    }
+
+    /**
+     * Opens a cursor over the posting list, which reads one block at a time and jumps to the block which may hold the
+     * target of advance through the skip list.
+     *
+     * @param liveDocs the deleted documents of the segment, skipped by the cursor
+     */
+
+    public PostingsCursor cursor(LiveDocs liveDocs) {
+        return new Cursor(liveDocs);
+    }
+
+    /**
+     * Opens a cursor over the posting list which also gives the index of its current posting in the list, by which
+     * a positional index finds the position list of the posting.
+     */
+
+    Cursor indexedCursor(LiveDocs liveDocs) {
+        return new Cursor(liveDocs);
+    }
+
+    class Cursor extends PostingsCursor {
+
+        private final LiveDocs liveDocs;
+        private final int[] blockDocIDs = new int[BLOCK_SIZE];
+        private final int[] blockFreqs = new int[BLOCK_SIZE];
+        private int block = -1; // the block read into the arrays
+        private int shallowBlock = 0; // the block found by advanceShallow
+        private int blockLen = 0;
+        private int i = -1; // the current posting in the block
+        private int doc = -1;
+
+        Cursor(LiveDocs liveDocs) {
+            this.liveDocs = liveDocs;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() {
+            while (true) {
+                i++;
+                while (i >= blockLen) {
+                    if (block + 1 >= getNumBlocks()) {
+                        return doc = NO_MORE_DOCS;
+                    }
+                    block++;
+                    blockLen = readBlock(block, blockDocIDs, blockFreqs);
+                    i = 0;
+                }
+                if (liveDocs.isLive(blockDocIDs[i])) {
+                    return doc = blockDocIDs[i];
+                }
+            }
+        }
+
+        @Override
+        public int advance(int target) {
+            if (doc == NO_MORE_DOCS) {
+                return doc;
+            }
+            if (block < 0 || blockDocIDs[blockLen - 1] < target) {
+                // no posting of the current block reaches the target, jump to the block which may hold it
+                int next = findBlock(target, block + 1);
+                if (next >= getNumBlocks()) {
+                    block = getNumBlocks();
+                    blockLen = 0;
+                    return doc = NO_MORE_DOCS;
+                }
+                block = next;
+                blockLen = readBlock(block, blockDocIDs, blockFreqs);
+                i = -1;
+            }
+
+            // the last posting of the block reaches the target, gallop to the first one which does
+            i = gallop(k -> blockDocIDs[k], i + 1, blockLen, target);
+            if (liveDocs.isLive(blockDocIDs[i])) {
+                return doc = blockDocIDs[i];
+            }
+            return nextDoc();
+        }
+
+        @Override
+        public int advanceShallow(int target) {
+            if (lastDocIDs.length == 0) {
+                return super.advanceShallow(target);
+            }
+            shallowBlock = findBlock(target, Math.max(block, 0));
+            return shallowBlock < getNumBlocks() ? lastDocIDs[0][shallowBlock] : NO_MORE_DOCS;
+        }
+
+        @Override
+        public int getBlockMaxFreq() {
+            if (lastDocIDs.length == 0) {
+                return super.getBlockMaxFreq();
+            }
+            return shallowBlock < getNumBlocks() ? blockMaxFreqs[shallowBlock] : 0;
+        }
+
+        @Override
+        public double getBlockMaxImpact() {
+            if (lastDocIDs.length == 0) {
+                return maxImpact;
+            }
+            return shallowBlock < getNumBlocks() ? blockMaxImpacts[shallowBlock] : 0;
+        }
+
+        @Override
+        public double getMaxImpact() {
+            return maxImpact;
+        }
+
+        @Override
+        public int freq() {
+            return blockFreqs[i];
+        }
+
+        /**
+         * Gets the index of the current posting in the posting list.
+         */
+
+        int index() {
+            return block * BLOCK_SIZE + i;
+        }
+
+        @Override
+        public int cost() {
+            return len;
+        }
+
+    }
+
+}
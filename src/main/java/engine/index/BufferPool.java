@@ -0,0 +1,271 @@
+package engine.index;
+
+import com.google.common.base.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * A size-bounded pool of page frames shared by all the PageFileChannels, keyed by (file, page number).
+ *
+ * Frames are direct ByteBuffers of PAGE_SIZE bytes. A page is loaded into a frame on the first read, and later reads of
+ * the same page are served from the frame without touching the file. When every frame is used, the EvictionPolicy picks
+ * the frame to reuse. Pinned pages are never evicted; a page is pinned by pin() and stays pinned until the buffer
+ * returned by pin() is passed to unpin().
+ *
+ * Writes go through to the file, and a cached copy of the written page is updated in place.
+ *
+ */
+
+public class BufferPool {
+
+    /**
+     * The default number of frames of a pool.
+     */
+
+    public static final int DEFAULT_NUM_FRAMES = 1024;
+
+    private final int numFrames;
+    private final EvictionPolicy policy;
+    private int pageSize;
+    private byte[] zeros;
+    private ByteBuffer[] frames;
+    private Pair<Object, Integer>[] keys; // (file, page number) of every frame, null for empty or detached frames
+    private int[] pinCounts;
+    private boolean[] detached; // invalidated frames, freed when they are unpinned
+    private Map<Pair<Object, Integer>, Integer> table;
+    private Deque<Integer> freeFrames;
+    private IdentityHashMap<ByteBuffer, Integer> pinnedPages;
+    private long hitCount;
+    private long missCount;
+
+    public BufferPool(int numFrames) {
+        this(numFrames, new ClockEvictionPolicy());
+    }
+
+    public BufferPool(int numFrames, EvictionPolicy policy) {
+        Preconditions.checkArgument(numFrames > 0);
+        Preconditions.checkNotNull(policy);
+        this.numFrames = numFrames;
+        this.policy = policy;
+        clear();
+    }
+
+    /**
+     * Drops all the pages of the pool.
+     */
+
+    @SuppressWarnings("unchecked")
+    public synchronized void clear() {
+        pageSize = PageFileChannel.PAGE_SIZE;
+        zeros = new byte[pageSize];
+        frames = new ByteBuffer[numFrames];
+        keys = new Pair[numFrames];
+        pinCounts = new int[numFrames];
+        detached = new boolean[numFrames];
+        table = new HashMap<>();
+        freeFrames = new ArrayDeque<>();
+        for (int i = 0; i < numFrames; i++) {
+            freeFrames.add(i);
+        }
+        pinnedPages = new IdentityHashMap<>();
+        policy.reset(numFrames);
+    }
+
+    /**
+     * Pins a page of a file, loading it if it isn't in the pool.
+     *
+     * @param file the key of the file
+     * @param pageNum the page number
+     * @param loader reads the page from the file into a frame with position 0 and limit PAGE_SIZE, the frame is
+     *               filled with zeros beforehand
+     * @return a read-only view of the page with position 0, which must be passed to unpin() once it is not used
+     */
+
+    public synchronized ByteBuffer pin(Object file, int pageNum, Consumer<ByteBuffer> loader) {
+        // pages of another size can't be reused
+        if (pageSize != PageFileChannel.PAGE_SIZE) {
+            clear();
+        }
+        Pair<Object, Integer> key = new Pair<>(file, pageNum);
+        Integer frameID = table.get(key);
+        if (frameID != null) {
+            hitCount++;
+        } else {
+            missCount++;
+            frameID = allocateFrame();
+            ByteBuffer frame = frames[frameID];
+            frame.clear();
+            frame.put(zeros);
+            frame.clear();
+            try {
+                loader.accept(frame);
+            } catch (RuntimeException e) {
+                freeFrames.add(frameID);
+                throw e;
+            }
+            keys[frameID] = key;
+            table.put(key, frameID);
+        }
+        pinCounts[frameID]++;
+        policy.access(frameID);
+
+        ByteBuffer page = frames[frameID].asReadOnlyBuffer();
+        page.clear();
+        pinnedPages.put(page, frameID);
+        return page;
+    }
+
+    /**
+     * Unpins a page pinned by pin().
+     *
+     * @param page the buffer returned by pin()
+     */
+
+    public synchronized void unpin(ByteBuffer page) {
+        Integer frameID = pinnedPages.remove(page);
+        // the pool was cleared since the page was pinned
+        if (frameID == null) {
+            return;
+        }
+        pinCounts[frameID]--;
+        if (pinCounts[frameID] == 0 && detached[frameID]) {
+            detached[frameID] = false;
+            freeFrames.add(frameID);
+        }
+    }
+
+    /**
+     * Reads a page of a file through the pool into a new heap buffer.
+     *
+     * @return a ByteBuffer with capacity = PAGE_SIZE and position 0
+     */
+
+    public ByteBuffer read(Object file, int pageNum, Consumer<ByteBuffer> loader) {
+        ByteBuffer page = pin(file, pageNum, loader);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate(page.capacity());
+            buffer.put(page);
+            buffer.rewind();
+            return buffer;
+        } finally {
+            unpin(page);
+        }
+    }
+
+    /**
+     * Updates the cached copy of a page which was written to the file, if the page is in the pool.
+     *
+     * @param page the bytes written, with capacity = PAGE_SIZE
+     */
+
+    public synchronized void update(Object file, int pageNum, ByteBuffer page) {
+        Integer frameID = table.get(new Pair<>(file, pageNum));
+        if (frameID == null) {
+            return;
+        }
+        if (page.capacity() != frames[frameID].capacity()) {
+            invalidate(file);
+            return;
+        }
+        ByteBuffer source = page.duplicate();
+        source.clear();
+        ByteBuffer frame = frames[frameID];
+        frame.clear();
+        frame.put(source);
+        frame.clear();
+    }
+
+    /**
+     * Drops all the pages of a file, it must be called when the content of the file is replaced without going through
+     * the pool, e.g. when a new file is created with the key of a deleted one.
+     */
+
+    public synchronized void invalidate(Object file) {
+        Iterator<Map.Entry<Pair<Object, Integer>, Integer>> itr = table.entrySet().iterator();
+        while (itr.hasNext()) {
+            Map.Entry<Pair<Object, Integer>, Integer> entry = itr.next();
+            if (!entry.getKey().getLeft().equals(file)) {
+                continue;
+            }
+            int frameID = entry.getValue();
+            itr.remove();
+            keys[frameID] = null;
+            policy.remove(frameID);
+            if (pinCounts[frameID] == 0) {
+                freeFrames.add(frameID);
+            } else {
+                detached[frameID] = true;
+            }
+        }
+    }
+
+    /**
+     * get an empty frame, evicting a page if there is no free frame
+     */
+
+    private int allocateFrame() {
+        Integer frameID = freeFrames.poll();
+        if (frameID == null) {
+            int victim = policy.evict(i -> pinCounts[i] == 0 && keys[i] != null);
+            if (victim < 0) {
+                throw new IllegalStateException("all the frames of the buffer pool are pinned");
+            }
+            table.remove(keys[victim]);
+            keys[victim] = null;
+            frameID = victim;
+        }
+        if (frames[frameID] == null) {
+            frames[frameID] = ByteBuffer.allocateDirect(pageSize);
+        }
+        return frameID;
+    }
+
+    /**
+     * Gets the number of frames of the pool.
+     */
+
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    /**
+     * Gets the number of pages in the pool.
+     */
+
+    public synchronized int getNumPages() {
+        return table.size();
+    }
+
+    /**
+     * Gets the number of page reads served from the pool.
+     */
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Gets the number of page reads which had to load the page from the file.
+     */
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Resets the hit and miss counters.
+     */
+
+    public synchronized void resetCounters() {
+        hitCount = 0;
+        missCount = 0;
+    }
+
+}
@@ -0,0 +1,50 @@
+package engine.index;
+
+import java.util.function.IntPredicate;
+
+/**
+ * CLOCK eviction, an approximation of LRU: every frame has a reference bit set on access, the clock hand sweeps the
+ * frames, clearing the reference bits it passes, and evicts the first evictable frame whose bit is already cleared.
+ *
+ */
+
+public class ClockEvictionPolicy implements EvictionPolicy {
+
+    private boolean[] referenced;
+    private int hand;
+
+    @Override
+    public void reset(int numFrames) {
+        referenced = new boolean[numFrames];
+        hand = 0;
+    }
+
+    @Override
+    public void access(int frameID) {
+        referenced[frameID] = true;
+    }
+
+    @Override
+    public void remove(int frameID) {
+        referenced[frameID] = false;
+    }
+
+    @Override
+    public int evict(IntPredicate evictable) {
+        // two full sweeps clear every reference bit, so a third one finds a victim if there is any
+        for (int i = 0; i < 3 * referenced.length; i++) {
+            int frameID = hand;
+            hand = (hand + 1) % referenced.length;
+            if (!evictable.test(frameID)) {
+                continue;
+            }
+            if (referenced[frameID]) {
+                referenced[frameID] = false;
+            } else {
+                return frameID;
+            }
+        }
+        return -1;
+    }
+
+}
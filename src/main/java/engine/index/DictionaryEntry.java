@@ -0,0 +1,52 @@
+package engine.index;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A record of the dictionary segment (segmentXXa), which can be written into and read from a ByteBuffer.
+ *
+ */
+
+public interface DictionaryEntry {
+
+    /**
+     * Gets the keyword of the record.
+     */
+
+    String getWord();
+
+    /**
+     * Gets the number of bytes the record takes in the dictionary.
+     */
+
+    int getByteSize();
+
+    /**
+     * write the record into a ByteBuffer
+     *
+     * @param bb buffer being written
+     */
+
+    void writeOneWord(ByteBuffer bb);
+
+    /**
+     * read the record from a ByteBuffer
+     *
+     * @param bb buffer being read
+     */
+
+    void readOneWord(ByteBuffer bb);
+
+    /**
+     * read the record from a ByteBuffer of a dictionary whose records may be written before they had the largest
+     * impact of their posting list, see BlockDictionary
+     *
+     * @param bb buffer being read
+     * @param hasImpact whether the record has the largest impact of its posting list
+     */
+
+    default void readOneWord(ByteBuffer bb, boolean hasImpact) {
+        readOneWord(bb);
+    }
+
+}
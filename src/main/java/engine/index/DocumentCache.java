@@ -0,0 +1,229 @@
+package engine.index;
+
+import engine.storage.Document;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of the documents read from the document stores of the disk segments by the queries, by segment ID and docID,
+ * so the documents returned again and again by popular queries are not read and decoded from the stores every time.
+ *
+ * The cache is bounded by the estimated heap bytes of the documents it holds, not by their number. It is split into
+ * shards by key, each a LinkedHashMap in access order under its own lock, which evicts its least recently used
+ * documents once it is over its share of the budget, so the queries reading different documents rarely wait for each
+ * other.
+ *
+ * As the segment IDs are never reused, a cached document stays valid until its segment is merged away or it is
+ * deleted, then it is invalidated by the manager. The hits and the misses are counted for the hit rate.
+ *
+ */
+
+public class DocumentCache {
+
+    private static final int NUM_SHARDS = 16;
+    // a LinkedHashMap entry, its table slot and the boxed Long key
+    private static final int ENTRY_BYTES = 80;
+
+    private final Shard[] shards;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * the documents of one shard, the least recently used first, and their estimated bytes
+     */
+
+    private static class Shard {
+        final LinkedHashMap<Long, Document> documents = new LinkedHashMap<>(16, 0.75f, true);
+        final long maxBytes;
+        long bytes = 0;
+
+        Shard(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+    }
+
+    /**
+     * @param maxBytes the estimated heap bytes the documents of the cache may take, 0 to cache nothing
+     */
+
+    public DocumentCache(long maxBytes) {
+        this.shards = new Shard[NUM_SHARDS];
+        for (int i = 0; i < NUM_SHARDS; i++) {
+            shards[i] = new Shard(maxBytes / NUM_SHARDS);
+        }
+    }
+
+    private static long key(int segID, int docID) {
+        return ((long) segID << 32) | (docID & 0xFFFFFFFFL);
+    }
+
+    private Shard shard(long key) {
+        int hash = Long.hashCode(key * 0x9E3779B97F4A7C15L);
+        return shards[(hash >>> 16 ^ hash) & (NUM_SHARDS - 1)];
+    }
+
+    /**
+     * estimate the heap bytes of a cached document, with its entry
+     */
+
+    static long estimateBytes(Document document) {
+        return PostingsBuffer.OBJECT_HEADER_BYTES + PostingsBuffer.STRING_BYTES + 2L * document.getText().length()
+                + ENTRY_BYTES;
+    }
+
+    /**
+     * Gets a document from the cache, counting a hit or a miss.
+     *
+     * @return the document, null if it is not cached
+     */
+
+    public Document get(int segID, int docID) {
+        long key = key(segID, docID);
+        Shard shard = shard(key);
+        Document document;
+        synchronized (shard) {
+            document = shard.documents.get(key);
+        }
+        if (document == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return document;
+    }
+
+    /**
+     * Adds a document to the cache, evicting the least recently used documents of its shard while the shard is over
+     * its budget. A document larger than the budget of a shard is not cached.
+     */
+
+    public void put(int segID, int docID, Document document) {
+        long bytes = estimateBytes(document);
+        long key = key(segID, docID);
+        Shard shard = shard(key);
+        if (bytes > shard.maxBytes) {
+            return;
+        }
+        synchronized (shard) {
+            Document previous = shard.documents.put(key, document);
+            shard.bytes += bytes - (previous == null ? 0 : estimateBytes(previous));
+            Iterator<Document> eldest = shard.documents.values().iterator();
+            while (shard.bytes > shard.maxBytes) {
+                shard.bytes -= estimateBytes(eldest.next());
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * Removes a document from the cache, once it is deleted.
+     */
+
+    public void invalidate(int segID, int docID) {
+        long key = key(segID, docID);
+        Shard shard = shard(key);
+        synchronized (shard) {
+            Document document = shard.documents.remove(key);
+            if (document != null) {
+                shard.bytes -= estimateBytes(document);
+            }
+        }
+    }
+
+    /**
+     * Removes all the documents of a segment from the cache, once the segment is merged away or rewritten.
+     */
+
+    public void invalidateSegment(int segID) {
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                Iterator<Map.Entry<Long, Document>> entries = shard.documents.entrySet().iterator();
+                while (entries.hasNext()) {
+                    Map.Entry<Long, Document> entry = entries.next();
+                    if ((int) (entry.getKey() >>> 32) == segID) {
+                        shard.bytes -= estimateBytes(entry.getValue());
+                        entries.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the number of documents in the cache.
+     */
+
+    public int size() {
+        int size = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                size += shard.documents.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the estimated heap bytes of the documents in the cache.
+     */
+
+    public long ramBytesUsed() {
+        long bytes = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                bytes += shard.bytes;
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Gets the number of documents found in the cache.
+     */
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of documents looked up and not found in the cache.
+     */
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Gets the number of documents evicted to keep the cache within its budget.
+     */
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Gets the ratio of the lookups found in the cache, 0 if there was no lookup.
+     */
+
+    public double getHitRate() {
+        long hitCount = getHitCount();
+        long lookups = hitCount + getMissCount();
+        return lookups == 0 ? 0.0 : (double) hitCount / lookups;
+    }
+
+    /**
+     * Resets the counts of hits, misses and evictions.
+     */
+
+    public void resetStats() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+}
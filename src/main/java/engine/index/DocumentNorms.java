@@ -0,0 +1,147 @@
+package engine.index;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * The statistics of the terms of every document of one disk segment, so that the ranked search normalizes the score of
+ * a document with one lookup instead of reading all of its terms (see InvertedIndexManager.searchTfIdf).
+ *
+ * On disk, the statistics are in segmentXXn: the number of documents, then for every docID its length (the number of
+ * its tokens), its number of distinct terms, and the sum of the squares of the frequencies of its terms. The file is
+ * written once with the other files of the segment, from the in-memory segment at flush time or from the statistics of
+ * the merged segments at merge time, and is mapped into memory by the reader of the segment.
+ *
+ */
+
+public class DocumentNorms {
+
+    static final String FILE = "n";
+    private static final int HEADER_BYTES = 4;
+    private static final int ENTRY_BYTES = 4 + 4 + 8;
+
+    private final ByteBuffer buffer; // read with absolute gets only, so it may be shared
+
+    /**
+     * Reads the statistics from the bytes of segmentXXn, which are not copied.
+     */
+
+    public DocumentNorms(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Computes the statistics of the documents of an in-memory segment from its posting lists.
+     *
+     * @param postings the posting lists of the segment
+     * @param termIDs the IDs of all the terms of the posting lists
+     * @param numDocs the number of documents of the segment
+     */
+
+    public static DocumentNorms compute(PostingsBuffer postings, int[] termIDs, int numDocs) {
+        int[] lengths = new int[numDocs];
+        int[] numTerms = new int[numDocs];
+        long[] sumSquaredFreqs = new long[numDocs];
+        for (int termID : termIDs) {
+            for (int i = 0; i < postings.getNumDocs(termID); i++) {
+                int docID = postings.getDocID(termID, i);
+                long freq = postings.getFreq(termID, i);
+                lengths[docID] += freq;
+                numTerms[docID] += 1;
+                sumSquaredFreqs[docID] += freq * freq;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + numDocs * ENTRY_BYTES);
+        buffer.putInt(numDocs);
+        for (int docID = 0; docID < numDocs; docID++) {
+            buffer.putInt(lengths[docID]);
+            buffer.putInt(numTerms[docID]);
+            buffer.putLong(sumSquaredFreqs[docID]);
+        }
+        return new DocumentNorms(buffer);
+    }
+
+    /**
+     * Merges the statistics of the documents of segments, without the deleted documents.
+     *
+     * @param norms the statistics of every segment, in the order of the merge
+     * @param docMaps the docID in the merged segment of every docID of every segment, -1 for the deleted documents
+     */
+
+    public static DocumentNorms merge(List<DocumentNorms> norms, int[][] docMaps) {
+        int numDocs = 0;
+        for (int[] docMap : docMaps) {
+            for (int newID : docMap) {
+                numDocs += newID >= 0 ? 1 : 0;
+            }
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + numDocs * ENTRY_BYTES);
+        buffer.putInt(numDocs);
+        for (int i = 0; i < docMaps.length; i++) {
+            for (int docID = 0; docID < docMaps[i].length; docID++) {
+                if (docMaps[i][docID] >= 0) {
+                    buffer.position(HEADER_BYTES + docMaps[i][docID] * ENTRY_BYTES);
+                    buffer.putInt(norms.get(i).getLength(docID));
+                    buffer.putInt(norms.get(i).getNumTerms(docID));
+                    buffer.putLong(norms.get(i).getSumSquaredFreqs(docID));
+                }
+            }
+        }
+        return new DocumentNorms(buffer);
+    }
+
+    /**
+     * Writes the statistics to segmentXXn.
+     */
+
+    public void write(SegmentWriter writer) {
+        byte[] bytes = new byte[HEADER_BYTES + getNumDocuments() * ENTRY_BYTES];
+        ByteBuffer source = buffer.duplicate();
+        source.clear();
+        source.get(bytes);
+        writer.writeBytes(FILE, bytes);
+    }
+
+    /**
+     * Gets the number of documents of the segment, deleted documents included.
+     */
+
+    public int getNumDocuments() {
+        return buffer.capacity() < HEADER_BYTES ? 0 : buffer.getInt(0);
+    }
+
+    /**
+     * Gets the number of tokens of a document.
+     */
+
+    public int getLength(int docID) {
+        return buffer.getInt(HEADER_BYTES + docID * ENTRY_BYTES);
+    }
+
+    /**
+     * Gets the number of distinct terms of a document.
+     */
+
+    public int getNumTerms(int docID) {
+        return buffer.getInt(HEADER_BYTES + docID * ENTRY_BYTES + 4);
+    }
+
+    /**
+     * Gets the sum of the squares of the frequencies of the terms of a document.
+     */
+
+    public long getSumSquaredFreqs(int docID) {
+        return buffer.getLong(HEADER_BYTES + docID * ENTRY_BYTES + 8);
+    }
+
+    /**
+     * Gets the length of the vector of the term frequencies of a document, by which its score is normalized.
+     */
+
+    public double getNorm(int docID) {
+        return Math.sqrt(getSumSquaredFreqs(docID));
+    }
+
+}
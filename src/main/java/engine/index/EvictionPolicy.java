@@ -0,0 +1,42 @@
+package engine.index;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Decides which frame of a BufferPool is evicted when a page must be loaded and the pool is full.
+ *
+ * Frames are numbered from 0 to the number of frames of the pool. The pool calls the policy while holding its lock, so
+ * implementations don't need to be thread-safe.
+ *
+ */
+
+public interface EvictionPolicy {
+
+    /**
+     * Resets the policy for a pool with the given number of frames, all of them empty.
+     */
+
+    void reset(int numFrames);
+
+    /**
+     * Records that a page was loaded into a frame or read from a frame.
+     */
+
+    void access(int frameID);
+
+    /**
+     * Records that the page of a frame was dropped, so the frame is empty.
+     */
+
+    void remove(int frameID);
+
+    /**
+     * Chooses a frame to evict.
+     *
+     * @param evictable tells whether a frame can be evicted, pinned frames can't
+     * @return the frame being evicted, -1 if no frame can be evicted
+     */
+
+    int evict(IntPredicate evictable);
+
+}
@@ -0,0 +1,101 @@
+package engine.index;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ToIntFunction;
+
+/**
+ * The statistics of the disk segments of an index which the IDF of the ranked search needs: the number of documents of
+ * every segment, their total, and the document frequencies of the terms looked up so far, so that the IDF of a term
+ * doesn't open every segment again for every query.
+ *
+ * The statistics are those of one list of visible segments. As the list is never modified, a flush or a merge replaces
+ * it, the manager builds new statistics when the list of its statistics is not the visible one anymore. The deleted
+ * documents are counted until their segment is merged, as they are in the posting lists, so a deletion leaves the
+ * statistics unchanged.
+ *
+ * The document frequencies are cached up to DEFAULT_MAX_CACHED_TERMS terms, then the cache starts over.
+ *
+ */
+
+class IndexStatistics {
+
+    static int DEFAULT_MAX_CACHED_TERMS = 100000;
+
+    private final List<Integer> segIDs;
+    private final int[] numDocuments;
+    private final int totalDocuments;
+    private final Map<String, Integer> docFreqs = new ConcurrentHashMap<>();
+
+    /**
+     * @param segIDs the IDs of the visible segments
+     * @param numDocuments the number of documents of every segment, the deleted ones included
+     */
+
+    IndexStatistics(List<Integer> segIDs, int[] numDocuments) {
+        this.segIDs = segIDs;
+        this.numDocuments = numDocuments;
+        int total = 0;
+        for (int n : numDocuments) {
+            total += n;
+        }
+        this.totalDocuments = total;
+    }
+
+    /**
+     * Checks whether the statistics are those of a list of visible segments, the same list and not only equal IDs.
+     */
+
+    boolean isOf(List<Integer> segIDs) {
+        return this.segIDs == segIDs;
+    }
+
+    /**
+     * Gets the IDs of the segments of the statistics.
+     */
+
+    List<Integer> getSegmentIDs() {
+        return segIDs;
+    }
+
+    /**
+     * Gets the number of documents of a segment, by its position in the list of segments.
+     */
+
+    int getNumDocuments(int segmentNum) {
+        return numDocuments[segmentNum];
+    }
+
+    /**
+     * Gets the number of documents of all the segments.
+     */
+
+    int getTotalDocuments() {
+        return totalDocuments;
+    }
+
+    /**
+     * Gets the number of documents of all the segments containing a term, computed on the first call for the term.
+     *
+     * @param term the analyzed term
+     * @param docFreqOfSegment the number of documents of a segment containing the term, by segment ID
+     */
+
+    int getDocumentFrequency(String term, ToIntFunction<Integer> docFreqOfSegment) {
+        Integer docFreq = docFreqs.get(term);
+        if (docFreq == null) {
+            int sum = 0;
+            for (int segID : segIDs) {
+                sum += docFreqOfSegment.applyAsInt(segID);
+            }
+            if (docFreqs.size() >= DEFAULT_MAX_CACHED_TERMS) {
+                docFreqs.clear();
+            }
+            docFreqs.put(term, sum);
+            docFreq = sum;
+        }
+        return docFreq;
+    }
+
+}
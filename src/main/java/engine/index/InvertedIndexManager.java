@@ -3,9 +3,8 @@ package engine.index;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Iterators;
-import com.google.common.collect.Table;
-import com.google.common.collect.TreeBasedTable;
 import engine.analysis.Analyzer;
+import engine.storage.BlockCompressedDocStore;
 import engine.storage.Document;
 import engine.storage.DocumentStore;
 import engine.storage.MapdbDocStore;
@@ -21,6 +20,17 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.*;
 import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.IntFunction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static com.google.common.collect.Maps.immutableEntry;
 
@@ -29,14 +39,26 @@ import static com.google.common.collect.Maps.immutableEntry;
  *
  * On disk, there are 3 files per segment: docStore, dictionary, and invertedLists.
  *
- * Dictionary is in “segmentXXa”. The first page has one integer, which represents the total number of bytes the remaining
- * pages will use. The remaining pages store word information for each keyword — length(keywords), keywords, pageID(posting list),
- * offset(posting list) (the offset of this page), length(posting list).
+ * Dictionary is in “segmentXXa”. It stores word information for each keyword — length(keywords), keywords, pageID(posting list),
+ * offset(posting list) (the offset of this page), length(posting list), the largest impact of the posting list (see
+ * BlockPostings), sorted by keyword and packed into blocks of one page, with a block index of the first keyword of each
+ * block (see BlockDictionary). Dictionaries of the legacy format, whose first page has one integer representing the total
+ * number of bytes the remaining pages use, are still readable.
  *
  * InvertedLists is in “segmentXXb”. For each keyword, it stores — docID1, length(position list of docID1), docID2,
- * length(position list of docID2) ……
+ * length(position list of docID2) ……, in blocks preceded by a skip list (see BlockPostings).
  *
- * DocStore is in “segmentXX.db”.
+ * The statistics of the terms of every document, by which the ranked search normalizes the scores, are in “segmentXXn”
+ * (see DocumentNorms).
+ *
+ * Deletions are in “segmentXX_G.liv”, a bitset of the deleted docIDs of generation G written at commit time (see LiveDocs).
+ * The deleted documents are skipped by the queries and dropped when their segment is merged, see expungeDeletes.
+ *
+ * DocStore is in “segmentXX.db”, with the documents compressed in blocks (see BlockCompressedDocStore) or in MapDB.
+ *
+ * XX is the ID of the segment, given by the flush or the merge which writes it and never reused, so the files of a
+ * segment don't change while it is visible. The queries see the segments in the order of the list of segment IDs, a
+ * merge replaces the IDs of the segments it merges by the ID of the merged segment.
  *
  */
 
@@ -51,32 +73,91 @@ public class InvertedIndexManager {
 
     public static int DEFAULT_FLUSH_THRESHOLD = 1000;
 
+    /**
+     * The default RAM budget of the in-memory segment buffers of all the indexing threads together, in bytes.
+     * A new Segment is automatically created from the largest buffer whenever the estimated size of the buffered
+     * postings, positions and documents of all the buffers reaches the budget, even if there are fewer documents than
+     * DEFAULT_FLUSH_THRESHOLD.
+     */
+
+    public static long DEFAULT_FLUSH_RAM_BUDGET = 64L * 1024 * 1024;
+
     /**
      * The default merge threshold, in terms of number of segments in the inverted index.
-     * When the number of segments reaches the threshold, a merge should be automatically triggered.
+     * When the number of segments reaches the threshold, a merge should be automatically triggered (by the default
+     * PairwiseMergePolicy, see setMergePolicy).
      *
      * In test cases, the default merge threshold could possibly be set to any number.
      */
 
     public static int DEFAULT_MERGE_THRESHOLD = 8;
-    public static int STORE_PARAMETER = 50000;
 
-    Map<String, List<Integer>> invertedLists;
-    Map<Integer, Document> documents;
-    int docID;
-    int segmentID;
+    /**
+     * The default max number of full buffers being written at once by the background flushes.
+     * An indexing thread whose buffer is full waits until one of them is written.
+     */
+
+    public static int DEFAULT_MAX_PENDING_FLUSHES = 2;
+
+    /**
+     * The default max number of merges run at once by the background merges, see setBackgroundMerge.
+     */
+
+    public static int DEFAULT_MAX_MERGE_THREADS = 2;
+
+    /**
+     * The default ratio of deleted documents above which expungeDeletes rewrites a segment without them.
+     */
+
+    public static double DEFAULT_EXPUNGE_DELETES_RATIO = 0.1;
+
+    /**
+     * The default estimated heap bytes of the documents the queries keep in the document cache of an index, 0 to cache
+     * none (see DocumentCache).
+     */
+
+    public static long DEFAULT_DOCUMENT_CACHE_BYTES = 16L * 1024 * 1024;
+
+    /**
+     * Whether the document stores of the segments written from now on are compressed in blocks (see
+     * BlockCompressedDocStore), or are MapDB stores. The stores of both formats are read.
+     */
+
+    public static boolean DEFAULT_COMPRESS_DOCUMENTS = true;
+
+    Map<Thread, SegmentBuffer> buffers; // the in-memory segment buffer of every indexing thread
+    volatile List<Integer> segments; // the IDs of the disk segments visible to the queries, in order, never modified
+    AtomicInteger nextSegmentID; // the ID given to the next segment written by a flush or a merge
+    AtomicInteger nextFlush; // the number of the next flush, the flushed segments become visible in this order
+    int publishedFlushes; // the number of flushes whose segment is visible
+    Map<Integer, Integer> writtenSegments; // segments written by a flush by flush number, waiting for the flushes before
+    ReadWriteLock segmentLock; // shared by the flushes and the queries, exclusive while a merged segment is made visible
+    MergePolicy mergePolicy;
+    volatile MergeScheduler mergeScheduler; // runs the merges in the background, null if they run after the flushes
+    ExecutorService flushExecutor; // writes the full buffers in the background, null if the flushes are synchronous
+    Semaphore pendingFlushes; // bounds the number of full buffers waiting for the background flushes
+    Set<CompletableFuture<Void>> runningFlushes;
     Analyzer analyzer;
     String indexFolder;
-    Table<String, Integer, List<Integer>> positions;
+    Map<Integer, SegmentReader> readers; // opened readers of the disk segments, kept until the segment is rewritten
+    volatile IndexStatistics statistics; // the statistics of the ranked search, of the segments visible when built
+    volatile ExecutorService searchExecutor; // searches the segments of a query concurrently, null to search them in turn
+    DocumentCache documentCache; // the documents read by the queries, by segment ID and docID
 
     InvertedIndexManager(String indexFolder, Analyzer analyzer) {
         this.analyzer = analyzer;
         this.indexFolder = indexFolder;
-        this.docID = 0;
-        this.segmentID = 0;
-        this.invertedLists = new TreeMap<>(); // use TreeMap so that the map is sorted
-        this.documents = new TreeMap<>();
-        this.positions = TreeBasedTable.create();
+        this.buffers = new ConcurrentHashMap<>();
+        this.segments = Collections.emptyList();
+        this.nextSegmentID = new AtomicInteger(0);
+        this.nextFlush = new AtomicInteger(0);
+        this.publishedFlushes = 0;
+        this.writtenSegments = new HashMap<>();
+        this.segmentLock = new ReentrantReadWriteLock();
+        this.mergePolicy = new PairwiseMergePolicy();
+        this.runningFlushes = ConcurrentHashMap.newKeySet();
+        this.readers = new ConcurrentHashMap<>();
+        this.documentCache = new DocumentCache(DEFAULT_DOCUMENT_CACHE_BYTES);
     }
 
     /**
@@ -128,588 +209,1002 @@ public class InvertedIndexManager {
     /**
      * Adds a document to the inverted index.
      * Document should live in a in-memory buffer until `flush()` is called to write the segment to disk.
+     *
+     * Documents may be added by several threads at once. Every thread analyzes its documents and adds them to its own
+     * in-memory segment buffer, which it flushes to its own segment, so the analyzer must be thread-safe when it does.
      * @param document: to be added
      */
 
     public void addDocument(Document document) {
         List<String> wordList = analyzer.analyze(document.getText());
-        for (int i = 0; i < wordList.size(); i++) {
-            String word = wordList.get(i);
-            if (invertedLists.containsKey(word)) {
-                List<Integer> tmp = invertedLists.get(word);
-                if (!(tmp.get(tmp.size() - 1) == docID)) {
-                    tmp.add(docID);
-                }
-                tmp = positions.get(word, docID);
-                if (tmp == null) {
-                    positions.put(word, docID, new LinkedList<>(Arrays.asList(i)));
-                } else {
-                    tmp.add(i);
-                }
+        SegmentBuffer buffer = buffers.computeIfAbsent(Thread.currentThread(), thread -> new SegmentBuffer());
+        SegmentBuffer full = null;
+        synchronized (buffer) {
+            buffer.addDocument(document, wordList);
+            if (isBufferFull(buffer)) {
+                full = buffer;
+            }
+        }
+
+        // if the num of document reach DEFAULT_FLUSH_THRESHOLD, flush the buffer, or if all the buffers reach the RAM
+        // budget, flush the largest one
+        if (full == null && getBufferedBytes() >= DEFAULT_FLUSH_RAM_BUDGET) {
+            full = getLargestBuffer();
+        }
+        if (full != null) {
+            if (flushExecutor != null) {
+                flushInBackground(full);
             } else {
-                invertedLists.put(word, new LinkedList<>(Arrays.asList(docID)));
-                positions.put(word, docID, new LinkedList<>(Arrays.asList(i)));
+                flushBuffer(full);
+                mergeIfNeeded();
             }
         }
-        documents.put(docID, document);
-        docID += 1;
+    }
 
-        // if the num of document reach DEFAULT_FLUSH_THRESHOLD, call flush()
-        if (docID >= DEFAULT_FLUSH_THRESHOLD) {
-            flush();
+    /**
+     * Turns the background flushes on or off.
+     *
+     * When they are on, a full buffer is swapped for an empty one, so the indexing thread goes on adding documents
+     * while the full buffer is written by a background thread. At most DEFAULT_MAX_PENDING_FLUSHES buffers are written
+     * at once, an indexing thread whose buffer is full waits for one of them. flush() returns without waiting, the
+     * documents are on disk once the future it returns is complete.
+     *
+     * Turning them off waits for the pending flushes.
+     *
+     * @param enabled whether the flushes run in the background
+     */
+
+    public synchronized void setBackgroundFlush(boolean enabled) {
+        if (enabled && flushExecutor == null) {
+            pendingFlushes = new Semaphore(DEFAULT_MAX_PENDING_FLUSHES);
+            flushExecutor = Executors.newFixedThreadPool(DEFAULT_MAX_PENDING_FLUSHES, runnable -> {
+                Thread thread = new Thread(runnable, "flush-" + indexFolder);
+                thread.setDaemon(true);
+                return thread;
+            });
+        } else if (!enabled && flushExecutor != null) {
+            ExecutorService executor = flushExecutor;
+            flushExecutor = null;
+            waitForFlushes();
+            executor.shutdown();
         }
     }
 
     /**
-     * Flushes all the documents in the in-memory segment buffer to disk. If the buffer is empty, it should not do anything.
-     * flush() writes the segment to disk containing the posting list and the corresponding document store.
+     * swap a buffer for an empty one and write the full buffer in the background, once fewer than
+     * DEFAULT_MAX_PENDING_FLUSHES buffers are being written
+     *
+     * @param buffer the buffer being flushed
      */
 
-    public void flush() {
-        // If the buffer is empty, return
-        if (invertedLists.size() == 0 || documents.size() == 0) {
-            return;
+    private void flushInBackground(SegmentBuffer buffer) {
+        SegmentBuffer full;
+        synchronized (buffer) {
+            if (buffer.isEmpty()) {
+                return;
+            }
+            full = buffer.swap();
+        }
+        pendingFlushes.acquireUninterruptibly();
+        CompletableFuture<Void> future;
+        try {
+            future = CompletableFuture.runAsync(() -> {
+                try {
+                    flushBuffer(full);
+                    mergeIfNeeded();
+                } finally {
+                    pendingFlushes.release();
+                }
+            }, flushExecutor);
+        } catch (RejectedExecutionException e) {
+            pendingFlushes.release();
+            throw e;
         }
-        docID = 0;
+        runningFlushes.add(future);
+        future.whenComplete((result, e) -> runningFlushes.remove(future));
+    }
 
-        // store the len(keywords), keywords, page(list), offset(list) (the offset of this page), len(list)
-        // in segmentXXa, with the first page have the total number of bytes the remaining pages will use
+    /**
+     * get a future completed when all the flushes started so far are complete
+     */
 
-        ByteBuffer wordsBuffer = ByteBuffer.allocate(STORE_PARAMETER * invertedLists.size());
-        int offset = 0;
-        int pageID = 0;
+    private CompletableFuture<Void> allRunningFlushes() {
+        return CompletableFuture.allOf(runningFlushes.toArray(new CompletableFuture[0]));
+    }
 
-        for (String word: invertedLists.keySet()) {
-            WordInfo wi = new WordInfo();
-            wi.setWordInfo(word, pageID, offset, invertedLists.get(word).size());
-            wi.writeOneWord(wordsBuffer);
+    /**
+     * wait for the background flushes started so far, ignoring their failures which are reported by flush()
+     */
 
-            offset += invertedLists.get(word).size() * 2 * 4;
-            if (offset >= PageFileChannel.PAGE_SIZE) {
-                pageID += 1;
-                offset -= PageFileChannel.PAGE_SIZE;
-            }
+    private void waitForFlushes() {
+        try {
+            allRunningFlushes().join();
+        } catch (CompletionException e) {
+            // already reported to the callers of flush()
         }
+    }
+
+    /**
+     * Gets the estimated heap bytes of the in-memory segment buffers of all the indexing threads, covering the terms,
+     * the posting lists, the position lists and the text of the buffered documents. Empty buffers are not counted.
+     */
 
-        Path wordsPath = Paths.get(indexFolder + "/segment" + segmentID + "a");
-        PageFileChannel wordsFileChannel = PageFileChannel.createOrOpen(wordsPath);
+    public long getBufferedBytes() {
+        long bytes = 0;
+        for (SegmentBuffer buffer : buffers.values()) {
+            synchronized (buffer) {
+                if (!buffer.isEmpty()) {
+                    bytes += buffer.ramBytesUsed();
+                }
+            }
+        }
+        return bytes;
+    }
 
-        // write the first page
-        writeFirstPageOfWord(wordsFileChannel, wordsBuffer.position());
+    /**
+     * check whether an in-memory segment buffer should be flushed by number of documents, the RAM budget is checked
+     * for all the buffers together by getBufferedBytes
+     */
 
-        // write the remaining page
-        wordsFileChannel.appendAllBytes(wordsBuffer);
-        wordsFileChannel.close();
+    boolean isBufferFull(SegmentBuffer buffer) {
+        return buffer.getNumDocuments() >= DEFAULT_FLUSH_THRESHOLD;
+    }
 
-        // store the posting lists in segmentXXb (for every docID and len(position list))
+    /**
+     * get the in-memory segment buffer using the most heap bytes, the one flushed when all the buffers reach the RAM
+     * budget
+     */
 
-        ByteBuffer listBuffer = ByteBuffer.allocate(STORE_PARAMETER * invertedLists.size());
-        for (String word: invertedLists.keySet()) {
-            List<Integer> postingList = invertedLists.get(word);
-            for (int docID: postingList) {
-                List<Integer> positionList = positions.get(word, docID);
-                listBuffer.putInt(docID);
-                listBuffer.putInt(positionList.size());
+    private SegmentBuffer getLargestBuffer() {
+        SegmentBuffer largest = null;
+        long largestBytes = -1;
+        for (SegmentBuffer buffer : buffers.values()) {
+            long bytes;
+            synchronized (buffer) {
+                bytes = buffer.ramBytesUsed();
+            }
+            if (bytes > largestBytes) {
+                largest = buffer;
+                largestBytes = bytes;
             }
         }
+        return largest;
+    }
 
-        Path listPath = Paths.get(indexFolder+"/segment" + segmentID + "b");
-        PageFileChannel listFileChannel = PageFileChannel.createOrOpen(listPath);
+    /**
+     * Flushes all the documents in the in-memory segment buffer to disk. If the buffer is empty, it should not do anything.
+     * flush() writes the segment to disk containing the posting list and the corresponding document store.
+     *
+     * The buffers of all the indexing threads are flushed, each to its own segment. With background flushes, the
+     * buffers are only handed to the background threads, call join() on the returned future to wait until they and
+     * all the buffers flushed before are on disk. The buffers of the threads which are terminated are dropped once they
+     * are flushed.
+     *
+     * The deletions made since the last flush are written to disk first.
+     *
+     * @return a future completed when the documents added before the call are on disk
+     */
 
-        listFileChannel.appendAllBytes(listBuffer);
-        listFileChannel.close();
+    public CompletableFuture<Void> flush() {
+        writeLiveDocs();
+        if (flushExecutor != null) {
+            for (SegmentBuffer buffer : buffers.values()) {
+                flushInBackground(buffer);
+            }
+            removeBuffersOfTerminatedThreads();
+            return allRunningFlushes();
+        }
+        for (SegmentBuffer buffer : buffers.values()) {
+            flushBuffer(buffer);
+        }
+        removeBuffersOfTerminatedThreads();
+        mergeIfNeeded();
+        return CompletableFuture.completedFuture(null);
+    }
 
-        // store all the documents in segmentXX.db
-        DocumentStore ds = MapdbDocStore.createWithBulkLoad(indexFolder + "/segment" + segmentID + ".db",documents.entrySet().iterator());
-        ds.close();
+    /**
+     * drop the empty buffers of the indexing threads which are terminated, so the buffers don't keep every thread which
+     * ever added a document. A terminated thread adds no more document to its buffer, so it can't be lost.
+     */
 
-        // clear the invertedLists and documents
-        this.invertedLists = new TreeMap<>();
-        this.documents = new TreeMap<>();
-        this.positions = TreeBasedTable.create();
-        segmentID += 1;
+    private void removeBuffersOfTerminatedThreads() {
+        buffers.entrySet().removeIf(entry -> {
+            if (entry.getKey().isAlive()) {
+                return false;
+            }
+            synchronized (entry.getValue()) {
+                return entry.getValue().isEmpty();
+            }
+        });
+    }
 
-        // if the num of segment reach DEFAULT_MERGE_THRESHOLD, call merge()
-        if (segmentID >= DEFAULT_MERGE_THRESHOLD) {
-            mergeAllSegments();
+    /**
+     * write the deletions not written yet of the visible segments to the next generation of their live-docs files
+     */
+
+    private void writeLiveDocs() {
+        segmentLock.readLock().lock();
+        try {
+            for (int segID : getSegmentIDs()) {
+                getLiveDocs(segID).write();
+            }
+        } finally {
+            segmentLock.readLock().unlock();
         }
     }
 
     /**
-     * write the first page into the file with an integer, which is the total number of bytes
-     * the remaining pages will use
+     * Writes an in-memory segment buffer to a new segment and clears it. The segment ID is taken atomically, so several
+     * threads can flush their buffers at once, and the segment becomes visible to the queries once the segments of all
+     * the flushes before it are written. If the segment can't be written, its files are deleted and the buffer is kept.
      *
-     * @param pfc file being written
-     * @param lim the total number of bytes the remaining pages will use
+     * @param buffer the buffer being flushed
      */
 
-    void writeFirstPageOfWord(PageFileChannel pfc, int lim) {
-        ByteBuffer limitBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
-        limitBuffer.putInt(lim);
-        pfc.appendPage(limitBuffer);
+    void flushBuffer(SegmentBuffer buffer) {
+        synchronized (buffer) {
+            // If the buffer is empty, return
+            if (buffer.isEmpty()) {
+                return;
+            }
+            segmentLock.readLock().lock();
+            try {
+                int flush = nextFlush.getAndIncrement();
+                int segID = nextSegmentID.getAndIncrement();
+                try {
+                    writeSegment(buffer, segID);
+                } catch (RuntimeException | Error e) {
+                    // the flush publishes no segment, so the flushes after it don't wait for it forever
+                    deleteSegmentFiles(segID);
+                    publishSegment(flush, NO_SEGMENT);
+                    throw e;
+                }
+                buffer.clear();
+                publishSegment(flush, segID);
+            } finally {
+                segmentLock.readLock().unlock();
+            }
+        }
     }
 
     /**
-     * read the first page on buffer, get the integer, and prepare the buffer for remaining reading
-     *
-     * @param bb ByteBuffer being read
-     * @return cap the total number of bytes the remaining pages will use
+     * the segment ID published by a flush which failed to write its segment
      */
 
-    int readFirstPageOfWord(ByteBuffer bb) {
-        bb.rewind();
-        int cap = bb.getInt();
-        bb.limit(PageFileChannel.PAGE_SIZE + cap);
-        bb.position(PageFileChannel.PAGE_SIZE);
-        return cap;
+    private static final int NO_SEGMENT = -1;
+
+    /**
+     * make the segment written by a flush visible to the queries, once the segments of the flushes before it are, together
+     * with the segments of the flushes after it which are already written, a failed flush publishes NO_SEGMENT
+     */
+
+    private void publishSegment(int flush, int segID) {
+        synchronized (writtenSegments) {
+            writtenSegments.put(flush, segID);
+            List<Integer> visible = new ArrayList<>(segments);
+            while (writtenSegments.containsKey(publishedFlushes)) {
+                int written = writtenSegments.remove(publishedFlushes);
+                if (written != NO_SEGMENT) {
+                    visible.add(written);
+                }
+                publishedFlushes += 1;
+            }
+            segments = Collections.unmodifiableList(visible);
+        }
     }
 
     /**
-     * delete a file
-     *
-     * @param fileName the name of the file being deleted
+     * Gets the IDs of the disk segments visible to the queries, in order. The list is never modified, a flush or a merge
+     * replaces it, and its segments keep their files until the queries holding the shared lock are done.
      */
 
-    void deleteFile(String fileName) {
-        File file = new File(fileName);
-        file.delete();
+    List<Integer> getSegmentIDs() {
+        return segments;
     }
 
     /**
-     * Merges all the disk segments of the inverted index pair-wise.
+     * get the ID of the n-th visible segment, a segment which is not visible yet is read by its number, which is its ID
+     * until the first merge
      */
 
-    public void mergeAllSegments() {
-        // merge only happens at even number of segments
-        Preconditions.checkArgument(getNumSegments() % 2 == 0);
-        for (int i = 0; i < segmentID; i += 2) {
-            int numDoc1 = mergeDocuments(i, i + 1);
-            mergeInvertedLists(i, i + 1, numDoc1);
+    int getSegmentID(int segmentNum) {
+        List<Integer> segIDs = segments;
+        return segmentNum < segIDs.size() ? segIDs.get(segmentNum) : segmentNum;
+    }
+
+    /**
+     * Sets the policy which chooses the segments merged after every flush, PairwiseMergePolicy by default.
+     */
+
+    public void setMergePolicy(MergePolicy mergePolicy) {
+        Preconditions.checkNotNull(mergePolicy);
+        segmentLock.writeLock().lock();
+        try {
+            this.mergePolicy = mergePolicy;
+        } finally {
+            segmentLock.writeLock().unlock();
         }
-        segmentID = segmentID / 2;
     }
 
     /**
-     * Merges the documents of two disk segments, return the number of documents in segment ID1
+     * Turns the background merges on or off.
+     *
+     * When they are on, the merges chosen by the merge policy after a flush are handed to a MergeScheduler, which runs
+     * up to DEFAULT_MAX_MERGE_THREADS of them at once while the indexing threads, the flushes and the queries go on.
+     * When they are off, the merges run in the flushing thread before the flush returns.
+     *
+     * Turning them off waits for the running merges.
      *
-     * @param segID1 the first segment ID
-     * @param segID2 the second segment ID
-     * @return the number of documents in segment ID1
+     * @param enabled whether the merges run in the background
      */
 
-    private int mergeDocuments(int segID1, int segID2) {
-        DocumentStore ds1 = MapdbDocStore.createOrOpen(indexFolder + "/segment" + segID1 + ".db");
-        DocumentStore ds2 = MapdbDocStore.createOrOpen(indexFolder + "/segment" + segID2 + ".db");
-        int numDoc1 = (int) ds1.size();
+    public synchronized void setBackgroundMerge(boolean enabled) {
+        if (enabled && mergeScheduler == null) {
+            mergeScheduler = new MergeScheduler(this, DEFAULT_MAX_MERGE_THREADS);
+        } else if (!enabled && mergeScheduler != null) {
+            MergeScheduler scheduler = mergeScheduler;
+            mergeScheduler = null;
+            scheduler.close();
+        }
+    }
 
-        Iterator<Map.Entry<Integer, Document>> itr2 = Iterators.transform(ds2.iterator(),
-                entry -> immutableEntry(entry.getKey() + numDoc1, entry.getValue()));
-        Iterator<Map.Entry<Integer, Document>> itr = Iterators.concat(ds1.iterator(), itr2);
+    /**
+     * Sets the executor on which the queries search the disk segments concurrently, one task per segment, or null to
+     * search them one after the other in the querying thread, which is the default. The results are the same, in the
+     * same order, either way; a query waits for its tasks and merges their results.
+     *
+     * Any executor fits, a fixed thread pool or a ForkJoinPool. It is shared by all the queries and is not shut down
+     * by the index.
+     *
+     * @param executor the executor of the searches of the segments, null for none
+     */
 
-        DocumentStore ds_new = MapdbDocStore.createWithBulkLoad(indexFolder + "/segment tmp .db", itr);
-        ds_new.close();
+    public void setSearchExecutor(ExecutorService executor) {
+        this.searchExecutor = executor;
+    }
 
-        ds1.close();
-        ds2.close();
+    /**
+     * Waits until the background merges started so far, and the merges they lead to, are done. Returns at once if the
+     * merges don't run in the background.
+     */
+
+    public void waitForMerges() {
+        MergeScheduler scheduler = mergeScheduler;
+        if (scheduler != null) {
+            scheduler.waitForMerges();
+        }
+    }
 
-        deleteFile(indexFolder + "/segment" + segID1 + ".db");
-        deleteFile(indexFolder + "/segment" + segID2 + ".db");
+    /**
+     * do the merges chosen by the merge policy, in the background if the merges run in the background, otherwise once
+     * no flush is in progress, until the policy finds no more merge
+     */
 
-        File f1 = new File(indexFolder + "/segment tmp .db");
-        File f2 = new File(indexFolder + "/segment" + segID1/2 + ".db");
-        f1.renameTo(f2);
+    void mergeIfNeeded() {
+        MergeScheduler scheduler = mergeScheduler;
+        if (scheduler != null) {
+            scheduler.maybeMerge();
+            return;
+        }
 
-        return numDoc1;
+        // the visible segments don't change while the lock is shared, so the flushes only wait for each other if
+        // there is a merge to do
+        segmentLock.readLock().lock();
+        try {
+            if (mergePolicy.findMerges(getSegmentSizes()).isEmpty()) {
+                return;
+            }
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+
+        segmentLock.writeLock().lock();
+        try {
+            List<Pair<Integer, Integer>> merges = mergePolicy.findMerges(getSegmentSizes());
+            while (!merges.isEmpty()) {
+                // merge from the last range, so the ranges before it keep their positions
+                for (int i = merges.size() - 1; i >= 0; i--) {
+                    mergeSegments(merges.get(i).getLeft(), merges.get(i).getRight());
+                }
+                merges = mergePolicy.findMerges(getSegmentSizes());
+            }
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
     }
 
     /**
-     * A help class for method getIndexListGivenLen
+     * Gets the size of every disk segment in bytes, the sum of the sizes of its files.
      */
 
-    class BufferListMap{
+    public long[] getSegmentSizes() {
+        return getSegmentSizes(segments);
+    }
 
-        ByteBuffer bb;
-        List<Integer> list;
-        Map<Integer, Integer> map;
-        int pageIDRead;
-        int offsetPos;
-        int lenPos;
+    /**
+     * get the size of every segment of a list in bytes, a segment merged away in the meantime has size 0
+     */
 
-        public BufferListMap(ByteBuffer bb, List<Integer> list, Map<Integer, Integer> map, int pageIDRead, int offsetPos, int lenPos){
-            this.bb = bb;
-            this.list = list;
-            this.map = map;
-            this.pageIDRead = pageIDRead;
-            this.offsetPos = offsetPos;
-            this.lenPos = lenPos;
+    long[] getSegmentSizes(List<Integer> segIDs) {
+        long[] sizes = new long[segIDs.size()];
+        for (int i = 0; i < sizes.length; i++) {
+            for (String x : SEGMENT_FILES) {
+                sizes[i] += new File(indexFolder + "/segment" + segIDs.get(i) + x).length();
+            }
         }
+        return sizes;
+    }
+
+    /**
+     * Merges a range of consecutive disk segments into one segment which takes the place of the range.
+     *
+     * @param left the position of the first segment of the range
+     * @param right the position after the last segment of the range
+     */
 
+    void mergeSegments(int left, int right) {
+        segmentLock.writeLock().lock();
+        try {
+            Preconditions.checkPositionIndexes(left, right, segments.size());
+            if (right - left < 2) {
+                return;
+            }
+            List<Integer> segIDs = new ArrayList<>(segments.subList(left, right));
+            replaceSegments(segIDs, mergeSegmentFiles(segIDs));
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
     }
 
     /**
-     * A help class for method getIndexListGivenLen
+     * A segment written by a merge, with the docID in the merged segment of every document of the segments it merges.
      */
 
-    class BufferAndList{
-        ByteBuffer bb;
-        List<Integer> list;
-        int pageIDRead;
-        Map<Integer, Integer> map;
+    static class MergedSegment {
+
+        int segID; // the ID of the merged segment, -1 if all the documents of the merged segments are deleted
+        final int[][] docMaps; // the new docID of every docID of every merged segment, -1 for the deleted documents
+        final BitSet[] deletions; // the deleted documents of every merged segment dropped by the merge
 
-        public BufferAndList(ByteBuffer bb, List<Integer> list, Map<Integer, Integer> map, int pageIDRead){
-            this.bb = bb;
-            this.list = list;
-            this.pageIDRead = pageIDRead;
-            this.map = map;
+        MergedSegment(int segID, int numSegments) {
+            this.segID = segID;
+            this.docMaps = new int[numSegments][];
+            this.deletions = new BitSet[numSegments];
         }
+
     }
 
     /**
-     * read a given page in the segment x into buffer (x = a represent reading dictionary, b represent reading
-     * posting list, c represent reading position list, d represent offset position list)
+     * Merges a list of disk segments into a new segment in a single pass, keeping the order of their documents, so
+     * every posting is rewritten once whatever the number of segments. The deleted documents are dropped and the others
+     * are given consecutive docIDs. The files of the merged segments are only read, so the queries go on using them
+     * meanwhile and no lock is needed, but a segment must not be merged by two merges at once.
      *
-     * @param segID the segment ID
-     * @param x the part of segment (a represent dictionary, b represent posting list, c represent position list)
-     * @param pageID the page of the file being read
-     * @return the ByteBuffer
+     * @param segIDs the IDs of the segments, at least 1
+     * @return the new segment, which is not visible until replaceSegments is called
      */
 
-    ByteBuffer readSegPage(int segID, String x, int pageID) {
-        Path path = Paths.get(indexFolder + "/segment" + segID + x);
-        PageFileChannel pfc = PageFileChannel.createOrOpen(path);
-        ByteBuffer indexBuffer = pfc.readPage(pageID);
-        indexBuffer.rewind();
-        pfc.close();
-        return indexBuffer;
+    MergedSegment mergeSegmentFiles(List<Integer> segIDs) {
+        MergedSegment merged = new MergedSegment(nextSegmentID.getAndIncrement(), segIDs.size());
+        deleteSegmentFiles(merged.segID);
+        try {
+            if (mergeDocuments(segIDs, merged) == 0) {
+                // no segment is written, the merged segments are just removed
+                merged.segID = -1;
+                return merged;
+            }
+            mergeInvertedLists(segIDs, merged.docMaps, merged.segID);
+        } catch (RuntimeException e) {
+            deleteSegmentFiles(merged.segID);
+            throw e;
+        }
+        return merged;
     }
 
     /**
-     * Get the posting list of a word in a given segment from a buffer, using the length of the list. If
-     * addNum = true, add the number n to all the elements in the list
+     * Makes a merged segment visible in place of the segments it merges, atomically for the queries, then deletes the
+     * files of these segments. The exclusive lock waits until the queries, the deletions and the flushes in progress,
+     * which may still read the old files, release them. The documents deleted from the segments while they were merged
+     * are deleted from the merged segment.
      *
-     * @param segID the segment ID
-     * @param bb the BybeBuffer being read with capacity = PAGE_SIZE
-     * @param pageIDRead the page of the list file being read
-     * @param len the length of the posting list
-     * @param addNum whether to add number n to all the elements in the list
-     * @param n the number being added
-     * @return the BybeBuffer being read, the posting list, the page of the list file being read
-     */
-
-    BufferAndList getIndexListGivenLen(int segID, ByteBuffer bb, int pageIDRead, int len, boolean addNum, int n) {
-        List<Integer> list = new LinkedList<>();
-        Map<Integer, Integer> map = new TreeMap<>();
-        int remainInt = (bb.limit() - bb.position()) / (4 * 2);
-        int lSize = len;
-
-        // if the posting list is longer than the remaining buffer, first read the buffer,
-        // then open the next page and read
-
-        while (lSize / remainInt >= 1) {
-            for (int i = 0; i < remainInt; i++) {
-                int docID = bb.getInt();
-                if (addNum) {
-                    docID += n;
+     * If the segments are not all visible anymore, because they were merged meanwhile by mergeAllSegments, the merged
+     * segment is dropped.
+     *
+     * @param segIDs the IDs of the merged segments, consecutive in the visible segments
+     * @param merged the merged segment
+     * @return true if the merged segments are replaced
+     */
+
+    boolean replaceSegments(List<Integer> segIDs, MergedSegment merged) {
+        segmentLock.writeLock().lock();
+        try {
+            synchronized (writtenSegments) {
+                List<Integer> visible = new ArrayList<>(segments);
+                int left = Collections.indexOfSubList(visible, segIDs);
+                if (left < 0) {
+                    if (merged.segID >= 0) {
+                        deleteSegmentFiles(merged.segID);
+                    }
+                    return false;
                 }
-                list.add(docID);
-                int lenPos = bb.getInt();
-                map.put(docID, lenPos);
+                visible.subList(left, left + segIDs.size()).clear();
+                if (merged.segID >= 0) {
+                    applyNewDeletions(segIDs, merged);
+                    visible.add(left, merged.segID);
+                }
+                segments = Collections.unmodifiableList(visible);
+            }
+            for (int segID : segIDs) {
+                deleteSegmentFiles(segID);
             }
-            pageIDRead += 1;
-            bb = readSegPage(segID, "b", pageIDRead);
-            lSize -= remainInt;
-            remainInt = PageFileChannel.PAGE_SIZE / (4 * 2);
+            return true;
+        } finally {
+            segmentLock.writeLock().unlock();
         }
+    }
 
-        // if the posting list is no longer than the remaining buffer, just read the buffer
+    /**
+     * delete from a merged segment the documents deleted from the segments it merges after the merge read their
+     * deletions
+     */
 
-        for (int i = 0; i < lSize; i++) {
-            int docID = bb.getInt();
-            if (addNum) {
-                docID += n;
+    private void applyNewDeletions(List<Integer> segIDs, MergedSegment merged) {
+        List<Integer> docIDs = new ArrayList<>();
+        for (int i = 0; i < segIDs.size(); i++) {
+            BitSet deleted = (BitSet) getLiveDocs(segIDs.get(i)).getDeleted().clone();
+            deleted.andNot(merged.deletions[i]);
+            for (int docID = deleted.nextSetBit(0); docID >= 0; docID = deleted.nextSetBit(docID + 1)) {
+                docIDs.add(merged.docMaps[i][docID]);
             }
-            list.add(docID);
-            int lenPos = bb.getInt();
-            map.put(docID, lenPos);
         }
-        return new BufferAndList(bb, list, map, pageIDRead);
+        if (!docIDs.isEmpty()) {
+            getLiveDocs(merged.segID).delete(docIDs);
+        }
     }
 
     /**
-     * Write the posting list of a word into buffer by page, if the list length is larger than the page size,
-     * append the page and open another buffer
-     *
-     * @param pfc the file being written
-     * @param bb the ByteBuffer being written with capacity = PAGE_SIZE
-     * @param l the posting list
+     * the suffixes of the files of a segment
      */
 
-    void writeListBufferByPage(PageFileChannel pfc, ByteBuffer bb, List<Integer> l, Map<Integer, Integer> map) {
-        int lSize = l.size();
-        int remainInt = (bb.limit() - bb.position()) / (4 * 2);
-        int lPos = 0;
+    static final String[] SEGMENT_FILES = {"a", "b", "c", "d", DocumentNorms.FILE, ".db"};
 
-        // if the posting list is longer than the remaining buffer, first write the buffer,
-        // then append the page and open another buffer to write
+    /**
+     * delete all the files of a segment
+     */
 
-        while (lSize / remainInt >= 1) {
-            for (int i = 0; i < remainInt; i++, lPos++) {
-                int docID = l.get(lPos);
-                bb.putInt(docID);
-                int lenPos = map.get(docID);
-                bb.putInt(lenPos);
-            }
-            pfc.appendPage(bb);
-            bb.clear();
-            lSize -= remainInt;
-            remainInt = PageFileChannel.PAGE_SIZE / (4 * 2);
+    void deleteSegmentFiles(int segID) {
+        for (String x : SEGMENT_FILES) {
+            deleteFile(indexFolder + "/segment" + segID + x);
         }
+        LiveDocs.deleteFiles(indexFolder, segID);
+        closeSegmentReader(segID);
+        documentCache.invalidateSegment(segID);
+    }
 
-        // if the posting list is no longer than the remaining buffer, just write the buffer
-        for (int i = 0; i < lSize; i++, lPos++) {
-            int docID = l.get(lPos);
-            bb.putInt(docID);
-            int lenPos = map.get(docID);
-            bb.putInt(lenPos);
+    /**
+     * Writes the dictionary, the posting lists and the documents of an in-memory segment buffer to a segment.
+     *
+     * @param buffer the buffer being written
+     * @param segID the ID of the new segment
+     */
+
+    void writeSegment(SegmentBuffer buffer, int segID) {
+        PostingsBuffer postings = buffer.getPostings();
+        int[] termIDs = postings.getSortedTermIDs();
+
+        // stream the len(keywords), keywords, page(list), offset(list) (the offset of this page), len(list), the largest
+        // impact of the list into the blocks of segmentXXa, and the posting lists into segmentXXb (for every docID and len(position list))
+
+        SegmentWriter writer = new SegmentWriter(indexFolder, segID);
+        writer.writeNorms(DocumentNorms.compute(postings, termIDs, buffer.getNumDocuments()));
+        for (int termID: termIDs) {
+            int offset = writer.getOffset("b");
+            int numDocs = postings.getNumDocs(termID);
+            int[] docIDs = new int[numDocs];
+            int[] freqs = new int[numDocs];
+            for (int i = 0; i < numDocs; i++) {
+                docIDs[i] = postings.getDocID(termID, i);
+                freqs[i] = postings.getFreq(termID, i);
+            }
+            float maxImpact = BlockPostings.write(writer, docIDs, freqs, numDocs);
+
+            WordInfo wi = new WordInfo();
+            wi.setWordInfo(postings.getTerm(termID), offset / PageFileChannel.PAGE_SIZE,
+                    offset % PageFileChannel.PAGE_SIZE, numDocs, maxImpact);
+            writer.addWord(wi);
         }
+        writer.close();
+
+        // store all the documents in segmentXX.db
+        writeDocumentStore(segID, buffer.getDocuments().entrySet().iterator());
+        closeSegmentReader(segID);
     }
 
     /**
-     * Merges the invertedLists of two disk segments
-     *
-     * @param segID1 the first segment ID
-     * @param segID2 the second segment ID
-     * @param numDoc1 the number of documents in the first segment
+     * write the documents of a segment, sorted by docID, to its document store segmentXX.db, in the format chosen by
+     * DEFAULT_COMPRESS_DOCUMENTS
      */
 
-    void mergeInvertedLists(int segID1, int segID2, int numDoc1) {
-        // read two segmentXXa into two buffer and delete these two segmentXXa
-        Path path = Paths.get(indexFolder + "/segment" + segID1 + "a");
-        PageFileChannel pfc = PageFileChannel.createOrOpen(path);
-        ByteBuffer wb1 = pfc.readAllPages();
-        pfc.close();
-        deleteFile(indexFolder + "/segment" + segID1 + "a");
-        int cap1 = readFirstPageOfWord(wb1);
+    void writeDocumentStore(int segID, Iterator<Map.Entry<Integer, Document>> documents) {
+        String docStoreFile = indexFolder + "/segment" + segID + ".db";
+        DocumentStore ds = DEFAULT_COMPRESS_DOCUMENTS
+                ? BlockCompressedDocStore.createWithBulkLoad(docStoreFile, documents)
+                : MapdbDocStore.createWithBulkLoad(docStoreFile, documents);
+        ds.close();
+    }
 
-        path = Paths.get(indexFolder + "/segment" + segID2 + "a");
-        pfc = PageFileChannel.createOrOpen(path);
-        ByteBuffer wb2 = pfc.readAllPages();
-        pfc.close();
-        deleteFile(indexFolder + "/segment" + segID2 + "a");
-        int cap2 = readFirstPageOfWord(wb2);
+    /**
+     * write the first page into the file with an integer, which is the total number of bytes
+     * the remaining pages will use
+     *
+     * @param pfc file being written
+     * @param lim the total number of bytes the remaining pages will use
+     */
 
-        // merge the inverted lists of the two segments
-        ByteBuffer wordsBuffer = ByteBuffer.allocate(10 * (cap1 + cap2));
-        ByteBuffer listBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+    void writeFirstPageOfWord(PageFileChannel pfc, int lim) {
+        ByteBuffer limitBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+        limitBuffer.putInt(lim);
+        pfc.appendPage(limitBuffer);
+    }
 
-        WordInfo wi1 = new WordInfo();
-        wi1.readOneWord(wb1);
-        WordInfo wi2 = new WordInfo();
-        wi2.readOneWord(wb2);
+    /**
+     * read the first page on buffer, get the integer, and prepare the buffer for remaining reading
+     *
+     * @param bb ByteBuffer being read
+     * @return cap the total number of bytes the remaining pages will use
+     */
 
-        int offset = 0;
-        int pageID = 0;
-        int pageIDRead1 = 0;
-        int pageIDRead2 = 0;
-        ByteBuffer lb1 = readSegPage(segID1, "b", pageIDRead1);
-        ByteBuffer lb2 = readSegPage(segID2, "b", pageIDRead2);
+    int readFirstPageOfWord(ByteBuffer bb) {
+        bb.rewind();
+        int cap = bb.getInt();
+        bb.limit(PageFileChannel.PAGE_SIZE + cap);
+        bb.position(PageFileChannel.PAGE_SIZE);
+        return cap;
+    }
 
-        path = Paths.get(indexFolder + "/segment b tmp");
-        PageFileChannel listFileChannel = PageFileChannel.createOrOpen(path);
+    /**
+     * Gets the reader of a disk segment, opening it on the first call. The reader is kept open across queries until the
+     * segment is rewritten by a flush or a merge.
+     *
+     * @param segID the segment ID
+     * @return the reader of the segment
+     */
 
-        while (true) {
-            if (wi1.word.equals(wi2.word)) {
-                // add them to the dictionary, find their lists and add them to the disk
-                // move both bb1 and bb2 to the next words
-
-                //get the list according to the word, for list 2, all docID add numDoc1
-                BufferAndList bl1 = getIndexListGivenLen(segID1, lb1, pageIDRead1, wi1.len, false, numDoc1);
-                lb1 = bl1.bb;
-                List<Integer> ls1 = bl1.list;
-                Map<Integer, Integer> map1 = bl1.map;
-                pageIDRead1 = bl1.pageIDRead;
-
-                BufferAndList bl2 = getIndexListGivenLen(segID2, lb2, pageIDRead2, wi2.len, true, numDoc1);
-                lb2 = bl2.bb;
-                List<Integer> ls2 = bl2.list;
-                Map<Integer, Integer> map2 = bl2.map;
-                pageIDRead2 = bl2.pageIDRead;
+    SegmentReader getSegmentReader(int segID) {
+        return readers.computeIfAbsent(segID, id -> new SegmentReader(indexFolder, id));
+    }
 
-                ls1.addAll(ls2);
-                map1.putAll(map2);
+    /**
+     * Gets the deleted documents of a disk segment, kept by its reader.
+     *
+     * @param segID the segment ID
+     */
 
-                //write the word info into buffer
-                WordInfo wi = new WordInfo();
-                wi.setWordInfo(wi1.word, pageID, offset, ls1.size());
-                wi.writeOneWord(wordsBuffer);
-                offset += ls1.size() * (4 * 2);
+    LiveDocs getLiveDocs(int segID) {
+        return getSegmentReader(segID).getLiveDocs();
+    }
 
-                //write the list info into buffer, if buffer full, append it into disk
-                writeListBufferByPage(listFileChannel, listBuffer, ls1, map1);
+    /**
+     * Drops the reader of a disk segment and closes its document store, it must be called whenever the files of the
+     * segment are rewritten, while no query reads them.
+     *
+     * @param segID the segment ID
+     */
 
-                //check whether bb1 and bb2 can move to the next words
-                if (!wb1.hasRemaining() || !wb2.hasRemaining()) {
-                    break;
-                }
+    void closeSegmentReader(int segID) {
+        SegmentReader reader = readers.remove(segID);
+        if (reader != null) {
+            reader.close();
+        }
+    }
 
-                //move bb1 and bb2 to the next words
-                wi1 = new WordInfo();
-                wi1.readOneWord(wb1);
-                wi2 = new WordInfo();
-                wi2.readOneWord(wb2);
-            }
-            else if (wi1.word.compareTo(wi2.word) > 0) {
-                // add key2 and its list to the disk, move bb2 to the next word
-                BufferAndList bl2 = getIndexListGivenLen(segID2, lb2, pageIDRead2, wi2.len, true, numDoc1);
-                lb2 = bl2.bb;
-                List<Integer> ls2 = bl2.list;
-                Map<Integer, Integer> map2 = bl2.map;
-                pageIDRead2 = bl2.pageIDRead;
-
-                WordInfo wi = new WordInfo();
-                wi.setWordInfo(wi2.word, pageID, offset, ls2.size());
-                wi.writeOneWord(wordsBuffer);
-                offset += ls2.size() * (4 * 2);
-
-                writeListBufferByPage(listFileChannel, listBuffer, ls2, map2);
-
-                if (!wb2.hasRemaining()) {
-                    if (offset >= PageFileChannel.PAGE_SIZE) {
-                        pageID += 1;
-                        offset -= PageFileChannel.PAGE_SIZE;
-                    }
+    /**
+     * read all the word info of the dictionary of a segment into a buffer, with position at the first word info and
+     * limit at the end of the last one, whether the dictionary is in the block format or in the legacy format
+     *
+     * @param segID the segment ID
+     * @return the ByteBuffer of the word info
+     */
 
-                    BufferAndList bl1 = getIndexListGivenLen(segID1, lb1, pageIDRead1, wi1.len, false, numDoc1);
-                    lb1 = bl1.bb;
-                    List<Integer> ls1 = bl1.list;
-                    Map<Integer, Integer> map1 = bl1.map;
-                    pageIDRead1 = bl1.pageIDRead;
+    ByteBuffer readDictionary(int segID) {
+        return getSegmentReader(segID).readDictionary();
+    }
 
-                    wi = new WordInfo();
-                    wi.setWordInfo(wi1.word, pageID, offset, ls1.size());
-                    wi.writeOneWord(wordsBuffer);
-                    offset += ls1.size() * (4 * 2);
+    /**
+     * check whether the records of the dictionary of a segment have the largest impact of their posting list, see
+     * BlockDictionary
+     */
 
-                    writeListBufferByPage(listFileChannel, listBuffer, ls1, map1);
-                    break;
-                }
-                wi2 = new WordInfo();
-                wi2.readOneWord(wb2);
-            }
-            else {
-                // add key1 and its list to the disk, move bb1 to the next word
-                BufferAndList bl1 = getIndexListGivenLen(segID1, lb1, pageIDRead1, wi1.len, false, numDoc1);
-                lb1 = bl1.bb;
-                List<Integer> ls1 = bl1.list;
-                Map<Integer, Integer> map1 = bl1.map;
-                pageIDRead1 = bl1.pageIDRead;
+    boolean dictionaryHasImpacts(int segID) {
+        return getSegmentReader(segID).dictionaryHasImpacts();
+    }
 
-                WordInfo wi = new WordInfo();
-                wi.setWordInfo(wi1.word, pageID, offset, ls1.size());
-                wi.writeOneWord(wordsBuffer);
-                offset += ls1.size() * (4 * 2);
+    /**
+     * write the word info in a buffer, from its position to its limit, into a new dictionary in the block format
+     *
+     * @param segID the segment ID of the dictionary
+     * @param wordsBuffer the buffer of the word info
+     * @param entry a reusable word info used to decode the buffer
+     */
 
-                writeListBufferByPage(listFileChannel, listBuffer, ls1, map1);
+    void writeDictionary(int segID, ByteBuffer wordsBuffer, DictionaryEntry entry) {
+        Path path = Paths.get(indexFolder + "/segment" + segID + "a");
+        PageFileChannel pfc = PageFileChannel.createOrOpen(path);
+        BlockDictionaryWriter dictionaryWriter = new BlockDictionaryWriter(pfc);
+        dictionaryWriter.addAll(wordsBuffer, entry);
+        dictionaryWriter.close();
+        pfc.close();
+        closeSegmentReader(segID);
+    }
 
-                if (!wb1.hasRemaining()) {
-                    if (offset >= PageFileChannel.PAGE_SIZE) {
-                        pageID += 1;
-                        offset -= PageFileChannel.PAGE_SIZE;
-                    }
+    /**
+     * Looks up a word in the dictionary of a segment. Block dictionaries are searched with one binary search on the
+     * block index and one block read, legacy dictionaries are scanned from the beginning.
+     *
+     * @param segID the segment ID
+     * @param word the word to look for
+     * @param entry the word info the result is read into
+     * @return true if the word is in the dictionary
+     */
 
-                    BufferAndList bl2 = getIndexListGivenLen(segID2, lb2, pageIDRead2, wi2.len, true, numDoc1);
-                    lb2 = bl2.bb;
-                    List<Integer> ls2 = bl2.list;
-                    Map<Integer, Integer> map2 = bl2.map;
-                    pageIDRead2 = bl2.pageIDRead;
+    boolean lookupWord(int segID, String word, DictionaryEntry entry) {
+        return getSegmentReader(segID).lookupWord(word, entry);
+    }
+
+    /**
+     * delete a file
+     *
+     * @param fileName the name of the file being deleted
+     */
 
-                    wi = new WordInfo();
-                    wi.setWordInfo(wi2.word, pageID, offset, ls2.size());
-                    wi.writeOneWord(wordsBuffer);
-                    offset += ls2.size() * (4 * 2);
+    void deleteFile(String fileName) {
+        File file = new File(fileName);
+        file.delete();
+    }
 
-                    writeListBufferByPage(listFileChannel, listBuffer, ls2, map2);
+    /**
+     * Merges all the disk segments of the inverted index pair-wise, dropping their deleted documents.
+     * The background merges started before are waited for.
+     */
 
-                    break;
-                }
-                wi1 = new WordInfo();
-                wi1.readOneWord(wb1);
+    public void mergeAllSegments() {
+        waitForMerges();
+        segmentLock.writeLock().lock();
+        try {
+            // merge only happens at even number of segments
+            Preconditions.checkArgument(getNumSegments() % 2 == 0);
+            List<Integer> segIDs = segments;
+            for (int i = 0; i < segIDs.size(); i += 2) {
+                List<Integer> pair = segIDs.subList(i, i + 2);
+                replaceSegments(pair, mergeSegmentFiles(pair));
             }
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
 
-            if (offset >= PageFileChannel.PAGE_SIZE) {
-                pageID += 1;
-                offset -= PageFileChannel.PAGE_SIZE;
+    /**
+     * Merges the live documents of disk segments into a new segment, the documents of every segment follow the ones of
+     * the segments before it with consecutive docIDs, and fills the docID maps and the numbers of deletions applied of
+     * the merged segment. The document store is not written if all the documents are deleted.
+     *
+     * @param segIDs the IDs of the segments
+     * @param merged the merged segment, with a new ID whose files don't exist
+     * @return the number of documents of the merged segment
+     */
+
+    private int mergeDocuments(List<Integer> segIDs, MergedSegment merged) {
+        List<DocumentStore> stores = new ArrayList<>();
+        List<Iterator<Map.Entry<Integer, Document>>> itrs = new ArrayList<>();
+        int numDocs = 0;
+        for (int i = 0; i < segIDs.size(); i++) {
+            BitSet deleted = getLiveDocs(segIDs.get(i)).getDeleted();
+            merged.deletions[i] = deleted;
+            DocumentStore ds = SegmentReader.openDocumentStore(indexFolder, segIDs.get(i));
+            stores.add(ds);
+
+            // the docIDs of a segment are 0 to the number of documents - 1
+            int[] docMap = new int[(int) ds.size()];
+            for (int docID = 0; docID < docMap.length; docID++) {
+                docMap[docID] = deleted.get(docID) ? -1 : numDocs++;
             }
+            merged.docMaps[i] = docMap;
+            itrs.add(Iterators.transform(Iterators.filter(ds.iterator(), entry -> docMap[entry.getKey()] >= 0),
+                    entry -> immutableEntry(docMap[entry.getKey()], entry.getValue())));
         }
 
-        if (!wb1.hasRemaining() && wb2.hasRemaining()) {
-            while (wb2.hasRemaining()) {
-                if (offset >= PageFileChannel.PAGE_SIZE) {
-                    pageID += 1;
-                    offset -= PageFileChannel.PAGE_SIZE;
-                }
+        if (numDocs > 0) {
+            writeDocumentStore(merged.segID, Iterators.concat(itrs.iterator()));
+        }
 
-                wi2 = new WordInfo();
-                wi2.readOneWord(wb2);
+        for (DocumentStore ds : stores) {
+            ds.close();
+        }
+        return numDocs;
+    }
 
-                BufferAndList bl2 = getIndexListGivenLen(segID2, lb2, pageIDRead2, wi2.len, true, numDoc1);
-                lb2 = bl2.bb;
-                List<Integer> ls2 = bl2.list;
-                Map<Integer, Integer> map2 = bl2.map;
-                pageIDRead2 = bl2.pageIDRead;
+    /**
+     * read a given page in the segment x into buffer (x = a represent reading dictionary, b represent reading
+     * posting list, c represent reading position list, d represent offset position list)
+     *
+     * @param segID the segment ID
+     * @param x the part of segment (a represent dictionary, b represent posting list, c represent position list)
+     * @param pageID the page of the file being read
+     * @return the ByteBuffer
+     */
+
+    ByteBuffer readSegPage(int segID, String x, int pageID) {
+        return getSegmentReader(segID).readPage(x, pageID);
+    }
+
+    /**
+     * read a given range of bytes in the segment x, which may span several pages
+     *
+     * @param segID the segment ID
+     * @param x the part of segment (a represent dictionary, b represent posting list, c represent position list)
+     * @param offset the starting position of the bytes in the whole file
+     * @param length the number of bytes being read
+     * @return the bytes
+     */
 
-                WordInfo wi = new WordInfo();
-                wi.setWordInfo(wi2.word, pageID, offset, ls2.size());
-                wi.writeOneWord(wordsBuffer);
-                offset += ls2.size() * (4 * 2);
+    byte[] readSegBytes(int segID, String x, int offset, int length) {
+        return getSegmentReader(segID).readBytes(x, offset, length);
+    }
 
-                writeListBufferByPage(listFileChannel, listBuffer, ls2, map2);
+    /**
+     * A cursor over the dictionary of one of the segments of a merge, in word order. The cursors are ordered by their
+     * current word, then by the order of their segments.
+     */
+
+    static class TermCursor implements Comparable<TermCursor> {
+
+        final int segIndex; // the position of the segment in the merge
+        final int segID;
+        final int[] docMap; // the docID in the merged segment of every docID of the segment, -1 if deleted
+        final ByteBuffer words;
+        final boolean hasImpacts; // whether the records of the dictionary have the largest impact of their list
+        final DictionaryEntry entry; // the word info of the current word
+
+        TermCursor(int segIndex, int segID, int[] docMap, ByteBuffer words, boolean hasImpacts, DictionaryEntry entry) {
+            this.segIndex = segIndex;
+            this.segID = segID;
+            this.docMap = docMap;
+            this.words = words;
+            this.hasImpacts = hasImpacts;
+            this.entry = entry;
+        }
+
+        /**
+         * move to the next word of the dictionary, return false if there is none
+         */
+
+        boolean next() {
+            if (!words.hasRemaining()) {
+                return false;
             }
+            entry.readOneWord(words, hasImpacts);
+            return true;
         }
 
-        if (wb1.hasRemaining() && !wb2.hasRemaining()) {
-            while (wb1.hasRemaining()) {
-                if (offset >= PageFileChannel.PAGE_SIZE) {
-                    pageID += 1;
-                    offset -= PageFileChannel.PAGE_SIZE;
+        @Override
+        public int compareTo(TermCursor other) {
+            int cmp = entry.getWord().compareTo(other.entry.getWord());
+            return cmp != 0 ? cmp : Integer.compare(segIndex, other.segIndex);
+        }
+
+    }
+
+    /**
+     * Merges the inverted lists of disk segments into a new segment in a single pass: the sorted dictionaries of the
+     * segments are walked at once with a priority queue of cursors, and the lists of every word are streamed to the
+     * merged segment in the order of the segments, without the postings of the deleted documents and with the docIDs
+     * of the merged segment. The words having no posting left are dropped.
+     *
+     * @param segIDs the IDs of the segments
+     * @param docMaps the docID in the merged segment of every docID of every segment, -1 for the deleted documents
+     * @param outID the ID of the merged segment, a new ID whose files don't exist, the segments are left as they are
+     */
+
+    void mergeInvertedLists(List<Integer> segIDs, int[][] docMaps, int outID) {
+        PriorityQueue<TermCursor> queue = new PriorityQueue<>();
+        for (int i = 0; i < segIDs.size(); i++) {
+            int segID = segIDs.get(i);
+            TermCursor cursor = new TermCursor(i, segID, docMaps[i], readDictionary(segID), dictionaryHasImpacts(segID),
+                    newDictionaryEntry());
+            if (cursor.next()) {
+                queue.add(cursor);
+            }
+        }
+
+        SegmentWriter writer = new SegmentWriter(indexFolder, outID);
+        List<DocumentNorms> norms = new ArrayList<>();
+        for (int segID : segIDs) {
+            norms.add(getSegmentReader(segID).getNorms());
+        }
+        writer.writeNorms(DocumentNorms.merge(norms, docMaps));
+        List<TermCursor> cursors = new ArrayList<>();
+        while (!queue.isEmpty()) {
+            // take the cursors of all the segments having the smallest word, in the order of the segments
+            String word = queue.peek().entry.getWord();
+            cursors.clear();
+            while (!queue.isEmpty() && queue.peek().entry.getWord().equals(word)) {
+                cursors.add(queue.poll());
+            }
+            mergeTerm(writer, word, cursors);
+            for (TermCursor cursor : cursors) {
+                if (cursor.next()) {
+                    queue.add(cursor);
                 }
+            }
+        }
+        finishSegment(writer);
+        writer.close();
+    }
 
-                wi1 = new WordInfo();
-                wi1.readOneWord(wb1);
+    /**
+     * create an empty word info of the dictionaries of the index
+     */
 
-                BufferAndList bl1 = getIndexListGivenLen(segID1, lb1, pageIDRead1, wi1.len, false, numDoc1);
-                lb1 = bl1.bb;
-                List<Integer> ls1 = bl1.list;
-                Map<Integer, Integer> map1 = bl1.map;
-                pageIDRead1 = bl1.pageIDRead;
+    DictionaryEntry newDictionaryEntry() {
+        return new WordInfo();
+    }
 
-                WordInfo wi = new WordInfo();
-                wi.setWordInfo(wi1.word, pageID, offset, ls1.size());
-                wi.writeOneWord(wordsBuffer);
-                offset += ls1.size() * (4 * 2);
+    /**
+     * write the concatenated posting lists of a word of a merge and its word info, with the docIDs of the merged segment
+     * and without the postings of the deleted documents, nothing if no posting is left
+     *
+     * @param writer the writer of the merged segment
+     * @param word the word
+     * @param cursors the cursors of the segments having the word, in the order of the segments
+     */
 
-                writeListBufferByPage(listFileChannel, listBuffer, ls1, map1);
+    void mergeTerm(SegmentWriter writer, String word, List<TermCursor> cursors) {
+        int maxLen = 0;
+        for (TermCursor cursor : cursors) {
+            maxLen += ((WordInfo) cursor.entry).len;
+        }
+        int[] docIDs = new int[maxLen];
+        int[] freqs = new int[maxLen];
+        int len = 0;
+        for (TermCursor cursor : cursors) {
+            WordInfo entry = (WordInfo) cursor.entry;
+            ByteBuffer listBuffer = ByteBuffer.wrap(readSegBytes(cursor.segID, "b",
+                    getPostingsOffset(entry), entry.len * (4 * 2)));
+            for (int i = 0; i < entry.len; i++) {
+                int docID = cursor.docMap[listBuffer.getInt()];
+                int freq = listBuffer.getInt();
+                if (docID >= 0) {
+                    docIDs[len] = docID;
+                    freqs[len] = freq;
+                    len += 1;
+                }
             }
         }
+        if (len == 0) {
+            return;
+        }
 
-        // set list file
-        listFileChannel.appendAllBytes(listBuffer);
-        listFileChannel.close();
-        deleteFile(indexFolder + "/segment" + segID1 + "b");
-        deleteFile(indexFolder + "/segment" + segID2 + "b");
+        // the skip list of the merged list is written before its postings
+        int offset = writer.getOffset("b");
+        float maxImpact = BlockPostings.write(writer, docIDs, freqs, len);
+        WordInfo wi = new WordInfo();
+        wi.setWordInfo(word, offset / PageFileChannel.PAGE_SIZE, offset % PageFileChannel.PAGE_SIZE, len, maxImpact);
+        writer.addWord(wi);
+    }
 
-        File f1 = new File(indexFolder + "/segment b tmp");
-        File f2 = new File(indexFolder + "/segment" + segID1/2 + "b");
-        f1.renameTo(f2);
+    /**
+     * get the offset in segmentXXb of the first posting of a word, after the skip list of its posting list
+     */
 
-        // set word file
-        path = Paths.get(indexFolder + "/segment" + segID1/2 + "a");
-        PageFileChannel wordsFileChannel = PageFileChannel.createOrOpen(path);
+    static int getPostingsOffset(WordInfo wi) {
+        return wi.pageID * PageFileChannel.PAGE_SIZE + wi.offset + BlockPostings.getSkipListBytes(wi.len);
+    }
 
-        writeFirstPageOfWord(wordsFileChannel, wordsBuffer.position());
+    /**
+     * write what follows the last word of a segment being written, nothing for the inverted index
+     */
 
-        wordsFileChannel.appendAllBytes(wordsBuffer);
-        wordsFileChannel.close();
+    void finishSegment(SegmentWriter writer) {
     }
 
     /*private void merge(int segID1, int segID2) {
@@ -951,24 +1446,33 @@ public class InvertedIndexManager {
         if (word.size() == 0 || word.get(0).length() == 0) {
             return docs.iterator();
         }
-        keyword = word.get(0);
-        int totalSegments = getNumSegments();
+        String token = word.get(0);
 
-        // searching each individual segment
-        for (int seg = 0; seg < totalSegments; seg++) {
-            Path dictSeg = Paths.get(indexFolder + "/segment" + seg + "a");
-            PageFileChannel pfc = PageFileChannel.createOrOpen(dictSeg);
+        // the segments are not merged away while they are searched
+        segmentLock.readLock().lock();
+        try {
+            // searching each individual segment
+            for (List<Document> segmentDocs : searchSegments(getSegmentIDs(), seg -> {
+                // loading the dictionary
+                PostingsCursor cursor = openCursor(token, seg);
+                if (cursor == null) {
+                    return Collections.<Document>emptyList();
+                }
+                List<Integer> info = new ArrayList<>();
+                for (int doc = cursor.nextDoc(); doc != PostingsCursor.NO_MORE_DOCS; doc = cursor.nextDoc()) {
+                    info.add(doc);
+                }
+                if (info.isEmpty()) {
+                    return Collections.<Document>emptyList();
+                }
 
-            // loading the dictionary
-            List<Integer> info = findKeyword(pfc, keyword, seg);
-            pfc.close();
-            if (info.isEmpty()) {
-                continue;
+                // all the documents in the segment match the keyword
+                return getDocuments(seg, info);
+            })) {
+                docs.addAll(segmentDocs);
             }
-
-            // all the documents in the segment match the keyword
-            List<Document> segmentDocs = getDocuments(seg, info);
-            docs.addAll(segmentDocs);
+        } finally {
+            segmentLock.readLock().unlock();
         }
         return docs.iterator();
     }
@@ -982,52 +1486,35 @@ public class InvertedIndexManager {
 
     public Iterator<Document> searchAndQuery(List<String> keywords) {
         Preconditions.checkNotNull(keywords);
-        int totalSegments = getNumSegments();
         List<Document> andDocs = new ArrayList<>();
+        List<String> words = analyzeKeywords(keywords);
 
-        // for the first merge, just copy the result
-        boolean flag = true;
-
-        // search segments
-        for (int seg = 0; seg < totalSegments; seg++) {
-            Path dictSeg = Paths.get(indexFolder + "/segment" + seg + "a");
-            PageFileChannel pfc = PageFileChannel.createOrOpen(dictSeg);
-
-            // result of the and search
-            List<Integer> andSearch = new ArrayList<>();
-            for (String keyword : keywords) {
-                List<String> word = analyzer.analyze(keyword);
-                if (word.size() == 0 || word.get(0).length() == 0) {
-                    continue;
-                }
-                keyword = word.get(0);
-                List<Integer> info = findKeyword(pfc, keyword, seg);
-                if (info.isEmpty()) {
-                    andSearch.clear();
-                    break;
-                }
-                if (flag) {
-
-                    // copy the result for the first search
-                    andSearch = andMerge(info, info);
-                    flag = false;
+        // the segments are not merged away while they are searched
+        segmentLock.readLock().lock();
+        try {
+            // search segments
+            for (List<Document> segmentDocs : searchSegments(getSegmentIDs(), seg -> {
+                // a cursor per keyword, none of the documents of the segment match if a keyword is missing
+                List<PostingsCursor> cursors = openCursors(words, seg);
+                if (cursors == null || cursors.isEmpty()) {
+                    return Collections.<Document>emptyList();
                 }
-                else {
+                cursors = rarestFirst(cursors);
 
-                    // merge the results
-                    andSearch = andMerge(andSearch, info);
+                // result of the and search
+                List<Integer> andSearch = new ArrayList<>();
+                for (int doc = nextCommonDoc(cursors); doc != PostingsCursor.NO_MORE_DOCS; doc = nextCommonDoc(cursors)) {
+                    andSearch.add(doc);
                 }
-                if (andSearch.isEmpty()) {
-                    break;
+                if (andSearch.size() == 0) {
+                    return Collections.<Document>emptyList();
                 }
+                return getDocuments(seg, andSearch);
+            })) {
+                andDocs.addAll(segmentDocs);
             }
-            pfc.close();
-            if (andSearch.size() == 0) {
-                continue;
-            }
-            List<Document> segmentDocs = getDocuments(seg, andSearch);
-            andDocs.addAll(segmentDocs);
-            flag = false;
+        } finally {
+            segmentLock.readLock().unlock();
         }
         return andDocs.iterator();
     }
@@ -1042,39 +1529,43 @@ public class InvertedIndexManager {
     public Iterator<Document> searchOrQuery(List<String> keywords) {
         Preconditions.checkNotNull(keywords);
         List<Document> orDocs = new ArrayList<>();
-        int totalSegments = getNumSegments();
+        List<String> words = analyzeKeywords(keywords);
 
-        // search each segment
-        for (int seg = 0; seg < totalSegments; seg++) {
-            Path dictSeg = Paths.get(indexFolder + "/segment" + seg + "a");
-            PageFileChannel pfc = PageFileChannel.createOrOpen(dictSeg);
-
-            // result of or search
-            List<Integer> orSearch = new ArrayList<>();
-
-            // search fo each keyword
-            for (String keyword : keywords) {
-                List<String> word = analyzer.analyze(keyword);
+        // the segments are not merged away while they are searched
+        segmentLock.readLock().lock();
+        try {
+            // search each segment
+            for (List<Document> segmentDocs : searchSegments(getSegmentIDs(), seg -> {
+                // the cursors of the keywords in the segment, ordered by their current docID
+                PriorityQueue<PostingsCursor> queue = new PriorityQueue<>(Comparator.comparingInt(PostingsCursor::docID));
+                for (String keyword : words) {
+                    PostingsCursor cursor = openCursor(keyword, seg);
+                    if (cursor != null && cursor.nextDoc() != PostingsCursor.NO_MORE_DOCS) {
+                        queue.add(cursor);
+                    }
+                }
 
-                // check if keyword is empty
-                if (word.size() == 0 || word.get(0).length() == 0) {
-                    continue;
+                // result of or search, each docID once
+                List<Integer> orSearch = new ArrayList<>();
+                while (!queue.isEmpty()) {
+                    PostingsCursor cursor = queue.poll();
+                    int doc = cursor.docID();
+                    if (orSearch.isEmpty() || orSearch.get(orSearch.size() - 1) != doc) {
+                        orSearch.add(doc);
+                    }
+                    if (cursor.nextDoc() != PostingsCursor.NO_MORE_DOCS) {
+                        queue.add(cursor);
+                    }
                 }
-                keyword = word.get(0);
-                List<Integer> info = findKeyword(pfc, keyword, seg);
-                if (info.isEmpty()) {
-                    continue;
+                if (orSearch.size() == 0) {
+                    return Collections.<Document>emptyList();
                 }
-
-                // merge the results
-                orSearch = orMerge(orSearch, info);
-            }
-            pfc.close();
-            if (orSearch.size() == 0) {
-                continue;
+                return getDocuments(seg, orSearch);
+            })) {
+                orDocs.addAll(segmentDocs);
             }
-            List<Document> segmentDocs = getDocuments(seg, orSearch);
-            orDocs.addAll(segmentDocs);
+        } finally {
+            segmentLock.readLock().unlock();
         }
         return orDocs.iterator();
     }
@@ -1094,185 +1585,254 @@ public class InvertedIndexManager {
     }
 
     /**
-     * Finds the keyword in the loaded PageChannelFile of the dictionary.
-     *
-     * @param pfc loaded segment from the disk
-     * @param target the keyword to look for
-     * @param segID the segment number to look for the target in
-     * @return a list of integers containing the ID of documents matching the search
+     * analyze the keywords of a query, skipping the ones which are analyzed to nothing
      */
 
-    private List<Integer> findKeyword(PageFileChannel pfc, String target, int segID) {
-        List<Integer> ans = new ArrayList<>();
-        int lim = pfc.getNumPages();
-        int pageNumber = 1;
-        while (pageNumber < lim) {
-            ByteBuffer bb = pfc.readPage(pageNumber);
-            bb.limit(PageFileChannel.PAGE_SIZE);
-            bb.rewind();
-            while (bb.hasRemaining()) {
-                int wordLength = bb.getInt();
-                if (wordLength == 0) {
-                    break;
-                }
-                byte[] word = new byte[wordLength];
-                for (int i = 0; i < wordLength; i++) {
-                    word[i] = bb.get();
-                }
-                String dictWord = new String(word);
-                int pageID = bb.getInt();
-                int offset = bb.getInt();
-                int length = bb.getInt();
-                if (dictWord.equals(target)) {
-                    ans = getIndexList(segID, pageID, offset, length);
-                    return ans;
-                }
+    List<String> analyzeKeywords(List<String> keywords) {
+        List<String> words = new ArrayList<>();
+        for (String keyword : keywords) {
+            List<String> word = analyzer.analyze(keyword);
+            if (word.size() == 0 || word.get(0).length() == 0) {
+                continue;
             }
-            pageNumber++;
+            words.add(word.get(0));
         }
-        return ans;
+        return words;
     }
 
     /**
-     * Get all the documents matching the ID list in a segment.
+     * Opens a cursor over the posting list of a word in a segment.
      *
-     * @param segID the number of segment
-     * @param idList a list of document IDs
-     * @return a list of documents matching the search
+     * @param word the analyzed word
+     * @param segID the segment ID
+     * @return the cursor, null if the segment doesn't have the word
+     */
+
+    PostingsCursor openCursor(String word, int segID) {
+        WordInfo wi = new WordInfo();
+        if (!lookupWord(segID, word, wi)) {
+            return null;
+        }
+        int offset = wi.pageID * PageFileChannel.PAGE_SIZE + wi.offset;
+        return new BlockPostings(getSegmentReader(segID), offset, wi.len, wi.maxImpact).cursor(getLiveDocs(segID));
+    }
+
+    /**
+     * open a cursor per word in a segment, in the order of the words, null if the segment misses one of them
      */
 
-    private List<Document> getDocuments(int segID, List<Integer> idList) {
-        List<Document> ans = new ArrayList<>();
-        String path = indexFolder + "/segment" + segID + ".db";
-        DocumentStore ds = MapdbDocStore.createOrOpen(path);
-        Iterator<Integer> docsIterator = ds.keyIterator();
-        while (docsIterator.hasNext()) {
-            int tempID = docsIterator.next();
-            if (!idList.isEmpty() && idList.contains(tempID)) {
-                ans.add(ds.getDocument(tempID));
+    List<PostingsCursor> openCursors(List<String> words, int segID) {
+        List<PostingsCursor> cursors = new ArrayList<>();
+        for (String word : words) {
+            PostingsCursor cursor = openCursor(word, segID);
+            if (cursor == null) {
+                return null;
             }
+            cursors.add(cursor);
         }
-        ds.close();
-        return ans;
+        return cursors;
     }
 
     /**
-     * Get the inverted list in a certain page of a segment with given offset and length.
+     * run the search of a query in every segment, concurrently on the search executor if there is one, and return the
+     * results in the order of the segments. The caller holds the read lock of the segments until all the searches are
+     * done, so they must not take the lock again: a merge waiting for the write lock would block them. The failure of
+     * a search is thrown once all of them are done.
      *
-     * @param segID the ID of segment
-     * @param pageID the ID of page
-     * @param offset an offset of the inverted list
-     * @param length the length of the inverted list
-     * @return a list of document IDs matching the search
+     * @param segIDs the IDs of the segments
+     * @param search the search of one segment, by segment ID
      */
 
-    private List<Integer> getIndexList(int segID, int pageID, int offset, int length) {
-        Path path = Paths.get(indexFolder + "/segment" + segID + "b");
-        PageFileChannel pfc = PageFileChannel.createOrOpen(path);
-        ByteBuffer indexBuffer = pfc.readPage(pageID);
-        indexBuffer.position(offset);
-        List<Integer> ans = new ArrayList<>();
-        for (int i = 0; i < length; i++) {
-            try {
-                int docID = indexBuffer.getInt();
-                ans.add(docID);
+    <T> List<T> searchSegments(List<Integer> segIDs, IntFunction<T> search) {
+        List<T> results = new ArrayList<>();
+        ExecutorService executor = searchExecutor;
+        if (executor == null || segIDs.size() < 2) {
+            for (int segID : segIDs) {
+                results.add(search.apply(segID));
             }
-            catch (BufferUnderflowException e) {
-                pageID++;
-                indexBuffer = pfc.readPage(pageID);
-                indexBuffer.position(0);
-                int docID = indexBuffer.getInt();
-                ans.add(docID);
+            return results;
+        }
+
+        List<CompletableFuture<T>> futures = new ArrayList<>();
+        for (int segID : segIDs) {
+            futures.add(CompletableFuture.supplyAsync(() -> search.apply(segID), executor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw e;
         }
-        pfc.close();
-        return ans;
+        for (CompletableFuture<T> future : futures) {
+            results.add(future.join());
+        }
+        return results;
     }
 
     /**
-     * Performs merge for the and search query
-     *
-     * @param list1 a new list of results
-     * @param list2 old list
-     * @return a merged list
+     * order the cursors of a conjunction by increasing length of their posting list, so the rarest word leads and the
+     * longer lists are only advanced, galloping over their postings, to the few documents it has
      */
 
-    private List<Integer> andMerge(List<Integer> list1, List<Integer> list2) {
-        List<Integer> ans = new ArrayList<>();
+    static List<PostingsCursor> rarestFirst(List<PostingsCursor> cursors) {
+        List<PostingsCursor> ordered = new ArrayList<>(cursors);
+        ordered.sort(Comparator.comparingInt(PostingsCursor::cost));
+        return ordered;
+    }
+
+    /**
+     * Moves the cursors to the next document all of them have. The first cursor leads, the others are advanced to its
+     * docID, and it is advanced in turn past the documents they skip. The search stops as soon as one of the cursors
+     * is exhausted.
+     *
+     * @param cursors the cursors, all on the same docID or not started, the rarest first
+     * @return the docID the cursors are on, NO_MORE_DOCS if there is no more common document
+     */
 
-        // lists are considered to be sorted already
-        if (list1.size() == 0 || list2.size() == 0) {
-            return ans;
-        }
-        int p1 = 0;
-        int p2 = 0;
-        while (p1 < list1.size() && p2 < list2.size()) {
-            int num1 = list1.get(p1);
-            int num2 = list2.get(p2);
-            if (num1 == num2) {
-                ans.add(num1);
-                p1++;
-                p2++;
+    static int nextCommonDoc(List<PostingsCursor> cursors) {
+        PostingsCursor lead = cursors.get(0);
+        int doc = lead.nextDoc();
+        while (doc != PostingsCursor.NO_MORE_DOCS) {
+            int next = doc;
+            for (int i = 1; i < cursors.size() && next == doc; i++) {
+                PostingsCursor cursor = cursors.get(i);
+                next = cursor.docID() < doc ? cursor.advance(doc) : cursor.docID();
             }
-            else if (num1 < num2) {
-                p1++;
+            if (next == doc || next == PostingsCursor.NO_MORE_DOCS) {
+                return next;
             }
-            else {
-                p2++;
+            doc = lead.advance(next);
+        }
+        return doc;
+    }
+
+    /**
+     * Explains how an AND search is run, for debugging: for each segment, the order the keywords are intersected in,
+     * the rarest first, with the length of their posting list, or the keyword which is missing from the segment.
+     *
+     * @param keywords a list of keywords in the AND query
+     * @return the plan, a line per segment
+     */
+
+    public String explainAndQuery(List<String> keywords) {
+        Preconditions.checkNotNull(keywords);
+        List<String> words = analyzeKeywords(keywords);
+        StringBuilder plan = new StringBuilder();
+        segmentLock.readLock().lock();
+        try {
+            for (int seg : getSegmentIDs()) {
+                plan.append("segment ").append(seg).append(": ");
+                List<PostingsCursor> cursors = new ArrayList<>();
+                for (String word : words) {
+                    PostingsCursor cursor = openCursor(word, seg);
+                    if (cursor == null) {
+                        cursors = null;
+                        plan.append("\"").append(word).append("\" is missing, skipped");
+                        break;
+                    }
+                    cursors.add(cursor);
+                }
+                if (cursors != null) {
+                    List<String> steps = new ArrayList<>();
+                    for (PostingsCursor cursor : rarestFirst(cursors)) {
+                        steps.add(words.get(cursors.indexOf(cursor)) + " (" + cursor.cost() + " postings)");
+                    }
+                    plan.append(String.join(" -> ", steps));
+                }
+                plan.append("\n");
             }
+        } finally {
+            segmentLock.readLock().unlock();
         }
-        return ans;
+        return plan.toString();
     }
 
     /**
-     * Performs merge for the or search query
+     * Finds the keyword in the dictionary of a segment.
      *
-     * @param list1 a new list of results
-     * @param list2 old list
-     * @return a merged list
+     * @param target the keyword to look for
+     * @param segID the segment number to look for the target in
+     * @return a list of integers containing the ID of documents matching the search, the deleted ones excluded
      */
 
-    private List<Integer> orMerge(List<Integer> list1, List<Integer> list2) {
-        List<Integer> ans = new ArrayList<>();
+    List<Integer> findKeyword(String target, int segID) {
+        WordInfo wi = new WordInfo();
+        if (!lookupWord(segID, target, wi)) {
+            return new ArrayList<>();
+        }
+        return getIndexList(segID, wi.pageID, wi.offset, wi.len);
+    }
 
-        // lists are considered to be sorted already
-        if (list1.size() == 0 && list2.size() == 0) {
-            return ans;
-        }
-        if (list1.size() == 0) {
-            return list2;
-        }
-        if (list2.size() == 0) {
-            return list1;
-        }
-        int p1 = 0;
-        int p2 = 0;
-        while (p1 < list1.size() && p2 < list2.size()) {
-            int num1 = list1.get(p1);
-            int num2 = list2.get(p2);
-            if (num1 == num2) {
-                ans.add(num1);
-                p1++;
-                p2++;
-            }
-            else if (num1 < num2) {
-                ans.add(num1);
-                p1++;
-            }
-            else {
-                ans.add(num2);
-                p2++;
+    /**
+     * Get all the documents matching the ID list in a segment, from the document cache, or else through the document
+     * store kept by its reader, all at once, in which case they are added to the cache.
+     *
+     * @param segID the number of segment
+     * @param idList a list of document IDs, in increasing order
+     * @return a list of documents matching the search
+     */
+
+    List<Document> getDocuments(int segID, List<Integer> idList) {
+        Document[] documents = new Document[idList.size()];
+        List<Integer> missing = new ArrayList<>(); // the positions of the documents which are not cached
+        for (int i = 0; i < documents.length; i++) {
+            documents[i] = documentCache.get(segID, idList.get(i));
+            if (documents[i] == null) {
+                missing.add(i);
             }
         }
-        while (p1 < list1.size()) {
-            int num1 = list1.get(p1);
-            ans.add(num1);
-            p1++;
+        if (missing.isEmpty()) {
+            return Arrays.asList(documents);
+        }
+
+        int[] sortedIds = new int[missing.size()];
+        for (int i = 0; i < sortedIds.length; i++) {
+            sortedIds[i] = idList.get(missing.get(i));
+        }
+        List<Document> read = getSegmentReader(segID).getDocumentStore().getDocuments(sortedIds);
+        for (int i = 0; i < sortedIds.length; i++) {
+            documents[missing.get(i)] = read.get(i);
+            if (read.get(i) != null) {
+                documentCache.put(segID, sortedIds[i], read.get(i));
+            }
         }
-        while (p2 < list2.size()) {
-            int num2 = list2.get(p2);
-            ans.add(num2);
-            p2++;
+        return Arrays.asList(documents);
+    }
+
+    /**
+     * Gets the cache of the documents read by the queries, with its hit rate.
+     */
+
+    public DocumentCache getDocumentCache() {
+        return documentCache;
+    }
+
+    /**
+     * Get the inverted list in a certain page of a segment with given offset and length, without the deleted documents.
+     *
+     * @param segID the ID of segment
+     * @param pageID the ID of page
+     * @param offset an offset of the inverted list
+     * @param length the length of the inverted list
+     * @return a list of document IDs matching the search
+     */
+
+    private List<Integer> getIndexList(int segID, int pageID, int offset, int length) {
+        LiveDocs liveDocs = getLiveDocs(segID);
+        WordInfo wi = new WordInfo();
+        wi.setWordInfo(null, pageID, offset, length);
+        ByteBuffer indexBuffer = ByteBuffer.wrap(readSegBytes(segID, "b", getPostingsOffset(wi), length * 4 * 2));
+        List<Integer> ans = new ArrayList<>();
+
+        // every posting is a docID followed by its term frequency
+        for (int i = 0; i < length; i++) {
+            int docID = indexBuffer.getInt();
+            indexBuffer.getInt();
+            if (liveDocs.isLive(docID)) {
+                ans.add(docID);
+            }
         }
         return ans;
     }
@@ -1288,6 +1848,10 @@ public class InvertedIndexManager {
      * Unlike Boolean Query and Phrase Query where order of the documents doesn't matter,
      * for ranked search, order of the document returned by the iterator matters.
      *
+     * The score of a document is the dot product of the tf-idf weights of the query terms in the document with their
+     * query weights, normalized by the length of the vector of the frequencies of all the terms of the document, read
+     * from its statistics (see DocumentNorms).
+     *
      * @param keywords, a list of keywords in the query
      * @param topK, number of top documents weighted by TF-IDF, all documents if topK is null
      * @return a iterator of top-k ordered documents matching the query
@@ -1320,124 +1884,99 @@ public class InvertedIndexManager {
             }
         }
 
-        PriorityQueue<Map.Entry<Pair<Integer, Integer>, Double>> pq = new PriorityQueue<>(
-                (a,b) -> a.getValue().compareTo(b.getValue())
-        );
-
-        // In the second pass
-        int segNum = getNumSegments();
-        for (int i = 0; i < segNum; i++) {
-            Map<Pair<Integer, Integer>, Double> score = new HashMap<>();
-            Map<Pair<Integer, Integer>, Double> dotProductAccumulator = new HashMap<>();
-            Map<Pair<Integer, Integer>, Double> vectorLengthAccumulator = new HashMap<>();
-
-            // read segmentXXa
-            Path wordsPath = Paths.get(indexFolder + "/segment" + i + "a");
-            PageFileChannel wordsFileChannel = PageFileChannel.createOrOpen(wordsPath);
-            Path listPath = Paths.get(indexFolder + "/segment" + i + "b");
-            PageFileChannel listFileChannel = PageFileChannel.createOrOpen(listPath);
-
-            // search the dictionary for the token, get the posting list and TF for each document
-            for (String w: wordSet) {
-                WordInfo wi = findWord(wordsFileChannel, w);
-
-                // if there are no keyword in dictionary, continue the next loop
-                if (wi.word == null) {
-                    continue;
-                }
+        // the terms in a fixed order, with their IDF and query weight
+        List<String> terms = new ArrayList<>(wordSet);
+        double[] idfs = new double[terms.size()];
+        double[] queryWeights = new double[terms.size()];
+        for (int t = 0; t < terms.size(); t++) {
+            idfs[t] = IDF.get(terms.get(t));
+            queryWeights[t] = queryTF.get(terms.get(t)) * IDF.get(terms.get(t));
+        }
+        WandScorer scorer = new WandScorer(topK, keepsZeroScores());
 
-                ByteBuffer listBuffer = listFileChannel.readPage(wi.pageID);
-                listBuffer.position(wi.offset);
-                BufferAndList bl = getIndexListGivenLen(i, listBuffer, wi.pageID, wi.len, false, 0);
-                Map<Integer,Integer> docMap = bl.map;
-
-                // for each docID on the postingList of w, compute tfidf
-                for (int docID: docMap.keySet()) {
-                    double tfIdf = docMap.get(docID) * IDF.get(w);
-                    double queryTfIdf = queryTF.get(w) * IDF.get(w);
-                    Pair<Integer, Integer> doc = new Pair<>(i, docID);
-
-                    if (dotProductAccumulator.containsKey(doc)) {
-                        dotProductAccumulator.put(doc, dotProductAccumulator.get(doc) + tfIdf * queryTfIdf);
-                        vectorLengthAccumulator.put(doc, vectorLengthAccumulator.get(doc) + tfIdf * tfIdf);
-                    } else {
-                        dotProductAccumulator.put(doc, tfIdf * queryTfIdf);
-                        vectorLengthAccumulator.put(doc, tfIdf * tfIdf);
-                    }
+        // the segments are not merged away until their documents are retrieved
+        List<Pair<Document, Double>> result = new ArrayList<>();
+        segmentLock.readLock().lock();
+        try {
+            // In the second pass, score the documents of each segment which may enter the top-k ones, the segments
+            // sharing the top-k results found so far
+            List<Integer> segIDs = getSegmentIDs();
+            searchSegments(segIDs, i -> {
+                List<PostingsCursor> cursors = new ArrayList<>();
+                for (String w : terms) {
+                    cursors.add(openCursor(w, i));
                 }
+                scorer.scoreSegment(i, segIDs.indexOf(i), cursors, idfs, queryWeights, getSegmentReader(i).getNorms());
+                return null;
+            });
+
+            // based on <SegmentID, LocalDocID> retrieve the documents of each segment at once, by increasing docID
+            List<WandScorer.ScoredDoc> topDocs = scorer.getTopDocs();
+            Map<Integer, TreeMap<Integer, Document>> segmentDocs = new HashMap<>();
+            for (WandScorer.ScoredDoc doc : topDocs) {
+                segmentDocs.computeIfAbsent(doc.segID, seg -> new TreeMap<>()).put(doc.docID, null);
             }
-
-            wordsFileChannel.close();
-            listFileChannel.close();
-            // for each docID in this segment, compute the score and add it to priority queue
-            for (Pair<Integer, Integer> d: dotProductAccumulator.keySet()) {
-                if (vectorLengthAccumulator.get(d) != 0.0) {
-                    score.put(d, (double) dotProductAccumulator.get(d) / Math.sqrt(vectorLengthAccumulator.get(d)));
+            for (Map.Entry<Integer, TreeMap<Integer, Document>> entry : segmentDocs.entrySet()) {
+                List<Integer> docIDs = new ArrayList<>(entry.getValue().keySet());
+                List<Document> docs = getDocuments(entry.getKey(), docIDs);
+                for (int i = 0; i < docIDs.size(); i++) {
+                    entry.getValue().put(docIDs.get(i), docs.get(i));
                 }
             }
-            pq.addAll(score.entrySet());
-            if (topK != null) {
-                while (pq.size() > topK)
-                    pq.poll();
+            for (WandScorer.ScoredDoc doc : topDocs) {
+                result.add(new Pair<>(segmentDocs.get(doc.segID).get(doc.docID), doc.score));
             }
-        }
-
-        // based on <SegmentID, LocalDocID> retrieve document
-        List<Pair<Document, Double>> result = new ArrayList<>();
-        int pqSize = pq.size();
-        for (int i = 0; i < pqSize; i++) {
-            Map.Entry<Pair<Integer, Integer>, Double> tmp = pq.poll();
-            Pair<Integer, Integer> doc = tmp.getKey();
-            result.add(0, new Pair<>(getDoc(doc), tmp.getValue()));
+        } finally {
+            segmentLock.readLock().unlock();
         }
         return result.iterator();
     }
 
     /**
-     * Find a word in the dictionary, if can not find, return an empty WordInfo
+     * whether the ranked search returns the documents whose query terms all have a zero tf-idf weight, with a score of 0
      */
 
-    private WordInfo findWord (PageFileChannel wordsFileChannel, String w) {
-        ByteBuffer wordsBuffer = wordsFileChannel.readAllPages();
-        readFirstPageOfWord(wordsBuffer);
-
-        WordInfo wi = new WordInfo();
-        while (wordsBuffer.hasRemaining()) {
-            wi.readOneWord(wordsBuffer);
-            if (w.equals(wi.word)) {
-                return wi;
-            }
-        }
-        return new WordInfo();
+    boolean keepsZeroScores() {
+        return false;
     }
 
     /**
-     * Retrieve document based on <SegmentID, LocalDocID>
+     * Returns the IDF of the token, from the statistics of the visible segments
      */
 
-    Document getDoc(Pair<Integer, Integer> doc) {
-        int segmentID = doc.getLeft();
-        int localDocID = doc.getRight();
-        DocumentStore ds = MapdbDocStore.createOrOpen(indexFolder + "/segment" + segmentID + ".db");
-        Document d = ds.getDocument(localDocID);
-        ds.close();
-        return d;
+    double computeIDF(String token) {
+        int N;
+        int freq;
+        // the segments of the statistics are not merged away while their dictionaries are read
+        segmentLock.readLock().lock();
+        try {
+            IndexStatistics stats = getStatistics();
+            N = stats.getTotalDocuments();
+            freq = stats.getDocumentFrequency(token, segID -> documentFrequency(segID, token));
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+        double result = (double) N / freq;
+        return Math.log(result);
     }
 
     /**
-     * Returns the IDF of the token
+     * get the statistics of the visible segments, built again once a flush or a merge changed them. The read lock of
+     * the segments must be held.
      */
 
-    double computeIDF(String token) {
-        int segNum = getNumSegments();
-        int N = 0;
-        int freq = 0;
-        for (int i = 0; i < segNum; i++) {
-            N += getNumDocuments(i);
-            freq += getDocumentFrequency(i, token);
+    IndexStatistics getStatistics() {
+        IndexStatistics stats = statistics;
+        List<Integer> segIDs = getSegmentIDs();
+        if (stats == null || !stats.isOf(segIDs)) {
+            int[] numDocuments = new int[segIDs.size()];
+            for (int i = 0; i < segIDs.size(); i++) {
+                numDocuments[i] = countDocuments(segIDs.get(i));
+            }
+            stats = new IndexStatistics(segIDs, numDocuments);
+            statistics = stats;
         }
-        double result = (double) N / freq;
-        return Math.log(result);
+        return stats;
     }
 
     /**
@@ -1445,10 +1984,20 @@ public class InvertedIndexManager {
      */
 
     public int getNumDocuments(int segmentNum) {
-        DocumentStore ds = MapdbDocStore.createOrOpen(indexFolder + "/segment" + segmentNum + ".db");
-        int numDoc = (int) ds.size();
-        ds.close();
-        return numDoc;
+        segmentLock.readLock().lock();
+        try {
+            return countDocuments(getSegmentID(segmentNum));
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * count the documents of a segment, the deleted ones included, from the statistics of its documents
+     */
+
+    private int countDocuments(int segID) {
+        return getSegmentReader(segID).getNorms().getNumDocuments();
     }
 
     /**
@@ -1457,50 +2006,60 @@ public class InvertedIndexManager {
      */
 
     public int getDocumentFrequency(int segmentNum, String token) {
-        int lenList = 0;
-        // read segmentXXa
-        Path wordsPath = Paths.get(indexFolder + "/segment" + segmentNum + "a");
-        PageFileChannel wordsFileChannel = PageFileChannel.createOrOpen(wordsPath);
-        ByteBuffer wordsBuffer = wordsFileChannel.readAllPages();
-        wordsFileChannel.close();
-        readFirstPageOfWord(wordsBuffer);
+        segmentLock.readLock().lock();
+        try {
+            return documentFrequency(getSegmentID(segmentNum), token);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * get the number of documents of a segment containing an analyzed token, the length of its posting list in the
+     * dictionary of segmentXXa
+     */
 
-        // based on remaining page, search the dictionary for the token and get the len(list)
+    int documentFrequency(int segID, String token) {
         WordInfo wi = new WordInfo();
-        while (wordsBuffer.hasRemaining()) {
-            wi.readOneWord(wordsBuffer);
-            if (token.equals(wi.word)) {
-                lenList = wi.len;
-                break;
-            }
+        segmentLock.readLock().lock();
+        try {
+            return lookupWord(segID, token, wi) ? wi.len : 0;
+        } finally {
+            segmentLock.readLock().unlock();
         }
-        return lenList;
     }
 
     /**
-     * Iterates through all the documents in all disk segments.
+     * Iterates through all the documents in all disk segments, except the deleted ones.
+     * The documents are read when the iterator is created, so merges running meanwhile don't change them.
      */
 
     public Iterator<Document> documentIterator() {
-        if (segmentID == 0) {
-            return null;
-        }
+        segmentLock.readLock().lock();
+        try {
+            List<Integer> segIDs = getSegmentIDs();
+            if (segIDs.isEmpty()) {
+                return null;
+            }
 
-        DocumentStore ds = MapdbDocStore.createOrOpen(indexFolder + "/segment" + 0 + ".db");
-        Iterator<Document> docsIterator = Iterators.transform(ds.iterator(), entry -> entry.getValue());
-        ds.close();
+            // the document store is read before its segment may be merged away
+            List<Document> docs = new ArrayList<>();
+            for (int segID : segIDs) {
+                LiveDocs liveDocs = getLiveDocs(segID);
+                DocumentStore ds = getSegmentReader(segID).getDocumentStore();
+                Iterators.addAll(docs, Iterators.transform(
+                        Iterators.filter(ds.iterator(), entry -> liveDocs.isLive(entry.getKey())), entry -> entry.getValue()));
+            }
 
-        for (int i = 1; i < segmentID; i++) {
-            ds = MapdbDocStore.createOrOpen(indexFolder + "/segment" + i + ".db");
-            docsIterator = Iterators.concat(docsIterator, Iterators.transform(ds.iterator(), entry -> entry.getValue()));
-            ds.close();
+            return docs.iterator();
+        } finally {
+            segmentLock.readLock().unlock();
         }
-
-        return docsIterator;
     }
 
     /**
      * Deletes all documents in all disk segments of the inverted index that match the query.
+     * The queries skip the deleted documents at once, the deletions are written to disk by the next flush.
      * @param keyword: all document matching keyword must be deleted
      */
 
@@ -1510,58 +2069,42 @@ public class InvertedIndexManager {
             return;
         }
         keyword = word.get(0);
-        int totalSegments = getNumSegments();
-        for (int seg = 0; seg < totalSegments; seg++) {
-            Path dictSeg = Paths.get(indexFolder + "/segment" + seg + "a");
-            PageFileChannel pfc = PageFileChannel.createOrOpen(dictSeg);
-            List<Integer> info = findKeyword(pfc, keyword, seg);
-            pfc.close();
-            if (info == null) {
-                continue;
-            }
-
-            // creating a separate file for deleted documents for each segment
-            Path deleted = Paths.get(indexFolder + "/segment" + seg + "d");
-            pfc = PageFileChannel.createOrOpen(deleted);
-            ByteBuffer deletedBuffer = ByteBuffer.allocate(info.size() * 4);
-            for (int post : info) {
-                deletedBuffer.putInt(post);
+        segmentLock.readLock().lock();
+        try {
+            for (int seg : getSegmentIDs()) {
+                List<Integer> info = findKeyword(keyword, seg);
+                if (info.isEmpty()) {
+                    continue;
+                }
+                getLiveDocs(seg).delete(info);
+                for (int docID : info) {
+                    documentCache.invalidate(seg, docID);
+                }
             }
-            pfc.appendAllBytes(deletedBuffer);
-            pfc.close();
+        } finally {
+            segmentLock.readLock().unlock();
         }
     }
 
     /**
-     * Checks if the docID is in the list of deleted IDs.
-     * @param segID the ID of the segment
-     * @param docID the document ID
+     * Rewrites the disk segments whose ratio of deleted documents is above DEFAULT_EXPUNGE_DELETES_RATIO without their
+     * deleted documents, so they stop taking space and query time. A segment whose documents are all deleted is removed.
+     * The background merges started before are waited for.
      */
 
-    private boolean isDeleted(int segID, int docID) {
-        Path path = Paths.get(indexFolder + "/segment" + segID + "d");
-        PageFileChannel pfc = PageFileChannel.createOrOpen(path);
-        int lim = pfc.getNumPages();
-        int pageID = 0;
-        ByteBuffer buf = pfc.readPage(pageID);
-        buf.position(0);
-        while (true) {
-            try {
-                int id = buf.getInt();
-                if (id == docID) {
-                    return true;
-                }
-            }
-            catch (BufferUnderflowException e) {
-                pageID++;
-                if (pageID >= lim) {
-                    break;
+    public void expungeDeletes() {
+        waitForMerges();
+        segmentLock.writeLock().lock();
+        try {
+            for (int segID : segments) {
+                if (getLiveDocs(segID).getNumDeleted() > DEFAULT_EXPUNGE_DELETES_RATIO * countDocuments(segID)) {
+                    List<Integer> segIDs = Collections.singletonList(segID);
+                    replaceSegments(segIDs, mergeSegmentFiles(segIDs));
                 }
-                buf = pfc.readPage(pageID);
-                buf.position(0);
             }
+        } finally {
+            segmentLock.writeLock().unlock();
         }
-        return false;
     }
 
     /**
@@ -1572,7 +2115,7 @@ public class InvertedIndexManager {
      */
 
     public int getNumSegments() {
-        return segmentID;
+        return segments.size();
     }
 
 
@@ -1585,46 +2128,48 @@ public class InvertedIndexManager {
      */
 
     public InvertedIndexSegmentForTest getIndexSegment(int segmentNum) {
-        if (segmentID == 0) {
+        if (getNumSegments() == 0) {
             return null;
         }
+        segmentLock.readLock().lock();
+        try {
+            return readIndexSegment(getSegmentID(segmentNum));
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * read all the contents of a disk segment into memory
+     *
+     * @param segID the segment ID
+     */
+
+    private InvertedIndexSegmentForTest readIndexSegment(int segID) {
         Map<String, List<Integer>> invertedLists = new TreeMap<>();
         Map<Integer, Document> documents = new TreeMap<>();
-        Map<String, Integer> wordDic = new TreeMap<>();
 
         // read segmentXXa
-        Path wordsPath = Paths.get(indexFolder + "/segment" + segmentNum + "a");
-        PageFileChannel wordsFileChannel = PageFileChannel.createOrOpen(wordsPath);
-
-        ByteBuffer wordsBuffer = wordsFileChannel.readAllPages();
-        wordsFileChannel.close();
-        int lim = readFirstPageOfWord(wordsBuffer);
+        ByteBuffer wordsBuffer = readDictionary(segID);
 
-        // based on remaining page, build map<String, Integer> in which key is keyword, value is len(list)
+        // read segmentXXb, build map<String, List<Integer>> invertedLists from the postings after the skip list of
+        // every word
+        ByteBuffer listBuffer = getSegmentReader(segID).readAllPages("b");
+        boolean hasImpacts = dictionaryHasImpacts(segID);
         WordInfo wi = new WordInfo();
         while (wordsBuffer.hasRemaining()) {
-            wi.readOneWord(wordsBuffer);
-            wordDic.put(wi.word, wi.len);
-        }
-
-        // read segmentXXb, build map<String, List<Integer>> invertedLists
-        Path listPath = Paths.get(indexFolder + "/segment" + segmentNum + "b");
-        PageFileChannel listFileChannel = PageFileChannel.createOrOpen(listPath);
-        ByteBuffer listBuffer = listFileChannel.readAllPages();
-        listFileChannel.close();
-
-        listBuffer.rewind();
-        for (String word: wordDic.keySet()) {
+            wi.readOneWord(wordsBuffer, hasImpacts);
+            listBuffer.position(getPostingsOffset(wi));
             List<Integer> list = new LinkedList<>();
-            int listLen = wordDic.get(word);
-            for (int i = 0; i < listLen; i++) {
+            for (int i = 0; i < wi.len; i++) {
                 list.add(listBuffer.getInt());
+                listBuffer.getInt(); // the term frequency
             }
-            invertedLists.put(word, list);
+            invertedLists.put(wi.word, list);
         }
 
         // read segmentXX.db, build map<Integer, Document> documents
-        DocumentStore ds = MapdbDocStore.createOrOpen(indexFolder + "/segment" + segmentNum + ".db");
+        DocumentStore ds = SegmentReader.openDocumentStore(indexFolder, segID);
         Iterator<Map.Entry<Integer, Document>> itr = ds.iterator();
         while(itr.hasNext()) {
             Map.Entry<Integer, Document> entry = itr.next();
@@ -0,0 +1,176 @@
+package engine.index;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * The deleted documents of one disk segment, a bitset of their docIDs.
+ *
+ * On disk, the bitset is in “segmentXX_G.liv”, where G is its generation: the number of longs of the bitset, then the
+ * longs. The bitset is loaded once from the newest generation by the reader of the segment. Deleting documents only sets
+ * their bits in memory, the deletions are written at commit time, see InvertedIndexManager.flush, to the next generation
+ * before the previous generation is removed, so a generation file is never modified once it is written.
+ *
+ * The bitset is copied on write, so the queries test the docIDs without locking while documents are deleted.
+ *
+ */
+
+public class LiveDocs {
+
+    static final String EXTENSION = ".liv";
+
+    private final String indexFolder;
+    private final int segID;
+    private volatile BitSet deleted; // never modified once visible
+    private int generation; // the generation the deletions were read from or last written to, 0 if none
+    private boolean pending; // whether some deletions are not written yet
+
+    private LiveDocs(String indexFolder, int segID, BitSet deleted, int generation) {
+        this.indexFolder = indexFolder;
+        this.segID = segID;
+        this.deleted = deleted;
+        this.generation = generation;
+        this.pending = false;
+    }
+
+    /**
+     * Loads the deletions of a segment from its newest generation, no deletion if the segment has no live-docs file.
+     *
+     * @param indexFolder the folder of the index
+     * @param segID the ID of the segment
+     */
+
+    public static LiveDocs load(String indexFolder, int segID) {
+        int generation = findGeneration(indexFolder, segID);
+        if (generation == 0) {
+            return new LiveDocs(indexFolder, segID, new BitSet(), 0);
+        }
+        PageFileChannel pfc = PageFileChannel.createOrOpen(Paths.get(fileName(indexFolder, segID, generation)));
+        ByteBuffer buffer = pfc.readAllPages();
+        pfc.close();
+        buffer.rewind();
+        long[] words = new long[buffer.getInt()];
+        for (int i = 0; i < words.length; i++) {
+            words[i] = buffer.getLong();
+        }
+        return new LiveDocs(indexFolder, segID, BitSet.valueOf(words), generation);
+    }
+
+    /**
+     * the name of the live-docs file of a segment of a given generation
+     */
+
+    private static String fileName(String indexFolder, int segID, int generation) {
+        return indexFolder + "/segment" + segID + "_" + generation + EXTENSION;
+    }
+
+    /**
+     * get the generation of the live-docs file of a segment of the highest generation, 0 if there is none
+     */
+
+    private static int findGeneration(String indexFolder, int segID) {
+        String prefix = "segment" + segID + "_";
+        File[] files = new File(indexFolder).listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(EXTENSION));
+        int generation = 0;
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                generation = Math.max(generation,
+                        Integer.parseInt(name.substring(prefix.length(), name.length() - EXTENSION.length())));
+            }
+        }
+        return generation;
+    }
+
+    /**
+     * Deletes the live-docs files of all the generations of a segment.
+     */
+
+    public static void deleteFiles(String indexFolder, int segID) {
+        for (int generation = findGeneration(indexFolder, segID); generation > 0; generation--) {
+            new File(fileName(indexFolder, segID, generation)).delete();
+        }
+    }
+
+    /**
+     * Checks whether a document of the segment is not deleted.
+     */
+
+    public boolean isLive(int docID) {
+        return !deleted.get(docID);
+    }
+
+    /**
+     * Gets the number of deleted documents of the segment.
+     */
+
+    public int getNumDeleted() {
+        return deleted.cardinality();
+    }
+
+    /**
+     * Gets the bitset of the deleted docIDs, which must not be modified.
+     */
+
+    public BitSet getDeleted() {
+        return deleted;
+    }
+
+    /**
+     * Gets the generation the deletions were read from or last written to, 0 if they have never been written.
+     */
+
+    public synchronized int getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Deletes documents of the segment in memory, until the next write.
+     *
+     * @param docIDs the docIDs of the documents
+     * @return the number of documents which were not deleted yet
+     */
+
+    public synchronized int delete(Collection<Integer> docIDs) {
+        BitSet bits = (BitSet) deleted.clone();
+        for (int docID : docIDs) {
+            bits.set(docID);
+        }
+        int numDeleted = bits.cardinality() - deleted.cardinality();
+        if (numDeleted > 0) {
+            deleted = bits;
+            pending = true;
+        }
+        return numDeleted;
+    }
+
+    /**
+     * Writes the deletions to the next generation and removes the previous one, if some deletions are not written yet.
+     */
+
+    public synchronized void write() {
+        if (!pending) {
+            return;
+        }
+        long[] words = deleted.toLongArray();
+        ByteBuffer buffer = ByteBuffer.allocate(4 + words.length * 8);
+        buffer.putInt(words.length);
+        for (long word : words) {
+            buffer.putLong(word);
+        }
+        String next = fileName(indexFolder, segID, generation + 1);
+        new File(next).delete();
+        PageFileChannel pfc = PageFileChannel.createOrOpen(Paths.get(next));
+        pfc.appendAllBytes(buffer);
+        pfc.close();
+        if (generation > 0) {
+            new File(fileName(indexFolder, segID, generation)).delete();
+        }
+        generation += 1;
+        pending = false;
+    }
+
+}
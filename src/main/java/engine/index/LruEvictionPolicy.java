@@ -0,0 +1,45 @@
+package engine.index;
+
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.function.IntPredicate;
+
+/**
+ * LRU eviction, evicts the evictable frame accessed least recently.
+ *
+ */
+
+public class LruEvictionPolicy implements EvictionPolicy {
+
+    private LinkedHashSet<Integer> order; // frames from the least recently accessed to the most recently accessed
+
+    @Override
+    public void reset(int numFrames) {
+        order = new LinkedHashSet<>();
+    }
+
+    @Override
+    public void access(int frameID) {
+        order.remove(frameID);
+        order.add(frameID);
+    }
+
+    @Override
+    public void remove(int frameID) {
+        order.remove(frameID);
+    }
+
+    @Override
+    public int evict(IntPredicate evictable) {
+        Iterator<Integer> itr = order.iterator();
+        while (itr.hasNext()) {
+            int frameID = itr.next();
+            if (evictable.test(frameID)) {
+                itr.remove();
+                return frameID;
+            }
+        }
+        return -1;
+    }
+
+}
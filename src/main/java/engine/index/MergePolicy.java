@@ -0,0 +1,26 @@
+package engine.index;
+
+import java.util.List;
+
+/**
+ * Decides which disk segments of an index are merged, every time a flush adds a segment.
+ *
+ * A merge is a range of consecutive segments, which are merged into one segment taking the place of the first one, so
+ * the documents keep their order across the segments. The index calls the policy from the indexing threads, so
+ * implementations must be thread-safe, which is simplest by keeping no state between calls.
+ *
+ */
+
+public interface MergePolicy {
+
+    /**
+     * Finds the merges to do on the segments of an index.
+     *
+     * @param segmentSizes the size of every segment, in bytes, in the order of the segments
+     * @return the merges, each a range [left, right) of consecutive segments, in ascending order and not overlapping,
+     *         an empty list if no merge is needed
+     */
+
+    List<Pair<Integer, Integer>> findMerges(long[] segmentSizes);
+
+}
@@ -0,0 +1,129 @@
+package engine.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the merges chosen by the merge policy of an index on a bounded pool of background threads, see
+ * InvertedIndexManager.setBackgroundMerge.
+ *
+ * A merge writes the merged segment under a new segment ID while the queries go on reading the segments it merges.
+ * Once it is written, the merged segment replaces them in the visible segments at once, and their files are deleted
+ * after the queries in progress release them. The documents deleted meanwhile are deleted from the merged segment. A
+ * segment is merged by one merge at a time, the merges the policy chooses on segments already being merged are left
+ * for later.
+ *
+ * The first merge which fails is kept until waitForMerges throws it, so the failure is not lost with the thread.
+ *
+ */
+
+public class MergeScheduler {
+
+    private final InvertedIndexManager manager;
+    private final ExecutorService executor;
+    private final Set<Integer> mergingSegments; // the IDs of the segments being merged
+    private final Set<CompletableFuture<Void>> runningMerges;
+    private final AtomicReference<Throwable> failure; // the first merge failure not thrown by waitForMerges yet
+
+    MergeScheduler(InvertedIndexManager manager, int maxThreads) {
+        this.manager = manager;
+        this.executor = Executors.newFixedThreadPool(maxThreads, runnable -> {
+            Thread thread = new Thread(runnable, "merge-" + manager.indexFolder);
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.mergingSegments = new HashSet<>();
+        this.runningMerges = ConcurrentHashMap.newKeySet();
+        this.failure = new AtomicReference<>();
+    }
+
+    /**
+     * Asks the merge policy for the merges of the visible segments and starts the ones whose segments are not being
+     * merged yet.
+     */
+
+    public synchronized void maybeMerge() {
+        List<Integer> segIDs = manager.getSegmentIDs();
+        for (Pair<Integer, Integer> range : manager.mergePolicy.findMerges(manager.getSegmentSizes(segIDs))) {
+            List<Integer> merge = new ArrayList<>(segIDs.subList(range.getLeft(), range.getRight()));
+            if (merge.size() < 2 || !Collections.disjoint(merge, mergingSegments)) {
+                continue;
+            }
+            mergingSegments.addAll(merge);
+            CompletableFuture<Void> future = CompletableFuture.runAsync(() -> runMerge(merge), executor);
+            runningMerges.add(future);
+            future.whenComplete((result, e) -> {
+                if (e != null) {
+                    failure.compareAndSet(null, e);
+                }
+                runningMerges.remove(future);
+            });
+        }
+    }
+
+    /**
+     * merge a list of segments and make the merged segment visible in their place, then look for the merges the
+     * merged segment leads to
+     */
+
+    private void runMerge(List<Integer> segIDs) {
+        try {
+            manager.replaceSegments(segIDs, manager.mergeSegmentFiles(segIDs));
+        } finally {
+            synchronized (this) {
+                mergingSegments.removeAll(segIDs);
+            }
+        }
+        maybeMerge();
+    }
+
+    /**
+     * Gets the number of merges started and not done yet.
+     */
+
+    public int getNumRunningMerges() {
+        return runningMerges.size();
+    }
+
+    /**
+     * Waits until the merges started so far, and the merges they lead to, are done.
+     * The first merge which failed since the last call is thrown as a CompletionException, once the other merges are
+     * done.
+     */
+
+    public void waitForMerges() {
+        while (!runningMerges.isEmpty()) {
+            try {
+                CompletableFuture.allOf(runningMerges.toArray(new CompletableFuture[0])).join();
+            } catch (CompletionException e) {
+                // the failure is recorded, the other merges are waited for before it is thrown
+            }
+        }
+        Throwable e = failure.getAndSet(null);
+        if (e != null) {
+            throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+        }
+    }
+
+    /**
+     * Waits for the running merges and stops the background threads.
+     */
+
+    public void close() {
+        try {
+            waitForMerges();
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+}
@@ -10,6 +10,7 @@ import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 
 import static java.nio.file.StandardOpenOption.READ;
 import static java.nio.file.StandardOpenOption.WRITE;
@@ -19,6 +20,10 @@ import static java.nio.file.StandardOpenOption.WRITE;
  * Each read/write operation is based on a minimal unit of a page of bytes.
  *
  * InvertedIndex implementation uses this PageFileChannel class to do read / write operations for *ALL* files the index uses.
+ *
+ * Pages are read through a BufferPool shared by all the channels, keyed by the file and the page number, so a page which
+ * is read again is served from memory. The file is identified by its file key (the inode on most file systems), which
+ * doesn't change when the file is renamed, or by its absolute path if the file system has no file keys.
  */
 
 public class PageFileChannel implements AutoCloseable {
@@ -34,15 +39,27 @@ public class PageFileChannel implements AutoCloseable {
      * Read and Write counter in number of pages.
      * These counter values will be used to monitor your implementation's disk IO performance.
      * In test cases, read/write counter values will be also checked whether they are in a reasonable range.
+     *
+     * The segments of a query may be read by several threads at once (see InvertedIndexManager.setSearchExecutor), and
+     * the flushes and the merges may run in the background, so the counters are only updated through countReads and
+     * countWrites, under the lock of the class.
+     */
+
+    public static volatile int readCounter = 0;
+    public static volatile int writeCounter = 0;
+
+    /**
+     * The buffer pool shared by all the page file channels. Only the reads which miss the pool are counted in readCounter.
      */
 
-    public static int readCounter = 0;
-    public static int writeCounter = 0;
+    public static BufferPool bufferPool = new BufferPool(BufferPool.DEFAULT_NUM_FRAMES);
 
     private FileChannel fileChannel;
+    private Object fileKey;
 
-    private PageFileChannel(FileChannel fileChannel) {
+    private PageFileChannel(FileChannel fileChannel, Object fileKey) {
         this.fileChannel = fileChannel;
+        this.fileKey = fileKey;
     }
 
     /**
@@ -54,12 +71,23 @@ public class PageFileChannel implements AutoCloseable {
 
     public static PageFileChannel createOrOpen(Path path) {
         try {
+            boolean created = false;
             if (! Files.exists(path)) {
                 Files.createDirectories(path.getParent());
                 Files.createFile(path);
+                created = true;
             }
             Verify.verify(! Files.isDirectory(path));
-            return new PageFileChannel(FileChannel.open(path, READ, WRITE));
+            Object fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+            if (fileKey == null) {
+                fileKey = path.toAbsolutePath().normalize().toString();
+            }
+
+            // a new file may reuse the key of a deleted file whose pages are still in the pool
+            if (created) {
+                bufferPool.invalidate(fileKey);
+            }
+            return new PageFileChannel(FileChannel.open(path, READ, WRITE), fileKey);
         }
         catch (IOException e) {
             throw new UncheckedIOException(e);
@@ -74,12 +102,38 @@ public class PageFileChannel implements AutoCloseable {
      */
 
     public ByteBuffer readPage(int pageNum) {
+        return bufferPool.read(fileKey, pageNum, frame -> readFromFile(pageNum, frame));
+    }
+
+    /**
+     * Pins a page in the buffer pool, without copying it. The page can't be evicted until it is unpinned.
+     *
+     * @param pageNum, page number (starts from 0)
+     * @return a read-only ByteBuffer of the page, which must be passed to unpinPage() once it is not used
+     */
+
+    public ByteBuffer pinPage(int pageNum) {
+        return bufferPool.pin(fileKey, pageNum, frame -> readFromFile(pageNum, frame));
+    }
+
+    /**
+     * Unpins a page pinned by pinPage().
+     *
+     * @param page the ByteBuffer returned by pinPage()
+     */
+
+    public void unpinPage(ByteBuffer page) {
+        bufferPool.unpin(page);
+    }
+
+    /**
+     * read a page from the file into a frame of the buffer pool
+     */
+
+    private void readFromFile(int pageNum, ByteBuffer frame) {
         try {
-            readCounter++;
-            ByteBuffer buffer = ByteBuffer.allocate(PAGE_SIZE);
-            this.fileChannel.read(buffer, pageNum * PAGE_SIZE);
-            buffer.rewind();
-            return buffer;
+            countReads(1);
+            this.fileChannel.read(frame, (long) pageNum * PAGE_SIZE);
         }
         catch (IOException e) {
             throw new UncheckedIOException(e);
@@ -114,7 +168,8 @@ public class PageFileChannel implements AutoCloseable {
             Preconditions.checkArgument(byteBuffer.capacity() == PAGE_SIZE);
             byteBuffer.rewind();
             this.fileChannel.write(byteBuffer, pageNum * PAGE_SIZE);
-            writeCounter++;
+            countWrites(1);
+            bufferPool.update(fileKey, (int) pageNum, byteBuffer);
         }
         catch (IOException e) {
             throw new UncheckedIOException(e);
@@ -175,11 +230,27 @@ public class PageFileChannel implements AutoCloseable {
         }
     }
 
+    /**
+     * Adds a number of pages read to the read counter, atomically.
+     */
+
+    static synchronized void countReads(int numPages) {
+        readCounter += numPages;
+    }
+
+    /**
+     * Adds a number of pages written to the write counter, atomically.
+     */
+
+    static synchronized void countWrites(int numPages) {
+        writeCounter += numPages;
+    }
+
     /**
      * Resets read/write counters, for testing purposes.
      */
 
-    public static void resetCounters() {
+    public static synchronized void resetCounters() {
         readCounter = 0;
         writeCounter = 0;
     }
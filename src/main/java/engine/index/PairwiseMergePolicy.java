@@ -0,0 +1,29 @@
+package engine.index;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The merge policy of mergeAllSegments: once the number of segments reaches InvertedIndexManager.DEFAULT_MERGE_THRESHOLD,
+ * every two neighbouring segments are merged, which halves the number of segments.
+ *
+ * Merges only happen at an even number of segments, an odd one waits for the next flush.
+ *
+ */
+
+public class PairwiseMergePolicy implements MergePolicy {
+
+    @Override
+    public List<Pair<Integer, Integer>> findMerges(long[] segmentSizes) {
+        List<Pair<Integer, Integer>> merges = new ArrayList<>();
+        int numSegments = segmentSizes.length;
+        if (numSegments < InvertedIndexManager.DEFAULT_MERGE_THRESHOLD || numSegments % 2 != 0) {
+            return merges;
+        }
+        for (int i = 0; i < numSegments; i += 2) {
+            merges.add(Pair.of(i, i + 2));
+        }
+        return merges;
+    }
+
+}
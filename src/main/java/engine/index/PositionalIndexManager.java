@@ -6,16 +6,13 @@ import com.google.common.collect.Table;
 import com.google.common.collect.TreeBasedTable;
 import engine.storage.Document;
 import engine.storage.DocumentStore;
-import engine.storage.MapdbDocStore;
 import engine.analysis.Analyzer;
 
-import java.io.File;
 import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.nio.BufferUnderflowException;
-import java.io.ByteArrayOutputStream;
 
 /**
  * This class manages an disk-based positional index and all the documents in the positional index.
@@ -23,12 +20,13 @@ import java.io.ByteArrayOutputStream;
  * On disk, there are 4 files per segment: docStore, dictionary, and invertedLists, positionLists, offsetOfPositionList.
  * PositionLists and offsetOfPositionList will be compressed.
  *
- * Dictionary is in “segmentXXa”. The first page has one integer, which represents the total number of bytes the remaining
- * pages will use. The remaining pages store word information for each keyword — length(keyword), keyword, offset(posting list),
- * length(posting list), offset(offsetOfPositionList), lengthOfByte(offsetOfPositionList).
+ * Dictionary is in “segmentXXa”. It stores word information for each keyword — length(keyword), keyword, offset(posting list),
+ * length(posting list), offset(offsetOfPositionList), lengthOfByte(offsetOfPositionList), the largest impact of the posting
+ * list, sorted by keyword and packed into blocks of one page, with a block index of the first keyword of each block (see
+ * BlockDictionary).
  *
  * InvertedLists is in “segmentXXb”. For each keyword, it stores — docID1, length(position list of docID1), docID2,
- * length(position list of docID2) ……
+ * length(position list of docID2) ……, in blocks preceded by a skip list, as in the inverted index (see BlockPostings).
  *
  * OffsetOfPositionList is in “segmentXXd”. For each keyword, it stores — offset(position list of docID1), offset(position list of docID2)
  * … offset(position list of docIDn), endOffset(position list of docIDn).
@@ -36,6 +34,9 @@ import java.io.ByteArrayOutputStream;
  * PositionLists is in “segmentXXc”. For each keyword, it stores — position list of docID1, position list of docID2 ……
  *
  * DocStore is in “segmentXX.db”.
+ *
+ * Deletions are in “segmentXX_G.liv”, apart from the files above, as in the inverted index (see LiveDocs). Deleting
+ * documents never rewrites the posting lists, the position lists or their offsets.
  */
 
 public class PositionalIndexManager extends InvertedIndexManager {
@@ -47,43 +48,44 @@ public class PositionalIndexManager extends InvertedIndexManager {
     }
 
     /**
-     * Flushes all the documents in the in-memory segment buffer to disk. If the buffer is empty, it should not do anything.
-     * flush() writes the segment to disk containing the posting list and the corresponding document store.
+     * Writes the dictionary, the posting lists, the position lists and the documents of an in-memory segment buffer to
+     * a segment.
+     *
+     * @param buffer the buffer being written
+     * @param segID the ID of the new segment
      */
 
     @Override
-    public void flush() {
-        // If the buffer is empty, return
-        if (invertedLists.size() == 0 || documents.size() == 0) {
-            return;
-        }
-        docID = 0;
+    void writeSegment(SegmentBuffer buffer, int segID) {
+        PostingsBuffer postings = buffer.getPostings();
+        int[] termIDs = postings.getSortedTermIDs();
 
-        ByteBuffer wordsBuffer = ByteBuffer.allocate(STORE_PARAMETER * invertedLists.size());
-        ByteBuffer listBuffer = ByteBuffer.allocate(STORE_PARAMETER * invertedLists.size());
-        ByteBuffer offPosBuffer = ByteBuffer.allocate(STORE_PARAMETER * invertedLists.size());
-        ByteBuffer positionBuffer = ByteBuffer.allocate(STORE_PARAMETER * invertedLists.size());
-
-        int offsetB = 0; // in dic, represent the offset of posting list
-        int offsetD = 0; // in dic, represent the offset of offsetPos "offset (position list) + end offset"
+        // stream the dictionary, the posting lists, the offsets and the position lists into the files of the segment
+        SegmentWriter writer = new SegmentWriter(indexFolder, segID);
+        writer.writeNorms(DocumentNorms.compute(postings, termIDs, buffer.getNumDocuments()));
         int offsetPos = 0; // the num stored in offsetPos
 
-
-        for (String word: invertedLists.keySet()) {
+        for (int termID: termIDs) {
+            int offsetB = writer.getOffset("b"); // in dic, represent the offset of posting list
+            int offsetD = writer.getOffset("d"); // in dic, represent the offset of offsetPos "offset (position list) + end offset"
 
             // store all the position lists in segmentXXc
 
-            List<Integer> postingList = invertedLists.get(word);
+            int numDocs = postings.getNumDocs(termID);
             List<Integer> offPos = new ArrayList<>();
+            int positionStart = 0;
+            int[] docIDs = new int[numDocs];
+            int[] freqs = new int[numDocs];
 
-            for (int docID: postingList) {
-                // store the posting lists and length(position list) in segmentXXb
-                List<Integer> positionList = positions.get(word, docID);
-                listBuffer.putInt(docID);
-                listBuffer.putInt(positionList.size());
+            for (int i = 0; i < numDocs; i++) {
+                int freq = postings.getFreq(termID, i);
+                List<Integer> positionList = postings.getPositions(termID, positionStart, freq);
+                positionStart += freq;
+                docIDs[i] = postings.getDocID(termID, i);
+                freqs[i] = freq;
 
                 byte[] positionListByte = compressor.encode(positionList);
-                positionBuffer.put(positionListByte);
+                writer.writeBytes("c", positionListByte);
 
                 offPos.add(offsetPos); // the start offset is coincident with the end offset of previous keyword
                 offsetPos += positionListByte.length;
@@ -91,288 +93,29 @@ public class PositionalIndexManager extends InvertedIndexManager {
 
             offPos.add(offsetPos); // add the end offset
 
+            // store the posting lists and length(position list) in the block format in segmentXXb
+            float maxImpact = BlockPostings.write(writer, docIDs, freqs, numDocs);
+
             //  store the according "offset (position list) + end offset" in segmentXXd
             byte[] offPosByte = compressor.encode(offPos);
-            offPosBuffer.put(offPosByte);
+            writer.writeBytes("d", offPosByte);
 
-            // store the len(keywords), keywords, offset(list), length(list), offset(offsetPos), lenOfByte(offsetPos)
-            // in segmentXXa, with the first page have the total number of bytes the remaining pages will use
+            // store the len(keywords), keywords, offset(list), length(list), offset(offsetPos), lenOfByte(offsetPos),
+            // the largest impact of the list in the blocks of segmentXXa
 
             PositionalWordInfo wi = new PositionalWordInfo();
-            wi.setWordInfo(word, offsetB, postingList.size(), offsetD, offPosByte.length);
-            wi.writeOneWord(wordsBuffer);
-
-            offsetB += postingList.size() * 2 * 4;
-            offsetD += offPosByte.length;
+            wi.setWordInfo(postings.getTerm(termID), offsetB, numDocs, offsetD, offPosByte.length, maxImpact);
+            writer.addWord(wi);
         }
 
-        byte[] offPosByte = compressor.encode(Arrays.asList(offsetPos));
-        offPosBuffer.put(offPosByte);
-
-        // write the dictionary
-        Path wordsPath = Paths.get(indexFolder + "/segment" + segmentID + "a");
-        PageFileChannel wordsFileChannel = PageFileChannel.createOrOpen(wordsPath);
-
-        // write the first page
-        writeFirstPageOfWord(wordsFileChannel, wordsBuffer.position());
-
-        // write the remaining page
-        wordsFileChannel.appendAllBytes(fitBuffer(wordsBuffer));
-        wordsFileChannel.close();
-
-        // write the posting list
-        Path listPath = Paths.get(indexFolder+"/segment" + segmentID + "b");
-        PageFileChannel listFileChannel = PageFileChannel.createOrOpen(listPath);
-        listFileChannel.appendAllBytes(fitBuffer(listBuffer));
-        listFileChannel.close();
-
-        // write the offsetPos list
-        Path offsetPath = Paths.get(indexFolder+"/segment" + segmentID + "d");
-        PageFileChannel offsetFileChannel = PageFileChannel.createOrOpen(offsetPath);
-        offsetFileChannel.appendAllBytes(fitBuffer(offPosBuffer));
-        offsetFileChannel.close();
+        finishSegment(writer);
 
-        // write the position list
-        Path positionPath = Paths.get(indexFolder+"/segment" + segmentID + "c");
-        PageFileChannel positionFileChannel = PageFileChannel.createOrOpen(positionPath);
-        positionFileChannel.appendAllBytes(fitBuffer(positionBuffer));
-        positionFileChannel.close();
+        // write the block index of the dictionary and the last pages of the files
+        writer.close();
 
         // store all the documents in segmentXX.db
-        DocumentStore ds = MapdbDocStore.createWithBulkLoad(indexFolder + "/segment" + segmentID + ".db",documents.entrySet().iterator());
-        ds.close();
-
-        // clear the invertedLists and documents
-        invertedLists = new TreeMap<>();
-        documents = new TreeMap<>();
-        this.positions = TreeBasedTable.create();
-        segmentID += 1;
-
-        // if the num of segment reach DEFAULT_MERGE_THRESHOLD, call merge()
-        if (segmentID >= DEFAULT_MERGE_THRESHOLD) {
-            mergeAllSegments();
-        }
-    }
-
-    /**
-     * fit a suitable ByteBuffer for a byte array.
-     *
-     * @param bb the previous ByteBuffer
-     * @return the outcome ByteBuffer
-     */
-
-    private ByteBuffer fitBuffer(ByteBuffer bb) {
-        int tmp = bb.position();
-        bb.position(0);
-        bb.limit(tmp);
-        ByteBuffer bb_new = ByteBuffer.allocate(tmp);
-        bb_new.put(bb);
-        bb_new.rewind();
-        return bb_new;
-    }
-    /**
-     * A help class for method readListBufferByPage
-     */
-
-    private class BufferAndByte{
-        ByteBuffer bb;
-        byte[] b;
-        int pageIDRead;
-        int offStart;
-        int offEnd;
-
-        public BufferAndByte(ByteBuffer bb, byte[] b, int pageIDRead, int offStart, int offEnd) {
-            this.bb = bb;
-            this.b = b;
-            this.pageIDRead = pageIDRead;
-            this.offStart = offStart;
-            this.offEnd = offEnd;
-        }
-    }
-
-    /**
-     * write a ByteBuffer containing position list into buffer by page, if the list length is larger than the page size,
-     * append the page and open another buffer
-     *
-     * @param segID the segment ID
-     * @param bb the BybeBuffer being written with capacity = PAGE_SIZE
-     * @param pageIDRead the page of the file being read
-     * @param len the length of byte of the list
-     * @param x the part of segment (a represent dictionary, b represent posting list, c represent position list, d represent offset list
-     * @return the BybeBuffer being read, the outcome byte array, the page of the file being read
-     */
-
-    private BufferAndByte readListBufferByPage(int segID, ByteBuffer bb, int pageIDRead, int len, String x) {
-        int remain = bb.limit() - bb.position();
-        int lSize = len;
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-
-        // if the array is longer than the remaining buffer, first read the buffer,
-        // then open the next page and read
-
-        while (lSize / remain >= 1) {
-            byte[] result = new byte[remain];
-            bb.get(result, 0, remain);
-            output.write(result, 0, result.length);
-
-            pageIDRead += 1;
-            bb = readSegPage(segID, x, pageIDRead);
-            lSize -= remain;
-            remain = PageFileChannel.PAGE_SIZE;
-        }
-
-        // if the array is no longer than the remaining buffer, just read the buffer
-        byte[] result = new byte[lSize];
-        bb.get(result, 0, lSize);
-        output.write(result, 0, result.length);
-        byte[] out = output.toByteArray();
-
-        // if the list is offset list, also return the start offset and end offset
-        if (x == "d") {
-            List<Integer> list = compressor.decode(out);
-            return new BufferAndByte(bb, out, pageIDRead, list.get(0), list.get(list.size() - 1));
-        }
-
-        return new BufferAndByte(bb, out, pageIDRead, 0, 0);
-    }
-
-    /**
-     * Write the byte array into buffer by page, if the list length is larger than the page size,
-     * append the page and open another buffer
-     *
-     * @param pfc the file being written
-     * @param bb the BybeBuffer being written with capacity = PAGE_SIZE
-     * @param b the byte array
-     */
-
-    private void writeListBufferByPage(PageFileChannel pfc, ByteBuffer bb, byte[] b) {
-        int lSize = b.length;
-        int remain = bb.limit() - bb.position();
-
-        // if the array is longer than the remaining buffer, first write the buffer,
-        // then append the page and open another buffer to write
-        while (lSize / remain >= 1) {
-            byte[] tmp = new byte[remain];
-            System.arraycopy(b, 0, tmp, 0, remain);
-            byte[] bnew = new byte[lSize - remain];
-            System.arraycopy(b, remain, bnew, 0, lSize - remain);
-
-            b = bnew;
-            bb.put(tmp);
-            pfc.appendPage(bb);
-            bb.clear();
-            lSize -= remain;
-            remain = PageFileChannel.PAGE_SIZE;
-        }
-
-        // if the array is no longer than the remaining buffer, just write the buffer
-        bb.put(b);
-    }
-
-    /**
-     * for a byte array, decode it to list, add n to every list elements, and encode it to a list and return it
-     *
-     * @param bl the byte array being added
-     * @param n the number being added
-     * @return the outcome byte array
-     */
-
-    private byte[] addNumList(byte[] bl, int n) {
-        List<Integer> list = compressor.decode(bl, 0, bl.length);
-        List<Integer> listNew = new ArrayList<>();
-        for (int i = 0; i < list.size(); i++) {
-            listNew.add(list.get(i) + n);
-        }
-        return compressor.encode(listNew);
-    }
-
-    /**
-     * add the second byte array behind the first byte array
-     *
-     * @param b1 the first byte array
-     * @param b2 the second byte array
-     * @return the outcome byte array
-     */
-
-    private byte[] joinTwoByte(byte[] b1, byte[] b2) {
-        byte[] lsNew = new byte[b1.length + b2.length];
-        System.arraycopy(b1, 0, lsNew, 0, b1.length);
-        System.arraycopy(b2, 0, lsNew, b1.length, b2.length);
-        return lsNew;
-    }
-
-    /**
-     * when merge, change the offset list. If there are two byte arrays, join it to be a new byte array.
-     * If there are only one byte array, change it to be a new byte array.
-     *
-     * @param a the first byte array
-     * @param b the second byte array
-     * @param offStart the start offset in the writing buffer
-     * @return the outcome byte array
-     */
-
-    private byte[] joinTwoOffPosList(byte[] a, byte[] b, int offStart) {
-        // if there are only one byte array, change it to be a new byte array
-        if (b == null) {
-            List<Integer> la = compressor.decode(a, 0, a.length);
-            List<Integer> lnew = new ArrayList<>();
-            int change = offStart - la.get(0);
-            for (int i = 0; i < la.size(); i++) {
-                lnew.add(la.get(i) + change);
-            }
-            return compressor.encode(lnew);
-        }
-
-        // if there are two byte arrays, join it to be a new byte array
-        List<Integer> la = compressor.decode(a, 0, a.length);
-        List<Integer> lb = compressor.decode(b, 0, b.length);
-        List<Integer> lnew = new ArrayList<>();
-
-        int change = offStart - la.get(0);
-        for (int i = 0; i < la.size(); i++) {
-            lnew.add(la.get(i) + change);
-        }
-        change = lnew.get(la.size() - 1) - lb.get(0);
-        for (int i = 1; i < lb.size(); i++) {
-            lnew.add(lb.get(i) + change);
-        }
-        return compressor.encode(lnew);
-    }
-
-    /**
-     * Adds a document to the inverted index and the position list
-     * Document should live in a in-memory buffer until `flush()` is called to write the segment to disk.
-     * @param document to be added
-     */
-
-    @Override
-    public void addDocument(Document document) {
-        List<String> wordList = analyzer.analyze(document.getText());
-        for (int i = 0; i < wordList.size(); i++) {
-            String word = wordList.get(i);
-            if (invertedLists.containsKey(word)) {
-                List<Integer> tmp = invertedLists.get(word);
-                if (!(tmp.get(tmp.size() - 1) == docID)) {
-                    tmp.add(docID);
-                }
-                tmp = positions.get(word, docID);
-                if (tmp == null) {
-                    positions.put(word, docID, new LinkedList<>(Arrays.asList(i)));
-                }
-                else {
-                    tmp.add(i);
-                }
-            }
-            else {
-                invertedLists.put(word, new LinkedList<>(Arrays.asList(docID)));
-                positions.put(word, docID, new LinkedList<>(Arrays.asList(i)));
-            }
-        }
-        documents.put(docID, document);
-        docID += 1;
-        if (docID >= DEFAULT_FLUSH_THRESHOLD) {
-            flush();
-        }
+        writeDocumentStore(segID, buffer.getDocuments().entrySet().iterator());
+        closeSegmentReader(segID);
     }
 
     /*@Override
@@ -534,407 +277,88 @@ public class PositionalIndexManager extends InvertedIndexManager {
         bbw.put(positionList);
     }
 
+    @Override
+    DictionaryEntry newDictionaryEntry() {
+        return new PositionalWordInfo();
+    }
+
     /**
-     * Merges the invertedLists of two disk segments
+     * write the word info, the concatenated posting lists, offsets and position lists of a word of a merge, with the
+     * docIDs of the merged segment and without the deleted documents, nothing if no document is left. The compressed
+     * position lists are copied as they are, their offsets are moved to where they are copied.
      *
-     * @param segID1 the first segment ID
-     * @param segID2 the second segment ID
-     * @param numDoc1 the number of documents in the first segment
+     * @param writer the writer of the merged segment
+     * @param word the word
+     * @param cursors the cursors of the segments having the word, in the order of the segments
      */
 
     @Override
-    void mergeInvertedLists(int segID1, int segID2, int numDoc1) {
-//        System.out.println("merge:"+segID1+" and "+segID2);
-        // read two segmentXXa into two buffer and delete these two segmentXXa
-        Path path = Paths.get(indexFolder + "/segment" + segID1 + "a");
-        PageFileChannel pfc = PageFileChannel.createOrOpen(path);
-        ByteBuffer wb1 = pfc.readAllPages();
-        pfc.close();
-        deleteFile(indexFolder + "/segment" + segID1 + "a");
-        int cap1 = readFirstPageOfWord(wb1);
-
-        path = Paths.get(indexFolder + "/segment" + segID2 + "a");
-        pfc = PageFileChannel.createOrOpen(path);
-        ByteBuffer wb2 = pfc.readAllPages();
-        pfc.close();
-        deleteFile(indexFolder + "/segment" + segID2 + "a");
-        int cap2 = readFirstPageOfWord(wb2);
-
-        // merge the inverted lists of the two segments
-        ByteBuffer wordsBuffer = ByteBuffer.allocate(10 * (cap1 + cap2));
-        ByteBuffer listBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
-        ByteBuffer offPosBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
-        ByteBuffer positionBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
-
-        PositionalWordInfo wi1 = new PositionalWordInfo();
-        wi1.readOneWord(wb1);
-        PositionalWordInfo wi2 = new PositionalWordInfo();
-        wi2.readOneWord(wb2);
-
-        int offsetB = 0;
-        int offsetD = 0;
-        int offsetPos = 0;
-        int pageIDRead1 = 0;
-        int pageIDRead2 = 0;
-        int pageIDReadOff1 = 0;
-        int pageIDReadOff2 = 0;
-        int pageIDReadPos1 = 0;
-        int pageIDReadPos2 = 0;
-        ByteBuffer lb1 = readSegPage(segID1, "b", pageIDRead1);
-        ByteBuffer lb2 = readSegPage(segID2, "b", pageIDRead2);
-        ByteBuffer ob1 = readSegPage(segID1, "d", pageIDReadOff1);
-        ByteBuffer ob2 = readSegPage(segID2, "d", pageIDReadOff2);
-        ByteBuffer pb1 = readSegPage(segID1, "c", pageIDReadPos1);
-        ByteBuffer pb2 = readSegPage(segID2, "c", pageIDReadPos2);
-
-        path = Paths.get(indexFolder + "/segment b tmp");
-        PageFileChannel listFileChannel = PageFileChannel.createOrOpen(path);
-
-        path = Paths.get(indexFolder + "/segment d tmp");
-        PageFileChannel offPosFileChannel = PageFileChannel.createOrOpen(path);
-
-        path = Paths.get(indexFolder + "/segment c tmp");
-        PageFileChannel positionFileChannel = PageFileChannel.createOrOpen(path);
-
-        while (true) {
-            if (wi1.word.equals(wi2.word)) {
-                // add them to the dictionary, find their posting lists and add them to the disk
-                //find their position list and add them to the disk, move both bb1 and bb2 to the next words
-
-                //get the list according to the word, for list 2, all docID add numDoc1
-                BufferAndList bl1 = getIndexListGivenLen(segID1, lb1, pageIDRead1, wi1.lenB, false, numDoc1);
-                lb1 = bl1.bb;
-                List<Integer> ls1 = bl1.list;
-                Map<Integer, Integer> map1 = bl1.map;
-                pageIDRead1 = bl1.pageIDRead;
-
-                BufferAndList bl2 = getIndexListGivenLen(segID2, lb2, pageIDRead2, wi2.lenB, true, numDoc1);
-                lb2 = bl2.bb;
-                List<Integer> ls2 = bl2.list;
-                Map<Integer, Integer> map2 = bl2.map;
-                pageIDRead2 = bl2.pageIDRead;
-
-                ls1.addAll(ls2);
-                map1.putAll(map2);
-
-                //write the list info into buffer, if buffer full, append it into disk
-                writeListBufferByPage(listFileChannel, listBuffer, ls1, map1);
-
-                // read the offPos buffer, get the offset. write the offPos into buffer
-                BufferAndByte ol1 = readListBufferByPage(segID1, ob1, pageIDReadOff1, wi1.lenD, "d");
-                ob1 = ol1.bb;
-                byte[] os1 = ol1.b;
-                pageIDReadOff1 = ol1.pageIDRead;
-
-                BufferAndByte ol2 = readListBufferByPage(segID2, ob2, pageIDReadOff2, wi2.lenD, "d");
-                ob2 = ol2.bb;
-                byte[] os2 = ol2.b;
-                pageIDReadOff2 = ol2.pageIDRead;
-
-                byte[] osNew = joinTwoOffPosList(os1, os2, offsetPos);
-                writeListBufferByPage(offPosFileChannel, offPosBuffer, osNew);
-
-                //read and write the position list into buffer, if buffer full, append it into disk
-                BufferAndByte rp1 = readListBufferByPage(segID1, pb1, pageIDReadPos1, ol1.offEnd - ol1.offStart, "c");
-                pb1 = rp1.bb;
-                pageIDReadPos1 = rp1.pageIDRead;
-                writeListBufferByPage(positionFileChannel, positionBuffer, rp1.b);
-
-                BufferAndByte rp2 = readListBufferByPage(segID2, pb2, pageIDReadPos2, ol2.offEnd - ol2.offStart, "c");
-                pb2 = rp2.bb;
-                pageIDReadPos2 = rp2.pageIDRead;
-                writeListBufferByPage(positionFileChannel, positionBuffer, rp2.b);
-
-                offsetPos += rp1.b.length + rp2.b.length;
-
-                //write the word info into buffer
-                PositionalWordInfo wi = new PositionalWordInfo();
-                wi.setWordInfo(wi1.word, offsetB, ls1.size(), offsetD, osNew.length);
-                wi.writeOneWord(wordsBuffer);
-                offsetB += ls1.size()* (4 * 2);
-                offsetD += osNew.length;
-
-                //check whether bb1 and bb2 can move to the next words
-                if (!wb1.hasRemaining() || !wb2.hasRemaining()) {
-                    break;
-                }
-
-                //move bb1 and bb2 to the next words
-                wi1 = new PositionalWordInfo();
-                wi1.readOneWord(wb1);
-                wi2 = new PositionalWordInfo();
-                wi2.readOneWord(wb2);
-            }
-            else if (wi1.word.compareTo(wi2.word) > 0) {
-                // add key2 and its list to the disk, move bb2 to the next word
-                //get the list according to the word, for list 2, all docID add numDoc1
-                BufferAndList bl2 = getIndexListGivenLen(segID2, lb2, pageIDRead2, wi2.lenB, true, numDoc1);
-                lb2 = bl2.bb;
-                List<Integer> ls2 = bl2.list;
-                Map<Integer, Integer> map2 = bl2.map;
-                pageIDRead2 = bl2.pageIDRead;
-
-                //write the list info into buffer, if buffer full, append it into disk
-                writeListBufferByPage(listFileChannel, listBuffer, ls2, map2);
-
-                // read the offPos buffer, get the offset. write the offPos into buffer
-                BufferAndByte ol2 = readListBufferByPage(segID2, ob2, pageIDReadOff2, wi2.lenD, "d");
-                ob2 = ol2.bb;
-                byte[] os2 = ol2.b;
-                pageIDReadOff2 = ol2.pageIDRead;
-
-                byte[] osNew = joinTwoOffPosList(os2, null, offsetPos);
-                writeListBufferByPage(offPosFileChannel, offPosBuffer, osNew);
-
-                //read and write the position list into buffer, if buffer full, append it into disk
-                BufferAndByte rp2 = readListBufferByPage(segID2, pb2, pageIDReadPos2, ol2.offEnd - ol2.offStart, "c");
-                pb2 = rp2.bb;
-                pageIDReadPos2 = rp2.pageIDRead;
-                writeListBufferByPage(positionFileChannel, positionBuffer, rp2.b);
-
-                offsetPos += rp2.b.length;
-
-                //write the word info into buffer
-                PositionalWordInfo wi = new PositionalWordInfo();
-                wi.setWordInfo(wi2.word, offsetB, ls2.size(), offsetD, osNew.length);
-                wi.writeOneWord(wordsBuffer);
-                offsetB += ls2.size() * (4 * 2);
-                offsetD += osNew.length;
-
-                if (!wb2.hasRemaining()) {
-                    BufferAndList bl1 = getIndexListGivenLen(segID1, lb1, pageIDRead1, wi1.lenB, false, numDoc1);
-                    lb1 = bl1.bb;
-                    List<Integer> ls1 = bl1.list;
-                    Map<Integer, Integer> map1 = bl1.map;
-                    pageIDRead1 = bl1.pageIDRead;
-
-                    //write the list info into buffer, if buffer full, append it into disk
-                    writeListBufferByPage(listFileChannel, listBuffer, ls1, map1);
-
-                    // read the offPos buffer, get the offset. write the offPos into buffer
-                    BufferAndByte ol1 = readListBufferByPage(segID1, ob1, pageIDReadOff1, wi1.lenD, "d");
-                    ob1 = ol1.bb;
-                    byte[] os1 = ol1.b;
-                    pageIDReadOff1 = ol1.pageIDRead;
-
-                    osNew = joinTwoOffPosList(os1, null, offsetPos);
-                    writeListBufferByPage(offPosFileChannel, offPosBuffer, osNew);
-
-                    //read and write the position list into buffer, if buffer full, append it into disk
-                    BufferAndByte rp1 = readListBufferByPage(segID1, pb1, pageIDReadPos1, ol1.offEnd - ol1.offStart, "c");
-                    pb1 = rp1.bb;
-                    pageIDReadPos1 = rp1.pageIDRead;
-                    writeListBufferByPage(positionFileChannel, positionBuffer, rp1.b);
-
-                    offsetPos += rp1.b.length;
-
-                    //write the word info into buffer
-                    wi = new PositionalWordInfo();
-                    wi.setWordInfo(wi1.word, offsetB, ls1.size(), offsetD, osNew.length);
-                    wi.writeOneWord(wordsBuffer);
-                    offsetB += ls1.size() * (4 * 2);
-                    offsetD += osNew.length;
-
-                    break;
-                }
-                wi2 = new PositionalWordInfo();
-                wi2.readOneWord(wb2);
-            }
-            else {
-                //add key1 and its list to the disk, move bb1 to the next word
-                BufferAndList bl1 = getIndexListGivenLen(segID1, lb1, pageIDRead1, wi1.lenB, false, numDoc1);
-                lb1 = bl1.bb;
-                List<Integer> ls1 = bl1.list;
-                Map<Integer, Integer> map1 = bl1.map;
-                pageIDRead1 = bl1.pageIDRead;
-
-                //write the list info into buffer, if buffer full, append it into disk
-                writeListBufferByPage(listFileChannel, listBuffer, ls1, map1);
-
-                // read the offPos buffer, get the offset. write the offPos into buffer
-                BufferAndByte ol1 = readListBufferByPage(segID1, ob1, pageIDReadOff1, wi1.lenD, "d");
-                ob1 = ol1.bb;
-                byte[] os1 = ol1.b;
-                pageIDReadOff1 = ol1.pageIDRead;
-
-                byte[] osNew = joinTwoOffPosList(os1, null, offsetPos);
-                writeListBufferByPage(offPosFileChannel, offPosBuffer, osNew);
-
-                //read and write the position list into buffer, if buffer full, append it into disk
-                BufferAndByte rp1 = readListBufferByPage(segID1, pb1, pageIDReadPos1, ol1.offEnd - ol1.offStart, "c");
-                pb1 = rp1.bb;
-                pageIDReadPos1 = rp1.pageIDRead;
-                writeListBufferByPage(positionFileChannel, positionBuffer, rp1.b);
-
-                offsetPos += rp1.b.length;
-
-                //write the word info into buffer
-                PositionalWordInfo wi = new PositionalWordInfo();
-                wi.setWordInfo(wi1.word, offsetB, ls1.size(), offsetD, osNew.length);
-                wi.writeOneWord(wordsBuffer);
-                offsetB += ls1.size() * (4 * 2);
-                offsetD += osNew.length;
-
-                if (!wb1.hasRemaining()) {
-                    BufferAndList bl2 = getIndexListGivenLen(segID2, lb2, pageIDRead2, wi2.lenB, true, numDoc1);
-                    lb2 = bl2.bb;
-                    List<Integer> ls2 = bl2.list;
-                    Map<Integer, Integer> map2 = bl2.map;
-                    pageIDRead2 = bl2.pageIDRead;
-
-                    //write the list info into buffer, if buffer full, append it into disk
-                    writeListBufferByPage(listFileChannel, listBuffer, ls2, map2);
-
-                    // read the offPos buffer, get the offset. write the offPos into buffer
-                    BufferAndByte ol2 = readListBufferByPage(segID2, ob2, pageIDReadOff2, wi2.lenD, "d");
-                    ob2 = ol2.bb;
-                    byte[] os2 = ol2.b;
-                    pageIDReadOff2 = ol2.pageIDRead;
-
-                    osNew = joinTwoOffPosList(os2, null, offsetPos);
-                    writeListBufferByPage(offPosFileChannel, offPosBuffer, osNew);
-
-                    //read and write the position list into buffer, if buffer full, append it into disk
-                    BufferAndByte rp2 = readListBufferByPage(segID2, pb2, pageIDReadPos2, ol2.offEnd - ol2.offStart, "c");
-                    pb2 = rp2.bb;
-                    pageIDReadPos2 = rp2.pageIDRead;
-                    writeListBufferByPage(positionFileChannel, positionBuffer, rp2.b);
-
-                    offsetPos += rp2.b.length;
-
-                    //write the word info into buffer
-                    wi = new PositionalWordInfo();
-                    wi.setWordInfo(wi2.word, offsetB, ls2.size(), offsetD, osNew.length);
-                    wi.writeOneWord(wordsBuffer);
-                    offsetB += ls2.size() * (4 * 2);
-                    offsetD += osNew.length;
-
-                    break;
+    void mergeTerm(SegmentWriter writer, String word, List<TermCursor> cursors) {
+        int offsetB = writer.getOffset("b");
+        int offsetD = writer.getOffset("d");
+        int maxLen = 0;
+        for (TermCursor cursor : cursors) {
+            maxLen += ((PositionalWordInfo) cursor.entry).lenB;
+        }
+        int[] docIDs = new int[maxLen];
+        int[] freqs = new int[maxLen];
+        int lenB = 0;
+        List<Integer> offPos = new ArrayList<>();
+
+        for (TermCursor cursor : cursors) {
+            PositionalWordInfo wi = (PositionalWordInfo) cursor.entry;
+            ByteBuffer listBuffer = ByteBuffer.wrap(readSegBytes(cursor.segID, "b", getPostingsOffset(wi),
+                    wi.lenB * 2 * 4));
+
+            // offset(position list) of each document in segmentXXd, and the position lists in segmentXXc
+            List<Integer> segmentOffPos = compressor.decode(readSegBytes(cursor.segID, "d", wi.offsetD, wi.lenD));
+            int start = segmentOffPos.get(0);
+            byte[] positions = readSegBytes(cursor.segID, "c", start, segmentOffPos.get(wi.lenB) - start);
+
+            // docID, length(position list) in segmentXXb and the position list of every document left
+            for (int i = 0; i < wi.lenB; i++) {
+                int docID = cursor.docMap[listBuffer.getInt()];
+                int freq = listBuffer.getInt();
+                if (docID < 0) {
+                    continue;
                 }
-                wi1 = new PositionalWordInfo();
-                wi1.readOneWord(wb1);
+                docIDs[lenB] = docID;
+                freqs[lenB] = freq;
+                offPos.add(writer.getOffset("c"));
+                int from = segmentOffPos.get(i) - start;
+                writer.writeBytes("c", Arrays.copyOfRange(positions, from, segmentOffPos.get(i + 1) - start));
+                lenB += 1;
             }
         }
-
-        if (!wb1.hasRemaining() && wb2.hasRemaining()) {
-            while (wb2.hasRemaining()) {
-                wi2 = new PositionalWordInfo();
-                wi2.readOneWord(wb2);
-
-                //get the list according to the word, for list 2, all docID add numDoc1
-                BufferAndList bl2 = getIndexListGivenLen(segID2, lb2, pageIDRead2, wi2.lenB, true, numDoc1);
-                lb2 = bl2.bb;
-                List<Integer> ls2 = bl2.list;
-                Map<Integer, Integer> map2 = bl2.map;
-                pageIDRead2 = bl2.pageIDRead;
-
-                //write the list info into buffer, if buffer full, append it into disk
-                writeListBufferByPage(listFileChannel, listBuffer, ls2, map2);
-
-                // read the offPos buffer, get the offset. write the offPos into buffer
-                BufferAndByte ol2 = readListBufferByPage(segID2, ob2, pageIDReadOff2, wi2.lenD, "d");
-                ob2 = ol2.bb;
-                byte[] os2 = ol2.b;
-                pageIDReadOff2 = ol2.pageIDRead;
-
-                byte[] osNew = joinTwoOffPosList(os2, null, offsetPos);
-                writeListBufferByPage(offPosFileChannel, offPosBuffer, osNew);
-
-                //read and write the position list into buffer, if buffer full, append it into disk
-                BufferAndByte rp2 = readListBufferByPage(segID2, pb2, pageIDReadPos2, ol2.offEnd - ol2.offStart, "c");
-                pb2 = rp2.bb;
-                pageIDReadPos2 = rp2.pageIDRead;
-                writeListBufferByPage(positionFileChannel, positionBuffer, rp2.b);
-
-                offsetPos += rp2.b.length;
-
-                //write the word info into buffer
-                PositionalWordInfo wi = new PositionalWordInfo();
-                wi.setWordInfo(wi2.word, offsetB, ls2.size(), offsetD, osNew.length);
-                wi.writeOneWord(wordsBuffer);
-                offsetB += ls2.size() * (4 * 2);
-                offsetD += osNew.length;
-            }
-        }
-
-        if (wb1.hasRemaining() && !wb2.hasRemaining()) {
-            while (wb1.hasRemaining()) {
-                wi1 = new PositionalWordInfo();
-                wi1.readOneWord(wb1);
-
-                BufferAndList bl1 = getIndexListGivenLen(segID1, lb1, pageIDRead1, wi1.lenB, false, numDoc1);
-                lb1 = bl1.bb;
-                List<Integer> ls1 = bl1.list;
-                Map<Integer, Integer> map1 = bl1.map;
-                pageIDRead1 = bl1.pageIDRead;
-
-                //write the list info into buffer, if buffer full, append it into disk
-                writeListBufferByPage(listFileChannel, listBuffer, ls1, map1);
-
-                // read the offPos buffer, get the offset. write the offPos into buffer
-                BufferAndByte ol1 = readListBufferByPage(segID1, ob1, pageIDReadOff1, wi1.lenD, "d");
-                ob1 = ol1.bb;
-                byte[] os1 = ol1.b;
-                pageIDReadOff1 = ol1.pageIDRead;
-
-                byte[] osNew = joinTwoOffPosList(os1, null, offsetPos);
-                writeListBufferByPage(offPosFileChannel, offPosBuffer, osNew);
-
-                //read and write the position list into buffer, if buffer full, append it into disk
-                BufferAndByte rp1 = readListBufferByPage(segID1, pb1, pageIDReadPos1, ol1.offEnd - ol1.offStart, "c");
-                pb1 = rp1.bb;
-                pageIDReadPos1 = rp1.pageIDRead;
-                writeListBufferByPage(positionFileChannel, positionBuffer, rp1.b);
-
-                offsetPos += rp1.b.length;
-
-                //write the word info into buffer
-                PositionalWordInfo wi = new PositionalWordInfo();
-                wi.setWordInfo(wi1.word, offsetB, ls1.size(), offsetD, osNew.length);
-                wi.writeOneWord(wordsBuffer);
-                offsetB += ls1.size() * (4 * 2);
-                offsetD += osNew.length;
-            }
+        if (lenB == 0) {
+            return;
         }
+        float maxImpact = BlockPostings.write(writer, docIDs, freqs, lenB);
 
-        // set position file
-        positionFileChannel.appendAllBytes(fitBuffer(positionBuffer));
-        positionFileChannel.close();
-        deleteFile(indexFolder + "/segment" + segID1 + "c");
-        deleteFile(indexFolder + "/segment" + segID2 + "c");
-
-        File f1 = new File(indexFolder + "/segment c tmp");
-        File f2 = new File(indexFolder + "/segment" + segID1/2 + "c");
-        f1.renameTo(f2);
-
-        // set list file
-        listFileChannel.appendAllBytes(fitBuffer(listBuffer));
-        listFileChannel.close();
-        deleteFile(indexFolder + "/segment" + segID1 + "b");
-        deleteFile(indexFolder + "/segment" + segID2 + "b");
+        offPos.add(writer.getOffset("c")); // add the end offset
+        byte[] offPosByte = compressor.encode(offPos);
+        writer.writeBytes("d", offPosByte);
 
-        f1 = new File(indexFolder + "/segment b tmp");
-        f2 = new File(indexFolder + "/segment" + segID1/2 + "b");
-        f1.renameTo(f2);
-
-        // set offPos file
-        offPosFileChannel.appendAllBytes(fitBuffer(offPosBuffer));
-        offPosFileChannel.close();
-        deleteFile(indexFolder + "/segment" + segID1 + "d");
-        deleteFile(indexFolder + "/segment" + segID2 + "d");
+        PositionalWordInfo wi = new PositionalWordInfo();
+        wi.setWordInfo(word, offsetB, lenB, offsetD, offPosByte.length, maxImpact);
+        writer.addWord(wi);
+    }
 
-        f1 = new File(indexFolder + "/segment d tmp");
-        f2 = new File(indexFolder + "/segment" + segID1/2 + "d");
-        f1.renameTo(f2);
+    /**
+     * get the offset in segmentXXb of the first posting of a word, after the skip list of its posting list
+     */
 
-        // set word file
-        path = Paths.get(indexFolder + "/segment" + segID1/2 + "a");
-        PageFileChannel wordsFileChannel = PageFileChannel.createOrOpen(path);
+    static int getPostingsOffset(PositionalWordInfo wi) {
+        return wi.offsetB + BlockPostings.getSkipListBytes(wi.lenB);
+    }
 
-        writeFirstPageOfWord(wordsFileChannel, wordsBuffer.position());
+    /**
+     * write the end offset of the position lists after the offsets of the last word, as a flush does
+     */
 
-        wordsFileChannel.appendAllBytes(fitBuffer(wordsBuffer));
-        wordsFileChannel.close();
+    @Override
+    void finishSegment(SegmentWriter writer) {
+        writer.writeBytes("d", compressor.encode(Arrays.asList(writer.getOffset("c"))));
     }
 
     /**
@@ -1004,51 +428,44 @@ public class PositionalIndexManager extends InvertedIndexManager {
     public Iterator<Document> searchPhraseQuery(List<String> phrase) {
         Preconditions.checkNotNull(phrase);
         List<Document> docs = new ArrayList<>();
-        int totalSegments = getNumSegments();
-
-        // searching each segment
-        for (int seg = 0; seg < totalSegments; seg++) {
-            Path dictSeg = Paths.get(indexFolder + "/segment" + seg + "a");
-            PageFileChannel pfc = PageFileChannel.createOrOpen(dictSeg);
-
-            // the previous state of the phrase lists
-            Map<Integer, List<Integer>> prev = new HashMap<>();
-
-            // the position of the keyword in the phrase
-            int pos = 0;
-
-            // searching for each individual keyword
-            for (String keyword : phrase) {
-                List<String> word = analyzer.analyze(keyword);
-                if (word.size() == 0 || word.get(0).length() == 0) {
-                    continue;
-                }
-                keyword = word.get(0);
-                Map<Integer, List<Integer>> curr = findWord(pfc, keyword, seg);
-                if (curr.isEmpty()) {
-                    break;
+        List<String> words = analyzeKeywords(phrase);
+
+        // the segments are not merged away while they are searched
+        segmentLock.readLock().lock();
+        try {
+            // searching each segment
+            for (List<Document> docList : searchSegments(getSegmentIDs(), seg -> {
+                // a cursor per keyword of the phrase, no document of the segment has the whole phrase if one is missing
+                List<PostingsCursor> cursors = openCursors(words, seg);
+                if (cursors == null || cursors.isEmpty()) {
+                    return Collections.<Document>emptyList();
+                }
+
+                // the documents having all the keywords, the rarest first, kept if the keywords are at consecutive positions
+                List<PostingsCursor> conjunction = rarestFirst(cursors);
+                List<Integer> idList = new ArrayList<>();
+                for (int doc = nextCommonDoc(conjunction); doc != PostingsCursor.NO_MORE_DOCS;
+                     doc = nextCommonDoc(conjunction)) {
+                    // the positions of the first keyword followed by the rest of the phrase so far
+                    List<Integer> prev = cursors.get(0).positions();
+                    for (int pos = 1; pos < cursors.size() && !prev.isEmpty(); pos++) {
+                        prev = postingMerge(prev, cursors.get(pos).positions(), pos);
+                    }
+                    if (!prev.isEmpty()) {
+                        idList.add(doc);
+                    }
                 }
-                if (pos == 0) {
-                    prev = mapMerge(curr, curr, 0);
-                }
-                else {
-                    prev = mapMerge(prev, curr, pos);
+                if (idList.isEmpty()) {
+                    return Collections.<Document>emptyList();
                 }
 
-                // increment the position
-                pos++;
-            }
-            if (prev.isEmpty()) {
-                continue;
+                // find the documents matching the IDs
+                return getDocuments(seg, idList);
+            })) {
+                docs.addAll(docList);
             }
-
-            // find the documents matching the IDs
-            List<Integer> idList = new ArrayList<>(prev.keySet());
-            List<Document> docList = getDocs(seg, idList);
-            if (docList.isEmpty()) {
-                continue;
-            }
-            docs.addAll(docList);
+        } finally {
+            segmentLock.readLock().unlock();
         }
         return docs.iterator();
     }
@@ -1191,141 +608,56 @@ public class PositionalIndexManager extends InvertedIndexManager {
         return wordList;
     }*/
 
-    // TODO: compare
-
-    private Map<Integer, List<Integer>> findWord(PageFileChannel pfc, String target, int segID) {
-        Map<Integer, List<Integer>> wordList = new HashMap<>();
-
-        // get number of pages
-        int cap = pfc.getNumPages();
+    /**
+     * Finds the keyword in the dictionary of a segment, reading its posting list only.
+     *
+     * @param target the keyword to look for
+     * @param segID the segment number to look for the target in
+     * @return a list of integers containing the ID of documents matching the search, the deleted ones excluded
+     */
 
-        // start from the dictionary
-        int pageNumber = 1;
-        if (pageNumber >= cap) {
-            System.err.println("dictionary too short!");
-            System.exit(1);
+    @Override
+    List<Integer> findKeyword(String target, int segID) {
+        List<Integer> idList = new ArrayList<>();
+        PositionalWordInfo wi = new PositionalWordInfo();
+        if (!lookupWord(segID, target, wi)) {
+            return idList;
         }
-        ByteBuffer bb = pfc.readPage(pageNumber);
-        bb.limit(PageFileChannel.PAGE_SIZE);
-        bb.position(0);
-
-        // reading the dictionary word info
-        while (true) {
-            int wordLength;
-            byte[] word;
-            int pageID;
-            int offset;
-            int length;
-            try {
-                wordLength = bb.getInt();
-            }
-            catch (BufferUnderflowException e) {
-                pageNumber++;
-                if (pageNumber >= cap) {
-                    break;
-                }
-                bb = pfc.readPage(pageNumber);
-                bb.position(0);
-                wordLength = bb.getInt();
-            }
-            if (wordLength == 0) {
-                return wordList;
-            }
-            word = new byte[wordLength];
-            for (int i = 0; i < wordLength; i++) {
-                try {
-                    word[i] = bb.get();
-                }
-                catch (BufferUnderflowException e) {
-                    pageNumber++;
-                    if (pageNumber >= cap) {
-                        break;
-                    }
-                    bb = pfc.readPage(pageNumber);
-                    bb.position(0);
-                    word[i] = bb.get();
-                }
-            }
-
-            // dictionary word
-            String dictWord = new String(word);
-            try {
-                pageID = bb.getInt();
-            }
-            catch (BufferUnderflowException e) {
-                pageNumber++;
-                if (pageNumber >= cap) {
-                    break;
-                }
-                bb = pfc.readPage(pageNumber);
-                bb.position(0);
-                pageID = bb.getInt();
-            }
-            try {
-                offset = bb.getInt();
-            }
-            catch (BufferUnderflowException e) {
-                pageNumber++;
-                if (pageNumber >= cap) {
-                    break;
-                }
-                bb = pfc.readPage(pageNumber);
-                bb.position(0);
-                offset = bb.getInt();
-            }
-            try {
-                length = bb.getInt();
-            }
-            catch (BufferUnderflowException e) {
-                pageNumber++;
-                if (pageNumber >= cap) {
-                    break;
-                }
-                bb = pfc.readPage(pageNumber);
-                bb.position(0);
-                length = bb.getInt();
-            }
+        LiveDocs liveDocs = getLiveDocs(segID);
 
-            // compare dictionary word with the target keyword
-            if (dictWord.equals(target)) {
-                wordList = getPositionalIndexList(segID, pageID, offset, length);
-                return wordList;
+        // docID, length(position list) in segmentXXb, after the skip list
+        ByteBuffer listBuffer = ByteBuffer.wrap(readSegBytes(segID, "b", getPostingsOffset(wi), wi.lenB * 2 * 4));
+        for (int i = 0; i < wi.lenB; i++) {
+            int docID = listBuffer.getInt();
+            listBuffer.getInt();
+            if (liveDocs.isLive(docID)) {
+                idList.add(docID);
             }
         }
-        return wordList;
-    }
-
-    private Map<Integer, List<Integer>> makeMap(List<Integer> id, List<List<Integer>> pos) { // TODO: change, study
-        return new HashMap<>();
+        return idList;
     }
 
     /**
-     * Get all the documents matching the ID list in a segment.
+     * Opens a cursor over the posting list and the position lists of a word in a segment.
      *
-     * @param segID the number of segment
-     * @param idList a list of document IDs
-     * @return a list of documents matching the search
+     * @param word the analyzed word
+     * @param segID the segment ID
+     * @return the cursor, null if the segment doesn't have the word
      */
 
-    private List<Document> getDocs(int segID, List<Integer> idList) {
-        List<Document> docIDList = new ArrayList<>();
-
-        // reading the documents in the segment
-        String path = indexFolder + "/segment" + segID + ".db";
-        DocumentStore ds = MapdbDocStore.createOrOpen(path);
-        Iterator<Integer> docsIterator = ds.keyIterator();
-
-        // finding docIDs that match the targetID
-        while (docsIterator.hasNext()) {
-            int tempID = docsIterator.next();
-            if (!idList.isEmpty() && idList.contains(tempID)) {
-                docIDList.add(ds.getDocument(tempID));
-            }
+    @Override
+    PostingsCursor openCursor(String word, int segID) {
+        PositionalWordInfo wi = new PositionalWordInfo();
+        if (!lookupWord(segID, word, wi)) {
+            return null;
         }
+        SegmentReader reader = getSegmentReader(segID);
+        BlockPostings postings = new BlockPostings(reader, wi.offsetB, wi.lenB, wi.maxImpact);
+        return new PositionalPostingsCursor(reader, compressor, wi, postings.indexedCursor(getLiveDocs(segID)));
+    }
 
-        // closing the document store
-        ds.close();
-        return docIDList;
+    private Map<Integer, List<Integer>> makeMap(List<Integer> id, List<List<Integer>> pos) { // TODO: change, study
+        return new HashMap<>();
     }
 
     /**
@@ -1377,77 +709,6 @@ public class PositionalIndexManager extends InvertedIndexManager {
 
     // TODO: compare
 
-    /**
-     * Get the inverted list in a certain page of a segment with given offset and length.
-     *
-     * @param segID the ID of segment
-     * @param pageID the ID of page
-     * @param offset an offset of the inverted list
-     * @param length the length of the inverted list
-     * @return a list of document IDs matching the search
-     */
-
-    private Map<Integer, List<Integer>> getPositionalIndexList(int segID, int pageID, int offset, int length) {
-        Path path = Paths.get(indexFolder + "/segment" + segID + "b");
-        PageFileChannel pfc = PageFileChannel.createOrOpen(path);
-
-        // number of pages in this segment
-        int cap = pfc.getNumPages();
-        ByteBuffer indexBuffer = pfc.readPage(pageID);
-        indexBuffer.position(offset);
-
-        // reading docID, offset, and length in the positional listing
-        Map<Integer, List<Integer>> posList = new HashMap<>();
-        for (int i = 0; i < length; i++) {
-            int docID;
-            int positionalOffset;
-            int positionalLength;
-            try {
-                docID = indexBuffer.getInt();
-            }
-            catch (BufferUnderflowException e) {
-                pageID++;
-                if (pageID >= cap) {
-                    System.err.println("reached end of pages while reading list!");
-                    System.exit(-1);
-                }
-                indexBuffer = pfc.readPage(pageID);
-                indexBuffer.position(0);
-                docID = indexBuffer.getInt();
-            }
-            try {
-                positionalOffset = indexBuffer.getInt();
-            }
-            catch (BufferUnderflowException e) {
-                pageID++;
-                if (pageID >= cap) {
-                    System.err.println("reached end of pages while reading list!");
-                    System.exit(-1);
-                }
-                indexBuffer = pfc.readPage(pageID);
-                indexBuffer.position(0);
-                positionalOffset = indexBuffer.getInt();
-            }
-            try {
-                positionalLength = indexBuffer.getInt();
-            }
-            catch (BufferUnderflowException e) {
-                pageID++;
-                if (pageID >= cap) {
-                    System.err.println("reached end of pages while reading list!");
-                    System.exit(-1);
-                }
-                indexBuffer = pfc.readPage(pageID);
-                indexBuffer.position(0);
-                positionalLength = indexBuffer.getInt();
-            }
-            List<Integer> positions = getPositionalList(segID, positionalOffset, positionalLength);
-            posList.put(docID, positions);
-        }
-        pfc.close();
-        return posList;
-    }
-
     /**
      * Get the inverted list in a certain page of a segment with given offset and length.
      *
@@ -1539,40 +800,6 @@ public class PositionalIndexManager extends InvertedIndexManager {
         return list;
     }
 
-    /**
-     * Finding the overlap of two listings as a map
-     *
-     * @param prev the previous state of the listings
-     * @param curr the current state of the listings
-     * @param offset the offset that needs to be checked
-     * @return the special overlap of the two listings based on the position lists
-     */
-
-    private Map<Integer, List<Integer>> mapMerge(Map<Integer, List<Integer>> prev, Map<Integer, List<Integer>> curr, int offset) {
-        Map<Integer, List<Integer>> merged = new HashMap<>();
-        if (offset == 0) {
-            return curr;
-        }
-        if (curr.isEmpty() || prev.isEmpty()) {
-            throw new RuntimeException("empty map(s) passed");
-        }
-        if (offset < 0) {
-            throw new RuntimeException("offset cannot be negative");
-        }
-        List<Integer> prevList = new ArrayList<>(prev.keySet());
-        for (int id : prevList) {
-            if (!curr.containsKey(id)) {
-                continue;
-            }
-            List<Integer> list = postingMerge(prev.get(id), curr.get(id), offset);
-            if (list.isEmpty()) {
-                continue;
-            }
-            merged.put(id, list);
-        }
-        return merged;
-    }
-
     /**
      * Performs merge for two lists
      *
@@ -1618,51 +845,50 @@ public class PositionalIndexManager extends InvertedIndexManager {
 
     @Override
     public PositionalIndexSegmentForTest getIndexSegmentPositional(int segmentNum) {
-        if (segmentID == 0) {
+        if (getNumSegments() == 0) {
             return null;
         }
+        segmentLock.readLock().lock();
+        try {
+            return readIndexSegmentPositional(getSegmentID(segmentNum));
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * read all the contents of a disk segment of a positional index into memory
+     *
+     * @param segID the segment ID
+     */
+
+    private PositionalIndexSegmentForTest readIndexSegmentPositional(int segID) {
         Map<String, List<Integer>> invertedLists = new TreeMap<>();
         Map<Integer, Document> documents = new TreeMap<>();
         Map<String, List<Integer>> wordDic = new TreeMap<>();
         Table<String, Integer, List<Integer>> positions = TreeBasedTable.create();
 
         // read segmentXXa
-        Path wordsPath = Paths.get(indexFolder + "/segment" + segmentNum + "a");
-        PageFileChannel wordsFileChannel = PageFileChannel.createOrOpen(wordsPath);
-
-        ByteBuffer wordsBuffer = wordsFileChannel.readAllPages();
-        wordsFileChannel.close();
-        readFirstPageOfWord(wordsBuffer);
+        ByteBuffer wordsBuffer = readDictionary(segID);
 
         // based on remaining page, build map<String, List<Integer>> in which key is keyword, value is length(list),
-        // lenOfByte(offsetPos list)
+        // lenOfByte(offsetPos list), offset(first posting)
         PositionalWordInfo wi = new PositionalWordInfo();
+        boolean hasImpacts = dictionaryHasImpacts(segID);
         while (wordsBuffer.hasRemaining()) {
-            wi.readOneWord(wordsBuffer);
-            wordDic.put(wi.word, Arrays.asList(wi.lenB, wi.lenD));
+            wi.readOneWord(wordsBuffer, hasImpacts);
+            wordDic.put(wi.word, Arrays.asList(wi.lenB, wi.lenD, getPostingsOffset(wi)));
         }
 
         // read segmentXXb, segmentXXc and segmentXXd, build invertedLists and positions
-        Path listPath = Paths.get(indexFolder + "/segment" + segmentNum + "b");
-        PageFileChannel listFileChannel = PageFileChannel.createOrOpen(listPath);
-        ByteBuffer listBuffer = listFileChannel.readAllPages();
-        listFileChannel.close();
-        listBuffer.rewind();
-
-        Path positionPath = Paths.get(indexFolder + "/segment" + segmentNum + "c");
-        PageFileChannel positionFileChannel = PageFileChannel.createOrOpen(positionPath);
-        ByteBuffer positionBuffer = positionFileChannel.readAllPages();
-        positionFileChannel.close();
-        positionBuffer.rewind();
-
-        Path offPosPath = Paths.get(indexFolder + "/segment" + segmentNum + "d");
-        PageFileChannel offPosFileChannel = PageFileChannel.createOrOpen(offPosPath);
-        ByteBuffer offPosBuffer = offPosFileChannel.readAllPages();
-        offPosFileChannel.close();
-        offPosBuffer.rewind();
+        SegmentReader reader = getSegmentReader(segID);
+        ByteBuffer listBuffer = reader.readAllPages("b");
+        ByteBuffer positionBuffer = reader.readAllPages("c");
+        ByteBuffer offPosBuffer = reader.readAllPages("d");
 
         for (String word: wordDic.keySet()) {
             int listLen = wordDic.get(word).get(0);
+            listBuffer.position(wordDic.get(word).get(2));
             List<Integer> list = new ArrayList<>();
             for (int i = 0; i < listLen; i++) {
                 list.add(listBuffer.getInt());
@@ -1685,7 +911,7 @@ public class PositionalIndexManager extends InvertedIndexManager {
         }
 
         // read segmentXX.db, build map<Integer, Document> documents
-        DocumentStore ds = MapdbDocStore.createOrOpen(indexFolder + "/segment" + segmentNum + ".db");
+        DocumentStore ds = SegmentReader.openDocumentStore(indexFolder, segID);
         Iterator<Map.Entry<Integer, Document>> itr = ds.iterator();
         while(itr.hasNext()) {
             Map.Entry<Integer, Document> entry = itr.next();
@@ -1696,171 +922,29 @@ public class PositionalIndexManager extends InvertedIndexManager {
     }
 
     /**
-     * Performs top-K ranked search using TF-IDF.
-     * Returns an iterator that returns the top K documents with highest TF-IDF scores.
-     *
-     * Each element is a pair of <Document, Double (TF-IDF Score)>.
-     *
-     * If parameter `topK` is null, then returns all the matching documents.
-     *
-     * Unlike Boolean Query and Phrase Query where order of the documents doesn't matter,
-     * for ranked search, order of the document returned by the iterator matters.
-     *
-     * @param keywords, a list of keywords in the query
-     * @param topK, number of top documents weighted by TF-IDF, all documents if topK is null
-     * @return a iterator of top-k ordered documents matching the query
+     * the ranked search of a positional index returns the documents whose query terms all have a zero tf-idf weight
      */
-    @Override
-    public Iterator<Pair<Document, Double>> searchTfIdf(List<String> keywords, Integer topK) {
-        // analyze the query
-        String q = String.join(" ", keywords);
-        List<String> words = analyzer.analyze(q);
-        Map<String, Double> IDF = new HashMap<>();
-        Map<String, Integer> queryTF = new HashMap<>();
-        Set<String> wordSet = new HashSet<>();
-        wordSet.addAll(words);
-
-        // If there are only one word in query, set IDF to 1, queryTF to 1
-        if (wordSet.size() == 1) {
-            IDF.put(words.get(0), 1.0);
-            queryTF.put(words.get(0), 1);
-        } else {
-            // In the first pass, access each segment to calculate the IDF of the query keywords
-            for (String w : words) {
-                if (!IDF.containsKey(w)) {
-                    IDF.put(w, computeIDF(w));
-                }
-
-                if(queryTF.containsKey(w))
-                    queryTF.put(w, queryTF.get(w) + 1);
-                else
-                    queryTF.put(w, 1);
-            }
-        }
-
-        PriorityQueue<Map.Entry<Pair<Integer, Integer>, Double>> pq = new PriorityQueue<>(
-                (a,b) -> a.getValue().compareTo(b.getValue())
-        );
-
-        // In the second pass
-        int segNum = getNumSegments();
-        for (int i = 0; i < segNum; i++) {
-            Map<Pair<Integer, Integer>, Double> score = new HashMap<>();
-            Map<Pair<Integer, Integer>, Double> dotProductAccumulator = new HashMap<>();
-            Map<Pair<Integer, Integer>, Double> vectorLengthAccumulator = new HashMap<>();
-
-            // read segmentXXa
-            Path wordsPath = Paths.get(indexFolder + "/segment" + i + "a");
-            PageFileChannel wordsFileChannel = PageFileChannel.createOrOpen(wordsPath);
-            Path listPath = Paths.get(indexFolder + "/segment" + i + "b");
-            PageFileChannel listFileChannel = PageFileChannel.createOrOpen(listPath);
-
-            // search the dictionary for the token, get the posting list and TF for each document
-            for (String w: wordSet) {
-                PositionalWordInfo wi = findPositionalWord(wordsFileChannel, w);
-
-                // if there are no keyword in dictionary, continue the next loop
-                if (wi.word == null) {
-                    continue;
-                }
-
-                int page = wi.offsetB/ PageFileChannel.PAGE_SIZE;
-                ByteBuffer listBuffer = listFileChannel.readPage(page);
-                listBuffer.position(wi.offsetB);
-                BufferAndList bl = getIndexListGivenLen(i, listBuffer, page, wi.lenB, false, 0);
-                Map<Integer,Integer> docMap = bl.map;
-
-                // for each docID on the postingList of w, compute tfidf
-                for (int docID: docMap.keySet()) {
-                    double tfIdf = docMap.get(docID) * IDF.get(w);
-                    double queryTfIdf = queryTF.get(w) * IDF.get(w);
-//                    System.out.println("doc:"+i+","+docID+";word:"+w+";tfIdf"+tfIdf+";queryTfIdf"+queryTfIdf);
-                    Pair<Integer, Integer> doc = new Pair<>(i, docID);
-
-                    if (dotProductAccumulator.containsKey(doc)) {
-                        dotProductAccumulator.put(doc, dotProductAccumulator.get(doc) + tfIdf * queryTfIdf);
-                        vectorLengthAccumulator.put(doc, vectorLengthAccumulator.get(doc) + tfIdf * tfIdf);
-                    } else {
-                        dotProductAccumulator.put(doc, tfIdf * queryTfIdf);
-                        vectorLengthAccumulator.put(doc, tfIdf * tfIdf);
-                    }
-                }
-            }
-
-            wordsFileChannel.close();
-            listFileChannel.close();
 
-            // for each docID in this segment, compute the score and add it to priority queue
-            for (Pair<Integer, Integer> d: dotProductAccumulator.keySet()) {
-                if (vectorLengthAccumulator.get(d) != 0.0) {
-                    score.put(d, (double) dotProductAccumulator.get(d) / Math.sqrt(vectorLengthAccumulator.get(d)));
-                }
-                else {
-                    score.put(d, 0.0);
-                }
-            }
-            pq.addAll(score.entrySet());
-            if (topK != null) {
-                while (pq.size() > topK)
-                    pq.poll();
-            }
-        }
-
-        // based on <SegmentID, LocalDocID> retrieve document
-        List<Pair<Document, Double>> result = new ArrayList<>();
-        int pqSize = pq.size();
-        for (int i = 0; i < pqSize; i++) {
-            Map.Entry<Pair<Integer, Integer>, Double> tmp = pq.poll();
-            Pair<Integer, Integer> doc = tmp.getKey();
-            result.add(0, new Pair<>(getDoc(doc), tmp.getValue()));
-        }
-        return result.iterator();
+    @Override
+    boolean keepsZeroScores() {
+        return true;
     }
 
 
     /**
-     * Find a word in the dictionary, if can not find, return an empty PositionalWordInfo
-     */
-
-    private PositionalWordInfo findPositionalWord (PageFileChannel wordsFileChannel, String w) {
-        ByteBuffer wordsBuffer = wordsFileChannel.readAllPages();
-        readFirstPageOfWord(wordsBuffer);
-
-        PositionalWordInfo wi = new PositionalWordInfo();
-        while (wordsBuffer.hasRemaining()) {
-            wi.readOneWord(wordsBuffer);
-            if (w.equals(wi.word)) {
-                return wi;
-            }
-        }
-        return new PositionalWordInfo();
-    }
-
-    /**
-     * Returns the number of documents containing the token within the given segment.
-     * The token should be already analyzed by the analyzer. The analyzer shouldn't be applied again.
+     * get the number of documents of a segment containing an analyzed token, the length of its posting list in the
+     * dictionary of segmentXXa
      */
 
     @Override
-    public int getDocumentFrequency(int segmentNum, String token) {
-        int lenList = 0;
-        // read segmentXXa
-        Path wordsPath = Paths.get(indexFolder + "/segment" + segmentNum + "a");
-        PageFileChannel wordsFileChannel = PageFileChannel.createOrOpen(wordsPath);
-        ByteBuffer wordsBuffer = wordsFileChannel.readAllPages();
-        wordsFileChannel.close();
-        readFirstPageOfWord(wordsBuffer);
-
-        // based on remaining page, search the dictionary for the token and get the len(list)
+    int documentFrequency(int segID, String token) {
         PositionalWordInfo wi = new PositionalWordInfo();
-        while (wordsBuffer.hasRemaining()) {
-            wi.readOneWord(wordsBuffer);
-            if (token.equals(wi.word)) {
-                lenList = wi.lenB;
-                break;
-            }
+        segmentLock.readLock().lock();
+        try {
+            return lookupWord(segID, token, wi) ? wi.lenB : 0;
+        } finally {
+            segmentLock.readLock().unlock();
         }
-        return lenList;
     }
 
 }
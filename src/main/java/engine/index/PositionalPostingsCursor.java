@@ -0,0 +1,87 @@
+package engine.index;
+
+import java.util.List;
+
+/**
+ * A cursor over the posting list of one word in one segment of a positional index.
+ *
+ * The (docID, length(position list)) pairs are in the block format of BlockPostings in segmentXXb, and are read
+ * through its cursor, so advance jumps over the blocks through the skip list and a ranked search skips the blocks whose
+ * impacts are too low. The offsets of the position lists in segmentXXd are compressed as a whole, so they are only
+ * decoded when the position list of a document is first asked for, and every position list is then read from
+ * segmentXXc and decoded on its own.
+ *
+ */
+
+class PositionalPostingsCursor extends PostingsCursor {
+
+    private final SegmentReader reader;
+    private final Compressor compressor;
+    private final PositionalWordInfo wi;
+    private final BlockPostings.Cursor postings;
+    private List<Integer> offPos; // the offsets of the position lists, null until they are asked for
+
+    PositionalPostingsCursor(SegmentReader reader, Compressor compressor, PositionalWordInfo wi,
+                             BlockPostings.Cursor postings) {
+        this.reader = reader;
+        this.compressor = compressor;
+        this.wi = wi;
+        this.postings = postings;
+    }
+
+    @Override
+    public int docID() {
+        return postings.docID();
+    }
+
+    @Override
+    public int nextDoc() {
+        return postings.nextDoc();
+    }
+
+    @Override
+    public int advance(int target) {
+        return postings.advance(target);
+    }
+
+    @Override
+    public int advanceShallow(int target) {
+        return postings.advanceShallow(target);
+    }
+
+    @Override
+    public int getBlockMaxFreq() {
+        return postings.getBlockMaxFreq();
+    }
+
+    @Override
+    public double getBlockMaxImpact() {
+        return postings.getBlockMaxImpact();
+    }
+
+    @Override
+    public double getMaxImpact() {
+        return postings.getMaxImpact();
+    }
+
+    @Override
+    public int freq() {
+        return postings.freq();
+    }
+
+    @Override
+    public List<Integer> positions() {
+        if (offPos == null) {
+            offPos = compressor.decode(reader.readBytes("d", wi.offsetD, wi.lenD));
+        }
+        int posting = postings.index();
+        int start = offPos.get(posting);
+        return compressor.decode(reader.readBytes("c", start, offPos.get(posting + 1) - start));
+    }
+
+    @Override
+    public int cost() {
+        return postings.cost();
+    }
+
+}
@@ -9,13 +9,14 @@ import java.nio.charset.StandardCharsets;
  *
  */
 
-public class PositionalWordInfo {
+public class PositionalWordInfo implements DictionaryEntry {
 
     String word; //the keyword
-    int offsetB; //the starting position of the posting list in the whole file
+    int offsetB; //the starting position of the posting list, its skip list first (see BlockPostings), in the whole file
     int lenB; // the length of bytes of the posting list
     int offsetD; //the starting position of the offsetPos in the whole file
     int lenD; // the length of bytes of the offsetPos
+    float maxImpact = 1; // the largest impact of the postings (see BlockPostings), 1 if unknown
 
     public void setWordInfo(String word, int offsetB, int lenB, int offsetD, int lenD) {
         this.word = word;
@@ -25,12 +26,28 @@ public class PositionalWordInfo {
         this.lenD = lenD;
     }
 
+    public void setWordInfo(String word, int offsetB, int lenB, int offsetD, int lenD, float maxImpact) {
+        setWordInfo(word, offsetB, lenB, offsetD, lenD);
+        this.maxImpact = maxImpact;
+    }
+
+    @Override
+    public String getWord() {
+        return word;
+    }
+
+    @Override
+    public int getByteSize() {
+        return 4 + word.getBytes(StandardCharsets.UTF_8).length + 5 * 4;
+    }
+
     /**
      * write the word info into a ByteBuffer
      *
      * @param bb buffer being written
      */
 
+    @Override
     public void writeOneWord(ByteBuffer bb) {
         byte[] tmp = word.getBytes(StandardCharsets.UTF_8);
         bb.putInt(tmp.length);
@@ -39,6 +56,7 @@ public class PositionalWordInfo {
         bb.putInt(lenB);
         bb.putInt(offsetD);
         bb.putInt(lenD);
+        bb.putFloat(maxImpact);
     }
 
     /**
@@ -47,7 +65,20 @@ public class PositionalWordInfo {
      * @param bb buffer being read
      */
 
+    @Override
     public void readOneWord(ByteBuffer bb) {
+        readOneWord(bb, true);
+    }
+
+    /**
+     * read the word info from a ByteBuffer, with the largest impact of the posting list or without it, then 1
+     *
+     * @param bb buffer being read
+     * @param hasImpact whether the word info has the largest impact of the posting list
+     */
+
+    @Override
+    public void readOneWord(ByteBuffer bb, boolean hasImpact) {
         int wordLen = bb.getInt();
         byte[] wordb = new byte[wordLen];
         bb.get(wordb, 0, wordLen);
@@ -56,6 +87,7 @@ public class PositionalWordInfo {
         this.lenB = bb.getInt();
         this.offsetD = bb.getInt();
         this.lenD = bb.getInt();
+        this.maxImpact = hasImpact ? bb.getFloat() : 1;
     }
 
 }
@@ -0,0 +1,241 @@
+package engine.index;
+
+import com.google.common.base.Preconditions;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The in-memory segment buffer of the posting lists and position lists of the documents added since the last flush.
+ *
+ * Every term gets a slot the first time it is seen, through a hash map from the term to its slot. The docIDs, the term
+ * frequencies and the positions of a slot are kept in growable int arrays, so that a posting costs a few ints instead of
+ * a boxed Integer in a linked list and a table cell. Terms are only sorted when the buffer is written by flush().
+ *
+ * Documents must be added in ascending order of their docIDs.
+ *
+ * The buffer keeps an estimate of the heap bytes it uses, updated whenever a term is added or an array grows, so that
+ * the index can flush by memory instead of by number of documents.
+ *
+ */
+
+public class PostingsBuffer {
+
+    private static final int INITIAL_TERMS = 64;
+    private static final int INITIAL_POSTINGS = 2;
+
+    // rough sizes of the JVM objects, in bytes
+    static final int OBJECT_HEADER_BYTES = 16;
+    static final int REFERENCE_BYTES = 8;
+    static final int STRING_BYTES = 40; // a String and the header of its char array
+    static final int MAP_ENTRY_BYTES = 48; // a HashMap node, its table slot and the boxed Integer
+    private static final int SLOT_BYTES = 4 * REFERENCE_BYTES + 2 * 4; // per slot, in the arrays of slots
+
+    private Map<String, Integer> termIDs;
+    private String[] terms;
+    private int[][] docIDs; // docIDs of every term, in ascending order
+    private int[][] freqs; // the number of positions of the term in every docID
+    private int[] numDocs;
+    private int[][] positions; // positions of every term, grouped by docID
+    private int[] numPositions;
+    private int numTerms;
+    private long bytesUsed;
+
+    public PostingsBuffer() {
+        clear();
+    }
+
+    /**
+     * Drops all the postings of the buffer.
+     */
+
+    public void clear() {
+        termIDs = new HashMap<>();
+        terms = new String[INITIAL_TERMS];
+        docIDs = new int[INITIAL_TERMS][];
+        freqs = new int[INITIAL_TERMS][];
+        numDocs = new int[INITIAL_TERMS];
+        positions = new int[INITIAL_TERMS][];
+        numPositions = new int[INITIAL_TERMS];
+        numTerms = 0;
+        bytesUsed = 6 * OBJECT_HEADER_BYTES + (long) INITIAL_TERMS * SLOT_BYTES;
+    }
+
+    /**
+     * Adds the analyzed words of a document to the buffer, the position of a word is its index in the list.
+     *
+     * @param docID the docID of the document, not less than the docID of any document added before
+     * @param words the analyzed words of the document
+     */
+
+    public void addDocument(int docID, List<String> words) {
+        for (int i = 0; i < words.size(); i++) {
+            add(words.get(i), docID, i);
+        }
+    }
+
+    /**
+     * Adds one occurrence of a term to the buffer.
+     *
+     * @param term the term
+     * @param docID the docID of the document, not less than the docID of any posting added before
+     * @param position the position of the term in the document
+     */
+
+    public void add(String term, int docID, int position) {
+        Integer termID = termIDs.get(term);
+        if (termID == null) {
+            termID = newTerm(term);
+        }
+        int n = numDocs[termID];
+        if (n == 0 || docIDs[termID][n - 1] != docID) {
+            Preconditions.checkArgument(n == 0 || docIDs[termID][n - 1] < docID,
+                    "documents must be added in ascending order of docIDs");
+            if (n == docIDs[termID].length) {
+                docIDs[termID] = Arrays.copyOf(docIDs[termID], n * 2);
+                freqs[termID] = Arrays.copyOf(freqs[termID], n * 2);
+                bytesUsed += 2L * n * 4;
+            }
+            docIDs[termID][n] = docID;
+            freqs[termID][n] = 0;
+            numDocs[termID] = ++n;
+        }
+        freqs[termID][n - 1]++;
+
+        int p = numPositions[termID];
+        if (p == positions[termID].length) {
+            positions[termID] = Arrays.copyOf(positions[termID], p * 2);
+            bytesUsed += (long) p * 4;
+        }
+        positions[termID][p] = position;
+        numPositions[termID] = p + 1;
+    }
+
+    /**
+     * give a slot to a term seen for the first time, growing the arrays of slots if they are full
+     */
+
+    private int newTerm(String term) {
+        if (numTerms == terms.length) {
+            int capacity = numTerms * 2;
+            terms = Arrays.copyOf(terms, capacity);
+            docIDs = Arrays.copyOf(docIDs, capacity);
+            freqs = Arrays.copyOf(freqs, capacity);
+            numDocs = Arrays.copyOf(numDocs, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            numPositions = Arrays.copyOf(numPositions, capacity);
+            bytesUsed += (long) (capacity - numTerms) * SLOT_BYTES;
+        }
+        int termID = numTerms++;
+        terms[termID] = term;
+        docIDs[termID] = new int[INITIAL_POSTINGS];
+        freqs[termID] = new int[INITIAL_POSTINGS];
+        positions[termID] = new int[INITIAL_POSTINGS];
+        termIDs.put(term, termID);
+        bytesUsed += STRING_BYTES + 2L * term.length() + MAP_ENTRY_BYTES + 3 * (OBJECT_HEADER_BYTES + INITIAL_POSTINGS * 4);
+        return termID;
+    }
+
+    /**
+     * Checks if the buffer has no posting.
+     */
+
+    public boolean isEmpty() {
+        return numTerms == 0;
+    }
+
+    /**
+     * Gets the number of distinct terms in the buffer.
+     */
+
+    public int getNumTerms() {
+        return numTerms;
+    }
+
+    /**
+     * Gets an estimate of the heap bytes used by the buffer, including the terms, the hash map and the arrays.
+     */
+
+    public long ramBytesUsed() {
+        return bytesUsed;
+    }
+
+    /**
+     * Gets the slots of all the terms sorted by their terms, which is the order the terms are written to a segment.
+     */
+
+    public int[] getSortedTermIDs() {
+        Integer[] sorted = new Integer[numTerms];
+        for (int i = 0; i < numTerms; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, (a, b) -> terms[a].compareTo(terms[b]));
+        int[] ans = new int[numTerms];
+        for (int i = 0; i < numTerms; i++) {
+            ans[i] = sorted[i];
+        }
+        return ans;
+    }
+
+    /**
+     * Gets the term of a slot.
+     */
+
+    public String getTerm(int termID) {
+        return terms[termID];
+    }
+
+    /**
+     * Gets the number of documents containing the term of a slot, i.e. the length of its posting list.
+     */
+
+    public int getNumDocs(int termID) {
+        return numDocs[termID];
+    }
+
+    /**
+     * Gets the i-th docID of the posting list of a slot.
+     */
+
+    public int getDocID(int termID, int i) {
+        return docIDs[termID][i];
+    }
+
+    /**
+     * Gets the number of positions of the term of a slot in the i-th document of its posting list.
+     */
+
+    public int getFreq(int termID, int i) {
+        return freqs[termID][i];
+    }
+
+    /**
+     * Gets a view of the positions of the term of a slot in a range of its documents.
+     *
+     * @param termID the slot of the term
+     * @param start the index of the first position, i.e. the sum of the frequencies of the documents before the range
+     * @param length the number of positions
+     * @return an unmodifiable list backed by the buffer, valid until the buffer is cleared
+     */
+
+    public List<Integer> getPositions(int termID, int start, int length) {
+        Preconditions.checkPositionIndexes(start, start + length, numPositions[termID]);
+        int[] array = positions[termID];
+        return new AbstractList<Integer>() {
+            @Override
+            public Integer get(int index) {
+                Preconditions.checkElementIndex(index, length);
+                return array[start + index];
+            }
+
+            @Override
+            public int size() {
+                return length;
+            }
+        };
+    }
+
+}
@@ -0,0 +1,155 @@
+package engine.index;
+
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A cursor over the posting list of one word in one disk segment, which decodes the postings on demand from the segment
+ * files instead of reading the whole list into memory.
+ *
+ * The cursor starts before the first posting. nextDoc and advance move it forward only, and return NO_MORE_DOCS once
+ * the list is exhausted. The deleted documents of the segment are skipped.
+ *
+ */
+
+public abstract class PostingsCursor {
+
+    public static final int NO_MORE_DOCS = Integer.MAX_VALUE;
+
+    /**
+     * Gets the docID of the current posting, -1 before the first call to nextDoc or advance, NO_MORE_DOCS after the
+     * last posting.
+     */
+
+    public abstract int docID();
+
+    /**
+     * Moves to the next posting of a document which is not deleted.
+     *
+     * @return the docID of the posting, NO_MORE_DOCS if there is none
+     */
+
+    public abstract int nextDoc();
+
+    /**
+     * Moves to the first posting whose docID is at least the target, of a document which is not deleted. The target
+     * must be greater than the current docID.
+     *
+     * @param target the docID looked for
+     * @return the docID of the posting, NO_MORE_DOCS if there is none
+     */
+
+    public int advance(int target) {
+        int doc;
+        do {
+            doc = nextDoc();
+        } while (doc < target);
+        return doc;
+    }
+
+    /**
+     * Moves the block bounds of the cursor to the block of the posting list which may hold the target, reading its skip
+     * list only, so getBlockMaxFreq bounds the postings from the target to the returned docID without decoding them.
+     * The current docID is unchanged. A cursor without skip list has a single block covering the whole list.
+     *
+     * @param target the docID looked for, at least the current docID
+     * @return the last docID of the block, NO_MORE_DOCS if it is the last one or there is none
+     */
+
+    public int advanceShallow(int target) {
+        return NO_MORE_DOCS;
+    }
+
+    /**
+     * Gets the largest length of position list of the postings of the block found by the last call to advanceShallow,
+     * 0 if no posting reaches its target, Integer.MAX_VALUE if the cursor doesn't know it.
+     */
+
+    public int getBlockMaxFreq() {
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Gets the largest length of position list divided by the norm of its document (see DocumentNorms) of the postings
+     * of the block found by the last call to advanceShallow, 0 if no posting reaches its target, 1 if the cursor doesn't
+     * know it, as the length of a position list is at most the norm of its document.
+     */
+
+    public double getBlockMaxImpact() {
+        return 1;
+    }
+
+    /**
+     * Gets the largest length of position list divided by the norm of its document of all the postings of the list, 1
+     * if the cursor doesn't know it.
+     */
+
+    public double getMaxImpact() {
+        return 1;
+    }
+
+    /**
+     * Gets the length of the position list of the current document.
+     */
+
+    public abstract int freq();
+
+    /**
+     * Gets the position list of the current document.
+     *
+     * Throws UnsupportedOperationException if the index is not a positional index.
+     */
+
+    public List<Integer> positions() {
+        throw new UnsupportedOperationException("The posting lists of an inverted index have no position list!");
+    }
+
+    /**
+     * Gets the length of the posting list, deleted documents included, as an upper bound of the number of documents
+     * the cursor goes through.
+     */
+
+    public abstract int cost();
+
+    /**
+     * Finds the first of a sorted range of values which is at least the target, by galloping: the values 1, 2, 4 …
+     * after the start of the range are probed until one reaches the target, then the last gap is bisected. It takes
+     * O(log d) probes where d is the distance to the value found, so a close target costs about as much as a linear
+     * scan and a far one much less.
+     *
+     * @param valueAt the value at an index of the range
+     * @param from the first index of the range
+     * @param to the index after the last one of the range
+     * @param target the value looked for
+     * @return the index of the value found, to if every value of the range is smaller than the target
+     */
+
+    protected static int gallop(IntUnaryOperator valueAt, int from, int to, int target) {
+        int lo = from;
+        int hi = to;
+        for (int bound = 1; ; bound *= 2) {
+            int probe = lo + bound - 1;
+            if (probe >= to) {
+                break;
+            }
+            if (valueAt.applyAsInt(probe) >= target) {
+                hi = probe;
+                break;
+            }
+            lo = probe + 1;
+        }
+
+        // the value is in [lo, hi], hi if no value of [lo, hi) reaches the target
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (valueAt.applyAsInt(mid) < target) {
+                lo = mid + 1;
+            }
+            else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+}
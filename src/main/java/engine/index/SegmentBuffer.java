@@ -0,0 +1,124 @@
+package engine.index;
+
+import engine.storage.Document;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An in-memory segment: the posting lists, the position lists and the documents added since it was last written to
+ * disk. The documents get local docIDs from 0, in the order they are added.
+ *
+ * Every indexing thread of an InvertedIndexManager owns its own buffer, so the threads share no mutable state until a
+ * buffer is written as a segment. The buffer itself is not thread-safe, a thread which writes the buffer of another
+ * thread must hold its lock.
+ *
+ */
+
+public class SegmentBuffer {
+
+    private PostingsBuffer postings;
+    private Map<Integer, Document> documents;
+    private long documentBytes; // the estimated heap bytes of the buffered documents
+
+    public SegmentBuffer() {
+        this(new PostingsBuffer(), new TreeMap<>(), 0);
+    }
+
+    private SegmentBuffer(PostingsBuffer postings, Map<Integer, Document> documents, long documentBytes) {
+        this.postings = postings;
+        this.documents = documents;
+        this.documentBytes = documentBytes;
+    }
+
+    /**
+     * Adds a document and its analyzed words to the buffer, with the next local docID.
+     *
+     * @param document the document
+     * @param words the analyzed words of the document
+     */
+
+    public void addDocument(Document document, List<String> words) {
+        int docID = documents.size();
+        postings.addDocument(docID, words);
+        documents.put(docID, document);
+        documentBytes += estimateBytes(document);
+    }
+
+    /**
+     * Checks if the buffer has no document to write.
+     */
+
+    public boolean isEmpty() {
+        return postings.isEmpty() || documents.isEmpty();
+    }
+
+    /**
+     * Gets the number of documents in the buffer.
+     */
+
+    public int getNumDocuments() {
+        return documents.size();
+    }
+
+    /**
+     * Gets the estimated heap bytes of the buffer, covering the terms, the posting lists, the position lists and the
+     * text of the documents.
+     */
+
+    public long ramBytesUsed() {
+        return postings.ramBytesUsed() + documentBytes;
+    }
+
+    /**
+     * Gets the posting lists and position lists of the buffer.
+     */
+
+    public PostingsBuffer getPostings() {
+        return postings;
+    }
+
+    /**
+     * Gets the documents of the buffer, sorted by their local docIDs.
+     */
+
+    public Map<Integer, Document> getDocuments() {
+        return documents;
+    }
+
+    /**
+     * Moves all the documents and postings of the buffer to a new buffer and leaves this one empty, without copying
+     * them, so that the full buffer can be written while new documents are added to this one.
+     *
+     * @return the new buffer holding the documents and postings
+     */
+
+    public SegmentBuffer swap() {
+        SegmentBuffer full = new SegmentBuffer(postings, documents, documentBytes);
+        postings = new PostingsBuffer();
+        documents = new TreeMap<>();
+        documentBytes = 0;
+        return full;
+    }
+
+    /**
+     * Drops all the documents and postings of the buffer.
+     */
+
+    public void clear() {
+        postings.clear();
+        documents = new TreeMap<>();
+        documentBytes = 0;
+    }
+
+    /**
+     * estimate the heap bytes of a buffered document, with its entry in the map of documents
+     */
+
+    static long estimateBytes(Document document) {
+        return PostingsBuffer.OBJECT_HEADER_BYTES + PostingsBuffer.STRING_BYTES + 2L * document.getText().length()
+                + PostingsBuffer.MAP_ENTRY_BYTES;
+    }
+
+}
@@ -0,0 +1,297 @@
+package engine.index;
+
+import engine.storage.BlockCompressedDocStore;
+import engine.storage.DocumentStore;
+import engine.storage.MapdbDocStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * A reader of the files of one disk segment — dictionary (segmentXXa), posting lists (segmentXXb), position lists
+ * (segmentXXc), offsets of position lists (segmentXXd) and statistics of the documents (segmentXXn).
+ *
+ * Each file is mapped into memory with FileChannel.map the first time it is read and the mapping is kept until the
+ * reader is dropped, so that a segment is opened once and shared by all the queries until it is merged away, instead of
+ * opening a PageFileChannel per query or per page. The mapped buffers are read-only.
+ *
+ * Every page read through the reader is still counted in PageFileChannel.readCounter, atomically as the reader is
+ * shared by threads.
+ *
+ * A reader is shared by the queries and the merges running at once, the files are mapped and the block index is loaded
+ * once under the lock of the reader, the reads themselves only use duplicates of the mapped buffers.
+ *
+ * The reader also keeps the deleted documents of the segment (see LiveDocs), loaded once, so the deletions not written
+ * yet live as long as the reader, and the document store of the segment (segmentXX.db), opened read-only once so the
+ * queries don't open it for every result. The store is closed when the reader is dropped.
+ *
+ */
+
+public class SegmentReader {
+
+    private final String indexFolder;
+    private final int segID;
+    private final Map<String, ByteBuffer> files;
+    private BlockDictionary dictionary;
+    private boolean dictionaryLoaded;
+    private LiveDocs liveDocs;
+    private DocumentNorms norms;
+    private DocumentStore documentStore;
+
+    public SegmentReader(String indexFolder, int segID) {
+        this.indexFolder = indexFolder;
+        this.segID = segID;
+        this.files = new HashMap<>();
+        this.dictionaryLoaded = false;
+    }
+
+    /**
+     * Gets the mapped buffer of a file of the segment, an empty buffer if the file doesn't exist.
+     *
+     * @param x the part of segment (a represent dictionary, b represent posting list, c represent position list,
+     *          d represent offset position list)
+     */
+
+    private synchronized ByteBuffer getFile(String x) {
+        ByteBuffer file = files.get(x);
+        if (file == null) {
+            file = map(Paths.get(indexFolder + "/segment" + segID + x));
+            files.put(x, file);
+        }
+        return file;
+    }
+
+    private static ByteBuffer map(Path path) {
+        if (!Files.exists(path)) {
+            return ByteBuffer.allocate(0);
+        }
+        try (FileChannel fileChannel = FileChannel.open(path, READ)) {
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Gets the number of pages of a file of the segment.
+     */
+
+    public int getNumPages(String x) {
+        return getFile(x).capacity() / PageFileChannel.PAGE_SIZE;
+    }
+
+    /**
+     * Reads a page of a file of the segment. The part of the page beyond the end of the file is filled with zeros.
+     *
+     * @param x the part of segment
+     * @param pageID the page of the file being read
+     * @return a ByteBuffer with capacity = PAGE_SIZE and position 0
+     */
+
+    public ByteBuffer readPage(String x, int pageID) {
+        PageFileChannel.countReads(1);
+        ByteBuffer file = getFile(x);
+        int start = pageID * PageFileChannel.PAGE_SIZE;
+        if (start + PageFileChannel.PAGE_SIZE <= file.capacity()) {
+            ByteBuffer page = file.duplicate();
+            page.position(start);
+            page.limit(start + PageFileChannel.PAGE_SIZE);
+            return page.slice();
+        }
+        ByteBuffer page = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+        if (start < file.capacity()) {
+            ByteBuffer rest = file.duplicate();
+            rest.position(start);
+            page.put(rest);
+            page.rewind();
+        }
+        return page;
+    }
+
+    /**
+     * Reads all the pages of a file of the segment.
+     *
+     * @param x the part of segment
+     * @return a ByteBuffer containing all bytes of the file, with position 0
+     */
+
+    public ByteBuffer readAllPages(String x) {
+        ByteBuffer file = getFile(x).duplicate();
+        PageFileChannel.countReads(file.capacity() / PageFileChannel.PAGE_SIZE);
+        file.clear();
+        return file;
+    }
+
+    /**
+     * Reads a given range of bytes of a file of the segment, which may span several pages.
+     *
+     * @param x the part of segment
+     * @param offset the starting position of the bytes in the whole file
+     * @param length the number of bytes being read
+     * @return the bytes
+     */
+
+    public byte[] readBytes(String x, int offset, int length) {
+        byte[] bytes = new byte[length];
+        if (length == 0) {
+            return bytes;
+        }
+        ByteBuffer file = getFile(x).duplicate();
+        int firstPage = offset / PageFileChannel.PAGE_SIZE;
+        int lastPage = (offset + length - 1) / PageFileChannel.PAGE_SIZE;
+        PageFileChannel.countReads(lastPage - firstPage + 1);
+        file.position(offset);
+        file.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Gets the block index of the dictionary, loading it on the first call.
+     *
+     * @return the block index, null if the dictionary is in the legacy format
+     */
+
+    public synchronized BlockDictionary getDictionary() {
+        if (!dictionaryLoaded) {
+            dictionary = BlockDictionary.load(pageID -> readPage("a", pageID));
+            dictionaryLoaded = true;
+        }
+        return dictionary;
+    }
+
+    /**
+     * Gets the deleted documents of the segment, loading them from the newest live-docs file on the first call.
+     */
+
+    public synchronized LiveDocs getLiveDocs() {
+        if (liveDocs == null) {
+            liveDocs = LiveDocs.load(indexFolder, segID);
+        }
+        return liveDocs;
+    }
+
+    /**
+     * Gets the statistics of the documents of the segment, read from the mapped segmentXXn.
+     */
+
+    public synchronized DocumentNorms getNorms() {
+        if (norms == null) {
+            norms = new DocumentNorms(getFile(DocumentNorms.FILE));
+        }
+        return norms;
+    }
+
+    /**
+     * Gets the document store of the segment, opening it read-only on the first call.
+     */
+
+    public synchronized DocumentStore getDocumentStore() {
+        if (documentStore == null) {
+            documentStore = openDocumentStore(indexFolder, segID);
+        }
+        return documentStore;
+    }
+
+    /**
+     * Opens the document store of a segment read-only, in whichever format it was written, block-compressed (see
+     * BlockCompressedDocStore) or MapDB.
+     *
+     * @param indexFolder the folder of the index
+     * @param segID the segment ID
+     */
+
+    public static DocumentStore openDocumentStore(String indexFolder, int segID) {
+        String docStoreFile = indexFolder + "/segment" + segID + ".db";
+        if (BlockCompressedDocStore.isBlockCompressed(docStoreFile)) {
+            return BlockCompressedDocStore.createOrOpenReadOnly(docStoreFile);
+        }
+        return MapdbDocStore.createOrOpenReadOnly(docStoreFile);
+    }
+
+    /**
+     * Closes the document store of the segment if it was opened. The mapped files are released by the garbage
+     * collector.
+     */
+
+    public synchronized void close() {
+        if (documentStore != null) {
+            documentStore.close();
+            documentStore = null;
+        }
+    }
+
+    /**
+     * Looks up a word in the dictionary. Block dictionaries are searched with one binary search on the block index and
+     * one block read, legacy dictionaries are scanned from the beginning.
+     *
+     * @param word the word to look for
+     * @param entry the word info the result is read into
+     * @return true if the word is in the dictionary
+     */
+
+    public boolean lookupWord(String word, DictionaryEntry entry) {
+        BlockDictionary dictionary = getDictionary();
+        if (dictionary != null) {
+            return dictionary.find(pageID -> readPage("a", pageID), word, entry);
+        }
+        ByteBuffer wordsBuffer = readLegacyDictionary();
+        while (wordsBuffer.hasRemaining()) {
+            entry.readOneWord(wordsBuffer, false);
+            if (word.equals(entry.getWord())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads all the word info of the dictionary into a buffer, with position at the first word info and limit at the
+     * end of the last one, whether the dictionary is in the block format or in the legacy format. The records have the
+     * largest impact of their posting list only if dictionaryHasImpacts.
+     */
+
+    public ByteBuffer readDictionary() {
+        BlockDictionary dictionary = getDictionary();
+        if (dictionary != null) {
+            return dictionary.readAllWords(pageID -> readPage("a", pageID));
+        }
+        return readLegacyDictionary();
+    }
+
+    /**
+     * Checks whether the records of the dictionary have the largest impact of their posting list, false for the
+     * dictionaries written before they had it, legacy ones included.
+     */
+
+    public boolean dictionaryHasImpacts() {
+        BlockDictionary dictionary = getDictionary();
+        return dictionary != null && dictionary.hasImpacts();
+    }
+
+    /**
+     * read the dictionary of the legacy format, whose first page has the total number of bytes the remaining pages use
+     */
+
+    private ByteBuffer readLegacyDictionary() {
+        ByteBuffer wordsBuffer = readAllPages("a");
+        if (wordsBuffer.capacity() < PageFileChannel.PAGE_SIZE) {
+            wordsBuffer.limit(0);
+            return wordsBuffer;
+        }
+        int cap = wordsBuffer.getInt(0);
+        wordsBuffer.limit(PageFileChannel.PAGE_SIZE + cap);
+        wordsBuffer.position(PageFileChannel.PAGE_SIZE);
+        return wordsBuffer;
+    }
+
+}
@@ -0,0 +1,186 @@
+package engine.index;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A writer of the files of one new disk segment — dictionary (segmentXXa), posting lists (segmentXXb), position lists
+ * (segmentXXc), offsets of position lists (segmentXXd) and statistics of the documents (segmentXXn).
+ *
+ * The words are written to the dictionary through a BlockDictionaryWriter, and the bytes of the other files are
+ * streamed to the files through one reusable page buffer per file, which is appended to the file each time it is full.
+ * The memory used by the writer is a few pages, whatever the number of words and postings. A file is only created
+ * when the first byte is written to it, and the files are exactly as long as the bytes written, rounded up to a page.
+ *
+ */
+
+public class SegmentWriter implements AutoCloseable {
+
+    private final String indexFolder;
+    private final int segID;
+    private final PageFileChannel dictionaryFile;
+    private final BlockDictionaryWriter dictionaryWriter;
+    private final Map<String, PageOutput> outputs;
+    private DocumentNorms norms;
+
+    /**
+     * Creates the writer of a segment, the files left by an older segment with the same ID are deleted.
+     */
+
+    public SegmentWriter(String indexFolder, int segID) {
+        this.indexFolder = indexFolder;
+        this.segID = segID;
+        for (String x : new String[] {"a", "b", "c", "d", DocumentNorms.FILE}) {
+            try {
+                Files.deleteIfExists(Paths.get(indexFolder + "/segment" + segID + x));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        this.dictionaryFile = PageFileChannel.createOrOpen(Paths.get(indexFolder + "/segment" + segID + "a"));
+        this.dictionaryWriter = new BlockDictionaryWriter(dictionaryFile);
+        this.outputs = new HashMap<>();
+    }
+
+    /**
+     * Adds the word info of a word to the dictionary, words must be added in ascending order.
+     */
+
+    public void addWord(DictionaryEntry entry) {
+        dictionaryWriter.add(entry);
+    }
+
+    /**
+     * Writes the statistics of the documents of the segment, which the posting lists written afterwards may use.
+     */
+
+    public void writeNorms(DocumentNorms norms) {
+        norms.write(this);
+        this.norms = norms;
+    }
+
+    /**
+     * Gets the statistics of the documents of the segment, null if they are not written yet.
+     */
+
+    public DocumentNorms getNorms() {
+        return norms;
+    }
+
+    /**
+     * Writes an integer to a file of the segment.
+     *
+     * @param x the part of segment (b represent posting list, c represent position list, d represent offset position list)
+     * @param value the integer being written
+     */
+
+    public void writeInt(String x, int value) {
+        getOutput(x).putInt(value);
+    }
+
+    /**
+     * Writes bytes to a file of the segment.
+     *
+     * @param x the part of segment
+     * @param bytes the bytes being written
+     */
+
+    public void writeBytes(String x, byte[] bytes) {
+        getOutput(x).put(bytes);
+    }
+
+    /**
+     * Gets the number of bytes written to a file of the segment, i.e. the offset of the next byte in the file.
+     */
+
+    public int getOffset(String x) {
+        PageOutput output = outputs.get(x);
+        return output == null ? 0 : output.offset;
+    }
+
+    private PageOutput getOutput(String x) {
+        PageOutput output = outputs.get(x);
+        if (output == null) {
+            output = new PageOutput(PageFileChannel.createOrOpen(Paths.get(indexFolder + "/segment" + segID + x)));
+            outputs.put(x, output);
+        }
+        return output;
+    }
+
+    /**
+     * Writes the last pages of all the files and closes them.
+     */
+
+    @Override
+    public void close() {
+        dictionaryWriter.close();
+        dictionaryFile.close();
+        for (PageOutput output : outputs.values()) {
+            output.close();
+        }
+        outputs.clear();
+    }
+
+    /**
+     * A file written through a page buffer, the buffer is appended to the file when it is full.
+     */
+
+    private static class PageOutput {
+
+        private final PageFileChannel pfc;
+        private final ByteBuffer page;
+        private int offset;
+
+        PageOutput(PageFileChannel pfc) {
+            this.pfc = pfc;
+            this.page = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+            this.offset = 0;
+        }
+
+        void putInt(int value) {
+            if (page.remaining() >= 4) {
+                page.putInt(value);
+                offset += 4;
+                appendIfFull();
+            } else {
+                put(ByteBuffer.allocate(4).putInt(value).array());
+            }
+        }
+
+        void put(byte[] bytes) {
+            int i = 0;
+            while (i < bytes.length) {
+                int length = Math.min(page.remaining(), bytes.length - i);
+                page.put(bytes, i, length);
+                i += length;
+                offset += length;
+                appendIfFull();
+            }
+        }
+
+        private void appendIfFull() {
+            if (!page.hasRemaining()) {
+                pfc.appendPage(page);
+                page.clear();
+            }
+        }
+
+        void close() {
+            // the rest of the last page is filled with zeros
+            if (page.position() > 0) {
+                while (page.hasRemaining()) {
+                    page.put((byte) 0);
+                }
+                pfc.appendPage(page);
+            }
+            pfc.close();
+        }
+
+    }
+
+}
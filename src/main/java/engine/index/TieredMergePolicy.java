@@ -0,0 +1,92 @@
+package engine.index;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A size-tiered merge policy: segments of similar sizes are merged together, so every document is rewritten about
+ * once per tier instead of once per merge, and the number of segments grows with the logarithm of the index size.
+ *
+ * The tier of a segment is log(size / floorSegmentBytes) in base segmentsPerTier, sizes below floorSegmentBytes count
+ * as floorSegmentBytes so that the many small flushed segments share the lowest tier. Whenever segmentsPerTier
+ * consecutive segments are in the same tier they are merged into one segment of the next tier, unless the merged
+ * segment would be larger than maxMergedSegmentBytes. At most maxMergesPerTier merges are chosen per tier at a time.
+ *
+ */
+
+public class TieredMergePolicy implements MergePolicy {
+
+    public static int DEFAULT_SEGMENTS_PER_TIER = 4;
+    public static long DEFAULT_FLOOR_SEGMENT_BYTES = 64L * 1024;
+    public static long DEFAULT_MAX_MERGED_SEGMENT_BYTES = 1024L * 1024 * 1024;
+    public static int DEFAULT_MAX_MERGES_PER_TIER = 2;
+
+    private final int segmentsPerTier;
+    private final long floorSegmentBytes;
+    private final long maxMergedSegmentBytes;
+    private final int maxMergesPerTier;
+
+    public TieredMergePolicy() {
+        this(DEFAULT_SEGMENTS_PER_TIER, DEFAULT_FLOOR_SEGMENT_BYTES, DEFAULT_MAX_MERGED_SEGMENT_BYTES,
+                DEFAULT_MAX_MERGES_PER_TIER);
+    }
+
+    public TieredMergePolicy(int segmentsPerTier, long floorSegmentBytes, long maxMergedSegmentBytes,
+                             int maxMergesPerTier) {
+        Preconditions.checkArgument(segmentsPerTier >= 2);
+        Preconditions.checkArgument(floorSegmentBytes > 0);
+        Preconditions.checkArgument(maxMergesPerTier >= 1);
+        this.segmentsPerTier = segmentsPerTier;
+        this.floorSegmentBytes = floorSegmentBytes;
+        this.maxMergedSegmentBytes = maxMergedSegmentBytes;
+        this.maxMergesPerTier = maxMergesPerTier;
+    }
+
+    /**
+     * Gets the tier of a segment of a given size, 0 for the segments not larger than floorSegmentBytes.
+     */
+
+    int getTier(long size) {
+        int tier = 0;
+        long bound = floorSegmentBytes;
+        while (size > bound && tier < 62) {
+            bound = bound > Long.MAX_VALUE / segmentsPerTier ? Long.MAX_VALUE : bound * segmentsPerTier;
+            tier++;
+        }
+        return tier;
+    }
+
+    @Override
+    public List<Pair<Integer, Integer>> findMerges(long[] segmentSizes) {
+        List<Pair<Integer, Integer>> merges = new ArrayList<>();
+        Map<Integer, Integer> mergesPerTier = new HashMap<>();
+
+        // slide over the runs of consecutive segments in the same tier
+        int left = 0;
+        while (left + segmentsPerTier <= segmentSizes.length) {
+            int tier = getTier(segmentSizes[left]);
+            int right = left + 1;
+            long mergedSize = segmentSizes[left];
+            while (right < segmentSizes.length && right - left < segmentsPerTier
+                    && getTier(segmentSizes[right]) == tier) {
+                mergedSize += segmentSizes[right];
+                right++;
+            }
+
+            if (right - left == segmentsPerTier && mergedSize <= maxMergedSegmentBytes
+                    && mergesPerTier.getOrDefault(tier, 0) < maxMergesPerTier) {
+                merges.add(Pair.of(left, right));
+                mergesPerTier.merge(tier, 1, Integer::sum);
+                left = right;
+            } else {
+                left++;
+            }
+        }
+        return merges;
+    }
+
+}
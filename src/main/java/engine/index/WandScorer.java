@@ -0,0 +1,270 @@
+package engine.index;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The document-at-a-time evaluation of a TF-IDF ranked search over the segments of an index, which skips the documents
+ * that can't enter the top-k results with Block-Max WAND.
+ *
+ * The score of a document is the dot product of the tf-idf weights of the query terms in the document with their
+ * query weights (length(query terms) * IDF), divided by the norm of the document, the length of the vector of the
+ * frequencies of all its terms (see DocumentNorms). So a term adds its query weight * IDF times its impact, its
+ * frequency divided by the norm, and as the impacts of the terms of a document are a vector of length at most 1, the
+ * score is at most the length of the vector of the query weights * IDF of the terms the document has (Cauchy-Schwarz).
+ * It is also at most the sum of the query weights * IDF of these terms times the largest impact of their posting lists
+ * in the segment, kept in the dictionary, the smaller of the two bounds the document. A segment where even a document
+ * with all the terms can't reach the score of the k-th result is skipped without reading its postings.
+ *
+ * The cursors of the query terms are kept ordered by docID, and the pivot is the first cursor where this bound of the
+ * terms up to it reaches the score of the k-th result: no document before the docID of the pivot can enter the results.
+ * Then the blocks of the terms which may be on the documents from the pivot on are found from their skip lists, and
+ * while the sum of the query weights * IDF times the largest impacts of these blocks is below the score of the k-th
+ * result too, the blocks are skipped without reading them. The cursors are then advanced to the first document
+ * which may enter the results, jumping over the blocks in between.
+ *
+ * The results are ordered by decreasing score, then by segment and docID for equal scores. The segments may be scored
+ * concurrently, sharing the results, so a document whose bound is the score of the k-th result is still scored: it
+ * enters the results if it comes before the k-th result.
+ *
+ */
+
+class WandScorer {
+
+    /**
+     * A document of the results, with its score.
+     */
+
+    static class ScoredDoc {
+        final int segID;
+        final int docID;
+        final double score;
+        final long order; // the position of the segment, then the docID, the order of the documents for equal scores
+
+        ScoredDoc(int segID, int docID, double score, long order) {
+            this.segID = segID;
+            this.docID = docID;
+            this.score = score;
+            this.order = order;
+        }
+    }
+
+    // the worst result first: the lowest score, then the last one in the order of the documents
+    private static final Comparator<ScoredDoc> WORST_FIRST = Comparator.<ScoredDoc>comparingDouble(d -> d.score)
+            .thenComparing(Comparator.<ScoredDoc>comparingLong(d -> d.order).reversed());
+
+    private final Integer topK;
+    private final boolean keepZeroScores;
+    private final PriorityQueue<ScoredDoc> results = new PriorityQueue<>(WORST_FIRST); // guarded by this
+    private volatile double threshold = Double.NEGATIVE_INFINITY; // the score of the k-th result once there are k
+
+    /**
+     * @param topK the number of results, all the matching documents if null
+     * @param keepZeroScores whether the documents whose query terms all have a zero tf-idf weight are results with a
+     *                       score of 0, or are left out
+     */
+
+    WandScorer(Integer topK, boolean keepZeroScores) {
+        this.topK = topK;
+        this.keepZeroScores = keepZeroScores;
+    }
+
+    /**
+     * Scores the documents of a segment which may enter the results. The segments may be scored concurrently.
+     *
+     * @param segID the segment ID
+     * @param segmentNum the position of the segment in the list of segments
+     * @param cursors the cursors of the query terms in the segment, in a fixed order of the terms, null for a term which
+     *                the segment doesn't have
+     * @param idfs the IDF of every term
+     * @param queryWeights the query weight of every term, length(term in the query) * IDF
+     * @param norms the statistics of the documents of the segment
+     */
+
+    void scoreSegment(int segID, int segmentNum, List<PostingsCursor> cursors, double[] idfs, double[] queryWeights,
+                      DocumentNorms norms) {
+        if (topK != null && topK <= 0) {
+            return;
+        }
+        double[] maxWeights = new double[cursors.size()]; // what every term adds to a score per unit of impact
+        double[] maxScores = new double[cursors.size()]; // the most every term adds to a score in the segment
+        for (int t = 0; t < cursors.size(); t++) {
+            maxWeights[t] = queryWeights[t] * idfs[t];
+            maxScores[t] = cursors.get(t) == null ? 0 : maxWeights[t] * cursors.get(t).getMaxImpact();
+        }
+        List<Integer> terms = new ArrayList<>(); // the terms the segment has, ordered by the docID of their cursor
+        for (int t = 0; t < cursors.size(); t++) {
+            if (cursors.get(t) != null) {
+                terms.add(t);
+            }
+        }
+        if (bound(terms, terms.size(), maxWeights, maxScores) < threshold) {
+            // even a document with all the terms can't enter the results, skip the segment without reading its postings
+            return;
+        }
+        terms.removeIf(t -> cursors.get(t).nextDoc() == PostingsCursor.NO_MORE_DOCS);
+
+        while (!terms.isEmpty()) {
+            terms.sort(Comparator.comparingInt(t -> cursors.get(t).docID()));
+
+            // the pivot, the first term where the bound of the terms up to it reaches the threshold
+            double threshold = this.threshold;
+            int pivot = -1;
+            for (int p = 0; p < terms.size() && pivot < 0; p++) {
+                if (bound(terms, p + 1, maxWeights, maxScores) >= threshold) {
+                    pivot = p;
+                }
+            }
+            if (pivot < 0) {
+                // even a document with all the terms left can't enter the results
+                return;
+            }
+
+            int pivotDoc = cursors.get(terms.get(pivot)).docID();
+            int target = skipBlocks(terms, pivot, pivotDoc, cursors, maxWeights, threshold);
+            if (target > pivotDoc) {
+                // no document before the target can enter the results
+                for (int p = 0; p < terms.size() && cursors.get(terms.get(p)).docID() < target; p++) {
+                    cursors.get(terms.get(p)).advance(target);
+                }
+            }
+            else if (cursors.get(terms.get(0)).docID() == pivotDoc) {
+                // the terms up to the pivot are on its document, score it with all the terms on it
+                score(segID, segmentNum, pivotDoc, cursors, idfs, queryWeights, norms);
+                for (PostingsCursor cursor : cursors) {
+                    if (cursor != null && cursor.docID() == pivotDoc) {
+                        cursor.nextDoc();
+                    }
+                }
+            }
+            else {
+                // no document before the pivot can enter the results, the cursors already on it stay there
+                for (int p = 0; p < pivot; p++) {
+                    PostingsCursor cursor = cursors.get(terms.get(p));
+                    if (cursor.docID() < pivotDoc) {
+                        cursor.advance(pivotDoc);
+                    }
+                }
+            }
+            terms.removeIf(t -> cursors.get(t).docID() == PostingsCursor.NO_MORE_DOCS);
+        }
+    }
+
+    /**
+     * the bound of the score of a document having the first terms of a list, the smaller of the length of the vector
+     * of their query weights * IDF and the sum of the most they add to a score in the segment
+     */
+
+    private static double bound(List<Integer> terms, int numTerms, double[] maxWeights, double[] maxScores) {
+        double squares = 0;
+        double sum = 0;
+        for (int p = 0; p < numTerms; p++) {
+            squares += maxWeights[terms.get(p)] * maxWeights[terms.get(p)];
+            sum += maxScores[terms.get(p)];
+        }
+        return Math.min(Math.sqrt(squares), sum);
+    }
+
+    /**
+     * skip the blocks from the document of the pivot on whose impacts are too low for their documents to enter the
+     * results, through the skip lists of the terms which may be on these documents, without reading the blocks. Return
+     * the first document which may enter the results, the document of the pivot if no block is skipped.
+     */
+
+    private static int skipBlocks(List<Integer> terms, int pivot, int pivotDoc, List<PostingsCursor> cursors,
+                                  double[] maxWeights, double threshold) {
+        if (threshold == Double.NEGATIVE_INFINITY) {
+            return pivotDoc;
+        }
+
+        // the terms after the last one on the document of the pivot are on later documents only, from the next one
+        int last = pivot;
+        while (last + 1 < terms.size() && cursors.get(terms.get(last + 1)).docID() == pivotDoc) {
+            last++;
+        }
+        int end = last + 1 < terms.size() ? cursors.get(terms.get(last + 1)).docID() : PostingsCursor.NO_MORE_DOCS;
+
+        int target = pivotDoc;
+        while (target < end) {
+            double bound = 0;
+            int next = end; // the first document after the blocks of target
+            for (int p = 0; p <= last; p++) {
+                PostingsCursor cursor = cursors.get(terms.get(p));
+                int blockEnd = cursor.advanceShallow(target);
+                bound += maxWeights[terms.get(p)] * cursor.getBlockMaxImpact();
+                if (blockEnd < next) {
+                    next = blockEnd + 1;
+                }
+            }
+            if (bound >= threshold) {
+                return target;
+            }
+            target = next;
+        }
+        return target;
+    }
+
+    /**
+     * compute the score of a document with the cursors on it, adding the terms in their fixed order, and offer it to
+     * the results
+     */
+
+    private void score(int segID, int segmentNum, int docID, List<PostingsCursor> cursors, double[] idfs, double[] queryWeights,
+                       DocumentNorms norms) {
+        double dotProduct = 0;
+        for (int t = 0; t < cursors.size(); t++) {
+            PostingsCursor cursor = cursors.get(t);
+            if (cursor == null || cursor.docID() != docID) {
+                continue;
+            }
+            double tfIdf = cursor.freq() * idfs[t];
+            dotProduct += tfIdf * queryWeights[t];
+        }
+
+        double score;
+        if (dotProduct != 0.0) {
+            score = dotProduct / norms.getNorm(docID);
+        }
+        else if (keepZeroScores) {
+            score = 0.0;
+        }
+        else {
+            return;
+        }
+
+        offer(new ScoredDoc(segID, docID, score, ((long) segmentNum << 32) | docID));
+    }
+
+    /**
+     * add a document to the results if it is better than the k-th one, which it replaces, and update the threshold
+     */
+
+    private synchronized void offer(ScoredDoc doc) {
+        if (topK == null || results.size() < topK) {
+            results.add(doc);
+        }
+        else if (!results.isEmpty() && WORST_FIRST.compare(doc, results.peek()) > 0) {
+            results.poll();
+            results.add(doc);
+        }
+        if (topK != null && results.size() >= topK) {
+            threshold = results.peek().score;
+        }
+    }
+
+    /**
+     * Gets the results, by decreasing score.
+     */
+
+    synchronized List<ScoredDoc> getTopDocs() {
+        LinkedList<ScoredDoc> topDocs = new LinkedList<>();
+        while (!results.isEmpty()) {
+            topDocs.addFirst(results.poll());
+        }
+        return topDocs;
+    }
+
+}
@@ -9,11 +9,12 @@ import java.nio.charset.StandardCharsets;
  *
  */
 
-public class WordInfo {
+public class WordInfo implements DictionaryEntry {
     String word; //the keyword
     int pageID; //the page of the posting list
     int offset; //the starting position of the posting list in the page
     int len; // the length of the posting list
+    float maxImpact = 1; // the largest impact of the postings (see BlockPostings), 1 if unknown
 
     public void setWordInfo(String word, int pageID, int offset, int len) {
         this.word = word;
@@ -22,12 +23,28 @@ public class WordInfo {
         this.len = len;
     }
 
+    public void setWordInfo(String word, int pageID, int offset, int len, float maxImpact) {
+        setWordInfo(word, pageID, offset, len);
+        this.maxImpact = maxImpact;
+    }
+
+    @Override
+    public String getWord() {
+        return word;
+    }
+
+    @Override
+    public int getByteSize() {
+        return 4 + word.getBytes(StandardCharsets.UTF_8).length + 4 * 4;
+    }
+
     /**
      * write the word info into a ByteBuffer
      *
      * @param bb buffer being written
      */
 
+    @Override
     public void writeOneWord(ByteBuffer bb) {
         byte[] tmp = word.getBytes(StandardCharsets.UTF_8);
         bb.putInt(tmp.length);
@@ -35,6 +52,7 @@ public class WordInfo {
         bb.putInt(pageID);
         bb.putInt(offset);
         bb.putInt(len);
+        bb.putFloat(maxImpact);
     }
 
     /**
@@ -43,7 +61,20 @@ public class WordInfo {
      * @param bb buffer being read
      */
 
+    @Override
     public void readOneWord(ByteBuffer bb) {
+        readOneWord(bb, true);
+    }
+
+    /**
+     * read the word info from a ByteBuffer, with the largest impact of the posting list or without it, then 1
+     *
+     * @param bb buffer being read
+     * @param hasImpact whether the word info has the largest impact of the posting list
+     */
+
+    @Override
+    public void readOneWord(ByteBuffer bb, boolean hasImpact) {
         int wordLen = bb.getInt();
         byte[] wordb = new byte[wordLen];
         bb.get(wordb, 0, wordLen);
@@ -51,5 +82,6 @@ public class WordInfo {
         this.pageID = bb.getInt();
         this.offset = bb.getInt();
         this.len = bb.getInt();
+        this.maxImpact = hasImpact ? bb.getFloat() : 1;
     }
 }
\ No newline at end of file
@@ -33,7 +33,6 @@ public class SearchEngine {
     private SearchEngine(Path documentDirectory, InvertedIndexManager indexManager) {
         if (Files.exists(documentDirectory) && Files.isDirectory(documentDirectory)) {
             manager = indexManager;
-            InvertedIndexManager.STORE_PARAMETER = 220;
             docPath = documentDirectory;
             docMap = new HashMap<>();
             ranking = new TreeMap<>();
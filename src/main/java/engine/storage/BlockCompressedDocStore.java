@@ -0,0 +1,518 @@
+package engine.storage;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.PeekingIterator;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.Maps.immutableEntry;
+import static java.nio.file.StandardOpenOption.READ;
+
+/**
+ * BlockCompressedDocStore implements the Document Store with the documents packed into blocks compressed with
+ * `java.util.zip.Deflater`, which take far less space than the uncompressed texts of MapdbDocStore.
+ *
+ * On disk, the file starts with a magic number, followed by the blocks, each holding the documents of consecutive docIDs
+ * until about DEFAULT_BLOCK_SIZE bytes of text — for every document, its docID, the number of bytes of its UTF-8 text and
+ * the text — compressed as a whole. The blocks are followed by the block index — the number of documents, the number of
+ * blocks, then for every block its first docID, its number of documents, its offset, its compressed length and its
+ * uncompressed length — and finally by the offset of the block index.
+ *
+ * The block index is loaded when the store is opened. A document is read by a binary search of its block in the index
+ * and one decompression of the block, and the last block read is kept decompressed, so the documents read in docID order
+ * decompress every block once. The iterators decompress the blocks one after the other, as a merge reads them.
+ *
+ * The file is written once, by createWithBulkLoad, or when a store whose documents were added with `addDocument` is
+ * closed. Adding documents is only meant for small stores: the whole file is then rewritten at close time.
+ *
+ * The reads use positional reads of the file, so a store may be read by several threads at once.
+ *
+ */
+
+public class BlockCompressedDocStore implements DocumentStore {
+
+    /**
+     * The default number of bytes of text, before compression, packed into a block. Larger blocks compress better,
+     * smaller blocks are decompressed faster when a single document is read.
+     */
+
+    public static int DEFAULT_BLOCK_SIZE = 32 * 1024;
+
+    private static final int MAGIC = 0x42434453;
+    private static final int HEADER_BYTES = 4;
+    private static final int FOOTER_BYTES = 8;
+
+    /**
+     * Opens a document store at the given file location if it already exists.
+     * Otherwise, creates an empty document store, which is written at the given location when it is closed.
+     *
+     * @param docStoreFile file location of the document store
+     * @return handle to an opened Document Store
+     */
+
+    public static DocumentStore createOrOpen(String docStoreFile) {
+        return new BlockCompressedDocStore(Paths.get(docStoreFile), false);
+    }
+
+    /**
+     * Opens a document store at the given file location in readOnly mode, an empty one if the file doesn't exist.
+     * Opening multiple DocumentStore handles in ReadOnly mode won't conflict with each other.
+     *
+     * @param docStoreFile file location of the document store
+     * @return handle to an opened Document Store
+     */
+
+    public static DocumentStore createOrOpenReadOnly(String docStoreFile) {
+        return new BlockCompressedDocStore(Paths.get(docStoreFile), true);
+    }
+
+    /**
+     * Creates a Document Store and bulk load all documents in the iterator, in blocks of DEFAULT_BLOCK_SIZE bytes.
+     * The documents in the iterator *MUST* be *sorted* by key.
+     */
+
+    public static DocumentStore createWithBulkLoad(String docStoreFile, Iterator<Map.Entry<Integer, Document>> documents) {
+        Path path = Paths.get(docStoreFile);
+        write(path, documents, DEFAULT_BLOCK_SIZE);
+        return new BlockCompressedDocStore(path, false);
+    }
+
+    /**
+     * Checks whether a file is a document store of this format.
+     */
+
+    public static boolean isBlockCompressed(String docStoreFile) {
+        Path path = Paths.get(docStoreFile);
+        if (!Files.exists(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            return channel.size() >= HEADER_BYTES + FOOTER_BYTES && readFully(channel, header, 0).getInt(0) == MAGIC;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * the documents of a decompressed block
+     */
+
+    private static class Block {
+        final int blockNum;
+        final byte[] bytes;
+        final int[] docIDs;
+        final int[] starts; // the offset of the text of every document in bytes
+        final int[] lengths;
+
+        Block(int blockNum, byte[] bytes, int numDocs) {
+            this.blockNum = blockNum;
+            this.bytes = bytes;
+            this.docIDs = new int[numDocs];
+            this.starts = new int[numDocs];
+            this.lengths = new int[numDocs];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            for (int i = 0; i < numDocs; i++) {
+                docIDs[i] = buffer.getInt();
+                lengths[i] = buffer.getInt();
+                starts[i] = buffer.position();
+                buffer.position(starts[i] + lengths[i]);
+            }
+        }
+
+        Document getDocument(int i) {
+            return new Document(new String(bytes, starts[i], lengths[i], StandardCharsets.UTF_8));
+        }
+    }
+
+    private final Path path;
+    private final boolean readOnly;
+    private FileChannel channel; // null if the file doesn't exist
+    private int numDocs;
+    private int[] firstDocIDs;
+    private int[] blockNumDocs;
+    private long[] offsets;
+    private int[] compressedLengths;
+    private int[] uncompressedLengths;
+    private volatile Block lastBlock; // the last block read, kept decompressed
+    private final TreeMap<Integer, Document> added; // the documents added and not written yet
+
+    private BlockCompressedDocStore(Path path, boolean readOnly) {
+        this.path = path;
+        this.readOnly = readOnly;
+        this.added = new TreeMap<>();
+        open();
+    }
+
+    /**
+     * open the file and load its block index, or start with no document if the file doesn't exist
+     */
+
+    private void open() {
+        if (!Files.exists(path)) {
+            channel = null;
+            numDocs = 0;
+            firstDocIDs = new int[0];
+            return;
+        }
+        try {
+            channel = FileChannel.open(path, READ);
+            long size = channel.size();
+            ByteBuffer header = readFully(channel, ByteBuffer.allocate(HEADER_BYTES), 0);
+            Preconditions.checkState(size >= HEADER_BYTES + FOOTER_BYTES && header.getInt(0) == MAGIC,
+                    "%s is not a block-compressed document store", path);
+            long indexOffset = readFully(channel, ByteBuffer.allocate(FOOTER_BYTES), size - FOOTER_BYTES).getLong(0);
+
+            ByteBuffer index = readFully(channel, ByteBuffer.allocate((int) (size - FOOTER_BYTES - indexOffset)),
+                    indexOffset);
+            numDocs = index.getInt();
+            int numBlocks = index.getInt();
+            firstDocIDs = new int[numBlocks];
+            blockNumDocs = new int[numBlocks];
+            offsets = new long[numBlocks];
+            compressedLengths = new int[numBlocks];
+            uncompressedLengths = new int[numBlocks];
+            for (int b = 0; b < numBlocks; b++) {
+                firstDocIDs[b] = index.getInt();
+                blockNumDocs[b] = index.getInt();
+                offsets[b] = index.getLong();
+                compressedLengths[b] = index.getInt();
+                uncompressedLengths[b] = index.getInt();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * read bytes of a file at an offset until the buffer is full
+     */
+
+    private static ByteBuffer readFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new IOException("unexpected end of file");
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * write documents sorted by docID into a new file, in blocks of about blockSize bytes of text
+     */
+
+    private static void write(Path path, Iterator<Map.Entry<Integer, Document>> documents, int blockSize) {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path)))) {
+            out.writeInt(MAGIC);
+            long position = HEADER_BYTES;
+            ByteArrayOutputStream blockBytes = new ByteArrayOutputStream();
+            DataOutputStream block = new DataOutputStream(blockBytes);
+            ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+            DataOutputStream index = new DataOutputStream(indexBytes);
+            Deflater deflater = new Deflater();
+            int numDocs = 0;
+            int numBlocks = 0;
+            int firstDocID = 0;
+            int docsInBlock = 0;
+            int previous = 0;
+            try {
+                while (documents.hasNext()) {
+                    Map.Entry<Integer, Document> entry = documents.next();
+                    int docID = entry.getKey();
+                    Preconditions.checkArgument(numDocs == 0 || docID > previous, "the documents must be sorted by docID");
+                    previous = docID;
+                    byte[] text = entry.getValue().getText().getBytes(StandardCharsets.UTF_8);
+                    if (docsInBlock == 0) {
+                        firstDocID = docID;
+                    }
+                    block.writeInt(docID);
+                    block.writeInt(text.length);
+                    block.write(text);
+                    docsInBlock++;
+                    numDocs++;
+
+                    // compress the block once it is full, or the last one
+                    if (blockBytes.size() >= blockSize || !documents.hasNext()) {
+                        byte[] raw = blockBytes.toByteArray();
+                        byte[] compressed = compress(deflater, raw);
+                        index.writeInt(firstDocID);
+                        index.writeInt(docsInBlock);
+                        index.writeLong(position);
+                        index.writeInt(compressed.length);
+                        index.writeInt(raw.length);
+                        out.write(compressed);
+                        position += compressed.length;
+                        numBlocks++;
+                        blockBytes.reset();
+                        docsInBlock = 0;
+                    }
+                }
+            } finally {
+                deflater.end();
+            }
+
+            out.writeInt(numDocs);
+            out.writeInt(numBlocks);
+            indexBytes.writeTo(out);
+            out.writeLong(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * compress the bytes of a block
+     */
+
+    private static byte[] compress(Deflater deflater, byte[] raw) {
+        deflater.reset();
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(raw.length / 4 + 16);
+        byte[] chunk = new byte[4096];
+        while (!deflater.finished()) {
+            compressed.write(chunk, 0, deflater.deflate(chunk));
+        }
+        return compressed.toByteArray();
+    }
+
+    /**
+     * read and decompress a block, unless it is the last block read
+     */
+
+    private Block readBlock(int blockNum) {
+        Block block = lastBlock;
+        if (block != null && block.blockNum == blockNum) {
+            return block;
+        }
+        block = decompress(blockNum);
+        lastBlock = block;
+        return block;
+    }
+
+    /**
+     * read and decompress a block
+     */
+
+    private Block decompress(int blockNum) {
+        Inflater inflater = new Inflater();
+        try {
+            ByteBuffer compressed = readFully(channel, ByteBuffer.allocate(compressedLengths[blockNum]),
+                    offsets[blockNum]);
+            inflater.setInput(compressed.array());
+            byte[] raw = new byte[uncompressedLengths[blockNum]];
+            int length = 0;
+            while (length < raw.length) {
+                int n = inflater.inflate(raw, length, raw.length - length);
+                if (n == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("truncated block " + blockNum + " in " + path);
+                }
+                length += n;
+            }
+            return new Block(blockNum, raw, blockNumDocs[blockNum]);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (DataFormatException e) {
+            throw new UncheckedIOException(new IOException("corrupted block " + blockNum + " in " + path, e));
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * find the block which may have a docID, -1 if the docID is before the first block
+     */
+
+    private int findBlock(int docID) {
+        int b = Arrays.binarySearch(firstDocIDs, docID);
+        return b >= 0 ? b : -b - 2;
+    }
+
+    /**
+     * get a written document, null if it doesn't exist
+     */
+
+    private Document getWrittenDocument(int docID) {
+        int b = findBlock(docID);
+        if (b < 0) {
+            return null;
+        }
+        Block block = readBlock(b);
+        int i = Arrays.binarySearch(block.docIDs, docID);
+        return i >= 0 ? block.getDocument(i) : null;
+    }
+
+    @Override
+    public void addDocument(int docID, Document document) {
+        checkNotNull(document);
+        Preconditions.checkState(!readOnly, "the document store is read-only");
+        added.put(docID, document);
+    }
+
+    @Override
+    public Document getDocument(int docID) {
+        Document document = added.get(docID);
+        return document != null ? document : getWrittenDocument(docID);
+    }
+
+    /**
+     * Retrieves the documents of sorted IDs, decompressing every block they are in once.
+     */
+
+    @Override
+    public List<Document> getDocuments(int[] sortedIds) {
+        List<Document> documents = new ArrayList<>(sortedIds.length);
+        Block block = null;
+        for (int docID : sortedIds) {
+            Document document = added.get(docID);
+            int b = findBlock(docID);
+            if (document == null && b >= 0) {
+                if (block == null || block.blockNum != b) {
+                    block = readBlock(b);
+                }
+                int i = Arrays.binarySearch(block.docIDs, docID);
+                document = i >= 0 ? block.getDocument(i) : null;
+            }
+            documents.add(document);
+        }
+        return documents;
+    }
+
+    /**
+     * iterate over the written documents, decompressing the blocks one after the other
+     */
+
+    private Iterator<Map.Entry<Integer, Document>> writtenIterator() {
+        return new Iterator<Map.Entry<Integer, Document>>() {
+            private int blockNum = 0;
+            private Block block = null;
+            private int i = 0;
+
+            @Override
+            public boolean hasNext() {
+                return (block != null && i < block.docIDs.length) || blockNum < firstDocIDs.length;
+            }
+
+            @Override
+            public Map.Entry<Integer, Document> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                if (block == null || i == block.docIDs.length) {
+                    block = decompress(blockNum++);
+                    i = 0;
+                }
+                Map.Entry<Integer, Document> entry = immutableEntry(block.docIDs[i], block.getDocument(i));
+                i++;
+                return entry;
+            }
+        };
+    }
+
+    @Override
+    public Iterator<Map.Entry<Integer, Document>> iterator() {
+        if (added.isEmpty()) {
+            return writtenIterator();
+        }
+
+        // the added documents replace the written ones with the same docID
+        PeekingIterator<Map.Entry<Integer, Document>> written = Iterators.peekingIterator(writtenIterator());
+        PeekingIterator<Map.Entry<Integer, Document>> pending = Iterators.peekingIterator(
+                new TreeMap<>(added).entrySet().iterator());
+        return new Iterator<Map.Entry<Integer, Document>>() {
+            @Override
+            public boolean hasNext() {
+                return written.hasNext() || pending.hasNext();
+            }
+
+            @Override
+            public Map.Entry<Integer, Document> next() {
+                if (!pending.hasNext()) {
+                    return written.next();
+                }
+                if (!written.hasNext() || pending.peek().getKey() < written.peek().getKey()) {
+                    return pending.next();
+                }
+                if (pending.peek().getKey().equals(written.peek().getKey())) {
+                    written.next();
+                    return pending.next();
+                }
+                return written.next();
+            }
+        };
+    }
+
+    @Override
+    public Iterator<Integer> keyIterator() {
+        return Iterators.transform(iterator(), Map.Entry::getKey);
+    }
+
+    @Override
+    public long size() {
+        long size = numDocs;
+        for (int docID : added.keySet()) {
+            if (getWrittenDocument(docID) == null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Closes the document store, writing the file again with the added documents if there are some.
+     */
+
+    @Override
+    public void close() {
+        try {
+            if (!added.isEmpty()) {
+                Path tmp = Paths.get(path + ".tmp");
+                write(tmp, iterator(), DEFAULT_BLOCK_SIZE);
+                added.clear();
+                closeChannel();
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            closeChannel();
+        }
+    }
+
+    private void closeChannel() {
+        lastBlock = null;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            channel = null;
+        }
+    }
+
+}
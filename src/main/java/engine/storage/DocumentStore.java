@@ -1,7 +1,9 @@
 
 package engine.storage;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -30,6 +32,21 @@ public interface DocumentStore extends AutoCloseable {
 
     Document getDocument(int docID);
 
+    /**
+     * Retrieves the documents of a list of IDs from the document store at once.
+     * Implementations may read the IDs in a single pass, as they are sorted.
+     * @param sortedIds the IDs of the docs, in increasing order
+     * @return the documents corresponding to the IDs, in the same order, null for the IDs which don't exist
+     */
+
+    default List<Document> getDocuments(int[] sortedIds) {
+        List<Document> documents = new ArrayList<>(sortedIds.length);
+        for (int docID : sortedIds) {
+            documents.add(getDocument(docID));
+        }
+        return documents;
+    }
+
     /**
      * Performs a full table scan on the document store.
      * @return an iterator of < DocID, Document > pairs.
@@ -4,7 +4,9 @@ package engine.storage;
 import com.google.common.collect.Iterators;
 import org.mapdb.*;
 
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -18,6 +20,10 @@ public class MapdbDocStore implements DocumentStore {
 
     private static final String mapName = "docStore";
 
+    // getDocuments scans the range of the IDs instead of looking each of them up in the B-tree while the range has at
+    // most this many keys per ID
+    private static final int MAX_KEYS_SCANNED_PER_ID = 8;
+
     /**
      * Opens a document store at the given file location if it already exists.
      * Otherwise, creates a new document store at the give location and opens it.
@@ -109,6 +115,37 @@ public class MapdbDocStore implements DocumentStore {
         return new Document(docText);
     }
 
+    /**
+     * Retrieves the documents of sorted IDs. When the IDs are dense, the leaves of the B-tree between the first and the
+     * last of them are scanned once, otherwise each ID is looked up from the root.
+     */
+
+    @Override
+    public List<Document> getDocuments(int[] sortedIds) {
+        List<Document> documents = new ArrayList<>(sortedIds.length);
+        if (sortedIds.length == 0) {
+            return documents;
+        }
+        int first = sortedIds[0];
+        int last = sortedIds[sortedIds.length - 1];
+        if ((long) last - first + 1 > (long) MAX_KEYS_SCANNED_PER_ID * sortedIds.length) {
+            for (int docID : sortedIds) {
+                documents.add(getDocument(docID));
+            }
+            return documents;
+        }
+
+        Iterator<Map.Entry<Integer, String>> entries = this.map.subMap(first, true, last, true).entrySet().iterator();
+        Map.Entry<Integer, String> entry = entries.hasNext() ? entries.next() : null;
+        for (int docID : sortedIds) {
+            while (entry != null && entry.getKey() < docID) {
+                entry = entries.hasNext() ? entries.next() : null;
+            }
+            documents.add(entry != null && entry.getKey() == docID ? new Document(entry.getValue()) : null);
+        }
+        return documents;
+    }
+
     @Override
     public Iterator<Map.Entry<Integer, Document>> iterator() {
         return Iterators.transform(this.map.getEntries().iterator(),
@@ -0,0 +1,121 @@
+package engine.index.inverted;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.DeltaVarLenCompressor;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AndQueryPlanTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/AndQueryPlanTest";
+    private InvertedIndexManager iim;
+    private int numDocs = 6000;
+    private List<String> expected = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 10000;
+    }
+
+    /**
+     * add documents which all have "common", and "rare" in two of them
+     */
+
+    private void addDocuments() {
+        for (int i = 0; i < numDocs; i++) {
+            String text = "common w" + i % 7;
+            if (i == 1234 || i == 4321) {
+                text = "rare common w" + i % 7;
+                expected.add(text);
+            }
+            iim.addDocument(new Document(text));
+        }
+        iim.flush();
+    }
+
+    /**
+     * get the texts of the documents of an iterator
+     */
+
+    private static List<String> texts(Iterator<Document> itr) {
+        List<String> texts = new ArrayList<>();
+        while (itr.hasNext()) {
+            texts.add(itr.next().getText());
+        }
+        return texts;
+    }
+
+    /**
+     * Test that the and search intersects the rarest keyword first whatever the order of the query, reading a few
+     * pages of the list of the common keyword only, and that the plan shows it
+     */
+
+    @Test
+    public void test1() {
+        iim = InvertedIndexManager.createOrOpen(file, an);
+        addDocuments();
+
+        PageFileChannel.resetCounters();
+        assertEquals(numDocs, texts(iim.searchQuery("common")).size());
+        int keywordReads = PageFileChannel.readCounter;
+
+        PageFileChannel.resetCounters();
+        assertEquals(expected, texts(iim.searchAndQuery(Arrays.asList("common", "rare"))));
+        assertTrue(PageFileChannel.readCounter < keywordReads / 2);
+
+        assertEquals("segment 0: rare (2 postings) -> common (6000 postings)\n",
+                iim.explainAndQuery(Arrays.asList("common", "rare")));
+        assertEquals("segment 0: \"missing\" is missing, skipped\n",
+                iim.explainAndQuery(Arrays.asList("common", "missing", "rare")));
+    }
+
+    /**
+     * Test that the phrase search gallops over the posting list of the common keyword of a positional index, which has
+     * no skip list, reading fewer pages than the whole list
+     */
+
+    @Test
+    public void test2() {
+        iim = InvertedIndexManager.createOrOpenPositional(file, an, new DeltaVarLenCompressor());
+        addDocuments();
+
+        PageFileChannel.resetCounters();
+        assertEquals(numDocs, texts(iim.searchQuery("common")).size());
+        int keywordReads = PageFileChannel.readCounter;
+
+        PageFileChannel.resetCounters();
+        assertEquals(expected, texts(iim.searchPhraseQuery(Arrays.asList("rare", "common"))));
+        assertTrue(PageFileChannel.readCounter < keywordReads);
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+    }
+
+}
@@ -0,0 +1,138 @@
+package engine.index.inverted;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BackgroundFlushTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/BackgroundFlushTest";
+    private InvertedIndexManager iim;
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 10;
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 1000;
+        iim = InvertedIndexManager.createOrOpen(file, an);
+    }
+
+    /**
+     * Test that the full buffers written in the background and the last one are all on disk once flush() is joined
+     */
+
+    @Test
+    public void test1() {
+        iim.setBackgroundFlush(true);
+        for (int i = 0; i < 55; i++) {
+            iim.addDocument(new Document("cat doc" + i));
+        }
+        iim.flush().join();
+
+        assertEquals(6, iim.getNumSegments());
+        assertEquals(0, iim.getBufferedBytes());
+        int numDocs = 0;
+        int freq = 0;
+        for (int seg = 0; seg < iim.getNumSegments(); seg++) {
+            numDocs += iim.getNumDocuments(seg);
+            freq += iim.getDocumentFrequency(seg, "cat");
+        }
+        assertEquals(55, numDocs);
+        assertEquals(55, freq);
+        iim.setBackgroundFlush(false);
+    }
+
+    /**
+     * Test that a single pending flush holds back the indexing thread without losing documents, and that the merges
+     * triggered by the background flushes are done once flush() is joined
+     */
+
+    @Test
+    public void test2() {
+        InvertedIndexManager.DEFAULT_MAX_PENDING_FLUSHES = 1;
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 4;
+        iim.setBackgroundFlush(true);
+        for (int i = 0; i < 40; i++) {
+            iim.addDocument(new Document("dog doc" + i));
+        }
+        iim.flush().join();
+        iim.setBackgroundFlush(false);
+
+        assertEquals(2, iim.getNumSegments());
+        int freq = 0;
+        for (int seg = 0; seg < iim.getNumSegments(); seg++) {
+            freq += iim.getDocumentFrequency(seg, "dog");
+        }
+        assertEquals(40, freq);
+    }
+
+    /**
+     * Test that a flush whose segment can't be written, here because a directory is in the way of its document store,
+     * deletes the files it wrote and doesn't hold back the segments of the flushes after it
+     */
+
+    @Test
+    public void test3() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 3;
+        assertTrue(new File(file + "/segment0.db").mkdir());
+        iim.setBackgroundFlush(true);
+        for (int i = 0; i < 3; i++) {
+            iim.addDocument(new Document("cat doc" + i));
+        }
+        try {
+            iim.flush().join();
+            fail();
+        } catch (CompletionException e) {
+            // the first flush failed
+        }
+        assertFalse(new File(file + "/segment0a").exists());
+        assertFalse(new File(file + "/segment0b").exists());
+
+        for (int i = 3; i < 9; i++) {
+            iim.addDocument(new Document("cat doc" + i));
+        }
+        iim.flush().join();
+        iim.setBackgroundFlush(false);
+
+        assertEquals(2, iim.getNumSegments());
+        int numResults = 0;
+        Iterator<Document> itr = iim.searchQuery("cat");
+        while (itr.hasNext()) {
+            itr.next();
+            numResults += 1;
+        }
+        assertEquals(6, numResults);
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 8;
+        InvertedIndexManager.DEFAULT_MAX_PENDING_FLUSHES = 2;
+    }
+
+}
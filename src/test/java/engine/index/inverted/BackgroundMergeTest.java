@@ -0,0 +1,168 @@
+package engine.index.inverted;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.index.Pair;
+import engine.index.TieredMergePolicy;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BackgroundMergeTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/BackgroundMergeTest";
+    private InvertedIndexManager iim;
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 3;
+        iim = InvertedIndexManager.createOrOpen(file, an);
+        iim.setMergePolicy(new TieredMergePolicy(3, 1024 * 1024, Long.MAX_VALUE, 2));
+        iim.setBackgroundMerge(true);
+    }
+
+    /**
+     * Test that the background merges leave the segments merged into tiers, keeping all the documents in order, and
+     * that the files of the merged segments are deleted
+     */
+
+    @Test
+    public void test1() {
+        for (int i = 0; i < 30; i++) {
+            iim.addDocument(new Document("cat doc" + i));
+        }
+        iim.flush();
+        iim.waitForMerges();
+
+        assertTrue(iim.getNumSegments() < 3);
+        List<String> texts = new ArrayList<>();
+        Iterator<Document> itr = iim.documentIterator();
+        while (itr.hasNext()) {
+            texts.add(itr.next().getText());
+        }
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            expected.add("cat doc" + i);
+        }
+        assertEquals(expected, texts);
+
+        int numDocStores = 0;
+        for (File f : new File(file).listFiles()) {
+            if (f.getName().endsWith(".db")) {
+                numDocStores += 1;
+            }
+        }
+        assertEquals(iim.getNumSegments(), numDocStores);
+    }
+
+    /**
+     * Test that the queries running while the segments are merged see every flushed document exactly once
+     */
+
+    @Test
+    public void test2() throws Exception {
+        List<String> failures = Collections.synchronizedList(new ArrayList<>());
+        Thread searcher = new Thread(() -> {
+            int lastCount = 0;
+            while (!Thread.currentThread().isInterrupted() && lastCount < 60) {
+                try {
+                    Set<String> texts = new HashSet<>();
+                    int count = 0;
+                    Iterator<Pair<Document, Double>> itr = iim.searchTfIdf(Collections.singletonList("cat"), null);
+                    while (itr.hasNext()) {
+                        texts.add(itr.next().getLeft().getText());
+                        count += 1;
+                    }
+                    if (count != texts.size() || count % 3 != 0 || count < lastCount) {
+                        failures.add(lastCount + " then " + count + " documents, " + texts.size() + " distinct");
+                    }
+                    lastCount = count;
+                } catch (RuntimeException e) {
+                    failures.add(e.toString());
+                    return;
+                }
+            }
+        });
+        searcher.start();
+        for (int i = 0; i < 60; i++) {
+            iim.addDocument(new Document("cat doc" + i));
+        }
+        iim.waitForMerges();
+        searcher.join(60000);
+        searcher.interrupt();
+
+        assertEquals(Collections.emptyList(), failures);
+        int numDocs = 0;
+        for (int seg = 0; seg < iim.getNumSegments(); seg++) {
+            numDocs += iim.getNumDocuments(seg);
+        }
+        assertEquals(60, numDocs);
+    }
+
+    /**
+     * Test that a background merge which fails makes waitForMerges fail, once
+     */
+
+    @Test
+    public void test3() throws Exception {
+        iim.setMergePolicy(segmentSizes -> segmentSizes.length < 3
+                ? Collections.emptyList()
+                : Collections.singletonList(new Pair<>(0, segmentSizes.length)));
+        for (int i = 0; i < 6; i++) {
+            iim.addDocument(new Document("cat doc" + i));
+        }
+        iim.flush();
+        assertEquals(2, iim.getNumSegments());
+        // the document store of the first segment can't be read by the merge
+        Files.write(Paths.get(file, "segment0.db"), "not a document store".getBytes());
+
+        for (int i = 6; i < 9; i++) {
+            iim.addDocument(new Document("cat doc" + i));
+        }
+        iim.flush();
+        try {
+            iim.waitForMerges();
+            fail("the merge failure is lost");
+        } catch (CompletionException e) {
+            assertTrue(e.getCause() != null);
+        }
+        iim.waitForMerges();
+        assertEquals(3, iim.getNumSegments());
+    }
+
+    @After
+    public void cleanUp() {
+        iim.setBackgroundMerge(false);
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+    }
+
+}
@@ -0,0 +1,216 @@
+package engine.index.inverted;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlockDictionaryTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/BlockDictionaryTest";
+    private InvertedIndexManager iim;
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 1000;
+        iim = InvertedIndexManager.createOrOpen(file, an);
+    }
+
+    /**
+     * builds 4 documents over 2000 words, document d contains the words whose number is a multiple of d + 1,
+     * so the dictionary takes many blocks
+     */
+
+    private List<Document> buildDocuments() {
+        List<Document> docs = new ArrayList<>();
+        for (int d = 0; d < 4; d++) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 0; i < 2000; i += d + 1) {
+                text.append(String.format("w%04d ", i));
+            }
+            docs.add(new Document(text.toString().trim()));
+        }
+        return docs;
+    }
+
+    private int expectedFrequency(int i) {
+        int freq = 0;
+        for (int d = 0; d < 4; d++) {
+            if (i % (d + 1) == 0) {
+                freq += 1;
+            }
+        }
+        return freq;
+    }
+
+    /**
+     * Test every word of a dictionary spanning many blocks, and words before, between and after them
+     */
+
+    @Test
+    public void test1() {
+        for (Document doc: buildDocuments()) {
+            iim.addDocument(doc);
+        }
+        iim.flush();
+
+        assertEquals(1, iim.getNumSegments());
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(expectedFrequency(i), iim.getDocumentFrequency(0, String.format("w%04d", i)));
+        }
+        assertEquals(0, iim.getDocumentFrequency(0, "a"));
+        assertEquals(0, iim.getDocumentFrequency(0, "w0000a"));
+        assertEquals(0, iim.getDocumentFrequency(0, "w1999a"));
+        assertEquals(0, iim.getDocumentFrequency(0, "z"));
+    }
+
+    /**
+     * Test that a lookup reads at most one page once the block index is loaded
+     */
+
+    @Test
+    public void test2() {
+        for (Document doc: buildDocuments()) {
+            iim.addDocument(doc);
+        }
+        iim.flush();
+        iim.getDocumentFrequency(0, "w0000");
+
+        PageFileChannel.resetCounters();
+        assertEquals(expectedFrequency(1234), iim.getDocumentFrequency(0, "w1234"));
+        assertTrue(PageFileChannel.readCounter <= 1);
+    }
+
+    /**
+     * Test that the dictionary written by a merge is searchable
+     */
+
+    @Test
+    public void test3() {
+        List<Document> docs = buildDocuments();
+        iim.addDocument(docs.get(0));
+        iim.addDocument(docs.get(1));
+        iim.flush();
+        iim.addDocument(docs.get(2));
+        iim.addDocument(docs.get(3));
+        iim.flush();
+        iim.mergeAllSegments();
+
+        assertEquals(1, iim.getNumSegments());
+        for (int i = 0; i < 2000; i++) {
+            assertEquals(expectedFrequency(i), iim.getDocumentFrequency(0, String.format("w%04d", i)));
+        }
+        assertEquals(0, iim.getDocumentFrequency(0, "z"));
+    }
+
+    /**
+     * Test that a dictionary in the legacy format, with the total number of bytes on the first page and records of
+     * length(word), word, pageID, offset and length(posting list), is still readable
+     */
+
+    @Test
+    public void test4() {
+        ByteBuffer wordsBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE * 4);
+        for (int i = 0; i < 500; i++) {
+            byte[] word = String.format("w%04d", i).getBytes(StandardCharsets.UTF_8);
+            wordsBuffer.putInt(word.length);
+            wordsBuffer.put(word);
+            wordsBuffer.putInt(0);
+            wordsBuffer.putInt(0);
+            wordsBuffer.putInt(i % 7 + 1);
+        }
+        ByteBuffer firstPage = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+        firstPage.putInt(wordsBuffer.position());
+        PageFileChannel pfc = PageFileChannel.createOrOpen(Paths.get(file + "/segment0a"));
+        pfc.appendPage(firstPage);
+        pfc.appendAllBytes(wordsBuffer);
+        pfc.close();
+
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i % 7 + 1, iim.getDocumentFrequency(0, String.format("w%04d", i)));
+        }
+        assertEquals(0, iim.getDocumentFrequency(0, "z"));
+    }
+
+    /**
+     * Test that a dictionary in the block format written before the records had the largest impact of their posting
+     * list, whose header starts with 0xB10C0D1C, is still readable
+     */
+
+    @Test
+    public void test5() {
+        // a header, one block of records on page 1 and the block index on page 2
+        ByteBuffer block = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+        block.position(2 * 4);
+        int numWords = 0;
+        for (int i = 0; i < 100; i++) {
+            byte[] word = String.format("w%04d", i).getBytes(StandardCharsets.UTF_8);
+            block.putInt(word.length);
+            block.put(word);
+            block.putInt(0);
+            block.putInt(0);
+            block.putInt(i % 7 + 1);
+            numWords += 1;
+        }
+        block.putInt(0, numWords);
+        block.putInt(4, block.position());
+
+        ByteBuffer index = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+        byte[] firstWord = "w0000".getBytes(StandardCharsets.UTF_8);
+        index.putInt(1);
+        index.putInt(1);
+        index.putInt(firstWord.length);
+        index.put(firstWord);
+        int indexBytes = index.position();
+
+        ByteBuffer header = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+        header.putInt(0xB10C0D1C);
+        header.putInt(1);
+        header.putInt(numWords);
+        header.putInt(2);
+        header.putInt(indexBytes);
+
+        PageFileChannel pfc = PageFileChannel.createOrOpen(Paths.get(file + "/segment0a"));
+        pfc.appendPage(header);
+        pfc.appendPage(block);
+        pfc.appendPage(index);
+        pfc.close();
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 7 + 1, iim.getDocumentFrequency(0, String.format("w%04d", i)));
+        }
+        assertEquals(0, iim.getDocumentFrequency(0, "z"));
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 8;
+    }
+
+}
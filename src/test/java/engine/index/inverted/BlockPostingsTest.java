@@ -0,0 +1,157 @@
+package engine.index.inverted;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.BlockPostings;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BlockPostingsTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/BlockPostingsTest";
+    private InvertedIndexManager iim;
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 10000;
+        iim = InvertedIndexManager.createOrOpen(file, an);
+    }
+
+    /**
+     * get the texts of the documents of an iterator
+     */
+
+    private static List<String> texts(Iterator<Document> itr) {
+        List<String> texts = new ArrayList<>();
+        while (itr.hasNext()) {
+            texts.add(itr.next().getText());
+        }
+        return texts;
+    }
+
+    /**
+     * Test the number of blocks and the size of the skip list of posting lists of different lengths
+     */
+
+    @Test
+    public void test1() {
+        assertEquals(1, BlockPostings.getNumBlocks(100));
+        assertEquals(0, BlockPostings.getSkipListBytes(100));
+        assertEquals(0, BlockPostings.getSkipListBytes(128));
+
+        assertEquals(2, BlockPostings.getNumBlocks(129));
+        assertEquals(2 * 16, BlockPostings.getSkipListBytes(129));
+
+        // 9 blocks need a second level of 2 entries
+        assertArrayEquals(new int[] {9, 2}, BlockPostings.getLevelSizes(128 * 8 + 1));
+        assertEquals((9 + 2) * 16, BlockPostings.getSkipListBytes(128 * 8 + 1));
+
+        assertArrayEquals(new int[] {65, 9, 2}, BlockPostings.getLevelSizes(128 * 64 + 1));
+        assertEquals((65 + 9 + 2) * 16, BlockPostings.getSkipListBytes(128 * 64 + 1));
+    }
+
+    /**
+     * Test that the and search finds the documents of a long posting list through its skip list, reading fewer pages
+     * than the whole list
+     */
+
+    @Test
+    public void test2() {
+        int numDocs = 6000;
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            String text = "common w" + i % 7;
+            if (i == 500 || i == numDocs - 1) {
+                text += " rare";
+                expected.add(text);
+            }
+            iim.addDocument(new Document(text));
+        }
+        iim.flush();
+        assertEquals(1, iim.getNumSegments());
+
+        PageFileChannel.resetCounters();
+        assertEquals(numDocs, texts(iim.searchQuery("common")).size());
+        int keywordReads = PageFileChannel.readCounter;
+
+        PageFileChannel.resetCounters();
+        assertEquals(expected, texts(iim.searchAndQuery(Arrays.asList("rare", "common"))));
+        int andReads = PageFileChannel.readCounter;
+
+        assertTrue(andReads < keywordReads / 2);
+        assertEquals(Arrays.asList("common w3 rare"), texts(iim.searchAndQuery(Arrays.asList("rare", "w3"))));
+    }
+
+    /**
+     * read the impacts of the blocks of the posting list of the only word of a segment, from level 0 of its skip list
+     */
+
+    private int[] readImpacts(File segmentFile, int len) {
+        PageFileChannel channel = PageFileChannel.createOrOpen(segmentFile.toPath());
+        ByteBuffer page = channel.readPage(0);
+        channel.close();
+        int[] impacts = new int[BlockPostings.getNumBlocks(len)];
+        for (int i = 0; i < impacts.length; i++) {
+            page.getInt(); // the last docID of the block
+            page.getInt(); // the offset of the block
+            impacts[i] = page.getInt();
+            page.getFloat(); // the largest length of position list divided by the norm of its document
+        }
+        return impacts;
+    }
+
+    /**
+     * Test that the skip list of a posting list has the largest length of position list of every block, once flushed
+     * and once merged
+     */
+
+    @Test
+    public void test3() {
+        for (int i = 0; i < 600; i++) {
+            iim.addDocument(new Document(i == 200 || i == 450 ? "w w w" : i == 590 ? "w w" : "w"));
+            if (i == 299) {
+                iim.flush();
+            }
+        }
+        iim.flush();
+        assertArrayEquals(new int[] {1, 3, 1}, readImpacts(new File(file + "/segment0b"), 300));
+        assertArrayEquals(new int[] {1, 3, 2}, readImpacts(new File(file + "/segment1b"), 300));
+
+        iim.mergeAllSegments();
+        File[] merged = new File(file).listFiles((dir, name) -> name.matches("segment\\d+b"));
+        assertEquals(1, merged.length);
+        assertArrayEquals(new int[] {1, 3, 1, 3, 2}, readImpacts(merged[0], 600));
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+    }
+
+}
@@ -0,0 +1,128 @@
+package engine.index.inverted;
+
+import engine.index.BufferPool;
+import engine.index.ClockEvictionPolicy;
+import engine.index.LruEvictionPolicy;
+import engine.index.PageFileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+
+public class BufferPoolTest {
+
+    private String file = "./index/BufferPoolTest";
+    private BufferPool defaultPool;
+    private PageFileChannel pfc;
+
+    @Before
+    public void setup() {
+        defaultPool = PageFileChannel.bufferPool;
+        pfc = PageFileChannel.createOrOpen(Paths.get(file + "/pages"));
+        for (int i = 0; i < 4; i++) {
+            ByteBuffer page = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+            page.putInt(i);
+            pfc.appendPage(page);
+        }
+        PageFileChannel.resetCounters();
+    }
+
+    /**
+     * Test that a page read again is served from the pool
+     */
+
+    @Test
+    public void test1() {
+        PageFileChannel.bufferPool = new BufferPool(4);
+        assertEquals(2, pfc.readPage(2).getInt());
+        assertEquals(2, pfc.readPage(2).getInt());
+        assertEquals(1, PageFileChannel.readCounter);
+        assertEquals(1, PageFileChannel.bufferPool.getHitCount());
+        assertEquals(1, PageFileChannel.bufferPool.getMissCount());
+    }
+
+    /**
+     * Test that a written page is read back with its new content
+     */
+
+    @Test
+    public void test2() {
+        PageFileChannel.bufferPool = new BufferPool(4);
+        assertEquals(1, pfc.readPage(1).getInt());
+        ByteBuffer page = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+        page.putInt(100);
+        pfc.writePage(1, page);
+        assertEquals(100, pfc.readPage(1).getInt());
+        assertEquals(1, PageFileChannel.readCounter);
+    }
+
+    /**
+     * Test that LRU evicts the page read least recently
+     */
+
+    @Test
+    public void test3() {
+        PageFileChannel.bufferPool = new BufferPool(2, new LruEvictionPolicy());
+        pfc.readPage(0);
+        pfc.readPage(1);
+        pfc.readPage(0);
+        pfc.readPage(2);
+        assertEquals(3, PageFileChannel.readCounter);
+        pfc.readPage(0);
+        assertEquals(3, PageFileChannel.readCounter);
+        pfc.readPage(1);
+        assertEquals(4, PageFileChannel.readCounter);
+    }
+
+    /**
+     * Test that pinned pages are not evicted
+     */
+
+    @Test
+    public void test4() {
+        PageFileChannel.bufferPool = new BufferPool(2, new ClockEvictionPolicy());
+        ByteBuffer pinned = pfc.pinPage(0);
+        for (int i = 1; i < 4; i++) {
+            assertEquals(i, pfc.readPage(i).getInt());
+        }
+        assertEquals(0, pinned.getInt(0));
+        PageFileChannel.resetCounters();
+        pfc.readPage(0);
+        assertEquals(0, PageFileChannel.readCounter);
+        pfc.unpinPage(pinned);
+    }
+
+    /**
+     * Test that a pool whose frames are all pinned can't load another page
+     */
+
+    @Test(expected = IllegalStateException.class)
+    public void test5() {
+        PageFileChannel.bufferPool = new BufferPool(2);
+        pfc.pinPage(0);
+        pfc.pinPage(1);
+        pfc.readPage(2);
+    }
+
+    @After
+    public void cleanUp() {
+        pfc.close();
+        PageFileChannel.bufferPool = defaultPool;
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+    }
+
+}
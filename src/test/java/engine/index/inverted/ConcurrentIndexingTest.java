@@ -0,0 +1,159 @@
+package engine.index.inverted;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentIndexingTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/ConcurrentIndexingTest";
+    private InvertedIndexManager iim;
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 10;
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 1000;
+        iim = InvertedIndexManager.createOrOpen(file, an);
+    }
+
+    /**
+     * add the documents "thread t doc i" for i in [0, numDocs) from a thread
+     */
+
+    private Thread indexingThread(int t, int numDocs) {
+        return new Thread(() -> {
+            for (int i = 0; i < numDocs; i++) {
+                iim.addDocument(new Document("common thread" + t + " doc" + i));
+            }
+        });
+    }
+
+    /**
+     * Test that the documents added by several threads are all flushed, every thread to its own segments
+     */
+
+    @Test
+    public void test1() throws Exception {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(indexingThread(t, 25));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        iim.flush();
+        assertEquals(0, iim.getBufferedBytes());
+
+        // each thread writes 2 full segments and flushes its last 5 documents to a third one
+        assertEquals(12, iim.getNumSegments());
+        int numDocs = 0;
+        int freq = 0;
+        for (int seg = 0; seg < iim.getNumSegments(); seg++) {
+            int segmentDocs = iim.getNumDocuments(seg);
+            assertTrue(segmentDocs == 10 || segmentDocs == 5);
+            assertTrue(iim.getDocumentFrequency(seg, "thread2") == 0 || iim.getDocumentFrequency(seg, "thread2") == segmentDocs);
+            numDocs += segmentDocs;
+            freq += iim.getDocumentFrequency(seg, "common");
+        }
+        assertEquals(100, numDocs);
+        assertEquals(100, freq);
+
+        Set<String> texts = new HashSet<>();
+        Iterator<Document> itr = iim.documentIterator();
+        while (itr.hasNext()) {
+            texts.add(itr.next().getText());
+        }
+        assertEquals(100, texts.size());
+        assertTrue(texts.contains("common thread3 doc24"));
+    }
+
+    /**
+     * Test that the segments written concurrently are merged once the merge threshold is reached
+     */
+
+    @Test
+    public void test2() throws Exception {
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 4;
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            threads.add(indexingThread(t, 20));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        iim.flush();
+
+        assertTrue(iim.getNumSegments() < 4);
+        int freq = 0;
+        for (int seg = 0; seg < iim.getNumSegments(); seg++) {
+            freq += iim.getDocumentFrequency(seg, "common");
+        }
+        assertEquals(60, freq);
+    }
+
+    /**
+     * Test that the index doesn't keep the terminated indexing threads once their documents are flushed
+     */
+
+    @Test
+    public void test3() throws Exception {
+        List<WeakReference<Thread>> references = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Thread thread = indexingThread(t, 15);
+            thread.start();
+            thread.join();
+            references.add(new WeakReference<>(thread));
+        }
+        iim.flush();
+        assertEquals(8, iim.getNumSegments());
+
+        for (int i = 0; i < 50 && references.stream().anyMatch(reference -> reference.get() != null); i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        for (WeakReference<Thread> reference : references) {
+            assertNull(reference.get());
+        }
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 8;
+    }
+
+}
@@ -0,0 +1,134 @@
+package engine.index.inverted;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.DocumentCache;
+import engine.index.InvertedIndexManager;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DocumentCacheTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/DocumentCacheTest";
+    private InvertedIndexManager iim;
+
+    /**
+     * a document text of about 100 characters
+     */
+
+    private static String text(int i) {
+        StringBuilder text = new StringBuilder("doc" + i);
+        while (text.length() < 100) {
+            text.append(" filler");
+        }
+        return text.toString();
+    }
+
+    /**
+     * Test that the cache stays within its budget of bytes, evicting the least recently used documents
+     */
+
+    @Test
+    public void test1() {
+        DocumentCache cache = new DocumentCache(16 * 1000);
+        Document first = new Document(text(0));
+        cache.put(0, 0, first);
+        for (int i = 1; i < 500; i++) {
+            cache.put(i % 3, i, new Document(text(i)));
+            // the first document is used all along, so it is never the least recently used one
+            assertEquals(first, cache.get(0, 0));
+            assertTrue(cache.ramBytesUsed() <= 16 * 1000);
+        }
+        assertTrue(cache.getEvictionCount() > 0);
+        assertTrue(cache.size() < 500);
+        assertNull(cache.get(1, 1));
+
+        cache.invalidate(0, 0);
+        assertNull(cache.get(0, 0));
+        cache.invalidateSegment(1);
+        cache.invalidateSegment(2);
+        for (int i = 1; i < 500; i++) {
+            if (i % 3 != 0) {
+                assertNull(cache.get(i % 3, i));
+            }
+        }
+        cache.invalidateSegment(0);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.ramBytesUsed());
+    }
+
+    /**
+     * get the results of a search
+     */
+
+    private static List<Document> toList(Iterator<Document> itr) {
+        List<Document> list = new ArrayList<>();
+        while (itr.hasNext()) {
+            list.add(itr.next());
+        }
+        return list;
+    }
+
+    /**
+     * Test that repeated queries read their documents from the cache, and that deleted and merged documents leave it
+     */
+
+    @Test
+    public void test2() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 10;
+        iim = InvertedIndexManager.createOrOpen(file, an);
+        for (int i = 0; i < 20; i++) {
+            iim.addDocument(new Document(i % 2 == 0 ? "even doc" + i : "odd doc" + i));
+        }
+        iim.flush();
+        assertEquals(2, iim.getNumSegments());
+        DocumentCache cache = iim.getDocumentCache();
+
+        List<Document> even = toList(iim.searchQuery("even"));
+        assertEquals(10, even.size());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(10, cache.getMissCount());
+        assertEquals(even, toList(iim.searchQuery("even")));
+        assertEquals(10, cache.getHitCount());
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+
+        // the deleted documents leave the cache
+        iim.deleteDocuments("doc0");
+        assertEquals(9, cache.size());
+        assertEquals(even.subList(1, 10), toList(iim.searchQuery("even")));
+
+        // the documents of the merged segments leave the cache
+        iim.mergeAllSegments();
+        assertEquals(0, cache.size());
+        cache.resetStats();
+        assertEquals(even.subList(1, 10), toList(iim.searchQuery("even")));
+        assertEquals(0, cache.getHitCount());
+        assertEquals(9, cache.size());
+    }
+
+    @After
+    public void cleanUp() {
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+    }
+
+}
@@ -0,0 +1,113 @@
+package engine.index.inverted;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.DeltaVarLenCompressor;
+import engine.index.DocumentNorms;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+
+public class DocumentNormsTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/DocumentNormsTest";
+    private InvertedIndexManager iim;
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 3;
+    }
+
+    /**
+     * read the statistics of the documents of a segment from its file
+     */
+
+    private static DocumentNorms readNorms(File segmentFile) {
+        PageFileChannel channel = PageFileChannel.createOrOpen(segmentFile.toPath());
+        ByteBuffer buffer = channel.readAllPages();
+        channel.close();
+        return new DocumentNorms(buffer);
+    }
+
+    /**
+     * add documents to two segments, check their statistics, then merge the segments after deleting a document and check
+     * the statistics of the merged segment
+     */
+
+    private void checkNorms() {
+        iim.addDocument(new Document("cat dog"));
+        iim.addDocument(new Document("cat dog dog fish"));
+        iim.addDocument(new Document("bird"));
+        iim.addDocument(new Document("wolf wolf wolf"));
+        iim.addDocument(new Document("fish dog fish cat fish"));
+        iim.addDocument(new Document("bee bee"));
+        assertEquals(2, iim.getNumSegments());
+
+        DocumentNorms norms = readNorms(new File(file + "/segment0n"));
+        assertEquals(3, norms.getNumDocuments());
+        assertEquals(4, norms.getLength(1));
+        assertEquals(3, norms.getNumTerms(1));
+        assertEquals(1 + 4 + 1, norms.getSumSquaredFreqs(1));
+        assertEquals(Math.sqrt(6), norms.getNorm(1), 1e-12);
+
+        iim.deleteDocuments("bird");
+        iim.mergeAllSegments();
+        File[] merged = new File(file).listFiles((dir, name) -> name.matches("segment\\d+n"));
+        assertEquals(1, merged.length);
+        norms = readNorms(merged[0]);
+        assertEquals(5, norms.getNumDocuments());
+        assertEquals(2, norms.getLength(0));
+        assertEquals(9, norms.getSumSquaredFreqs(2));
+        assertEquals(5, norms.getLength(3));
+        assertEquals(3, norms.getNumTerms(3));
+        assertEquals(9 + 1 + 1, norms.getSumSquaredFreqs(3));
+        assertEquals(4, norms.getSumSquaredFreqs(4));
+    }
+
+    /**
+     * Test that the statistics of the documents of an inverted index are written at flush time, and merged without the
+     * deleted documents
+     */
+
+    @Test
+    public void test1() {
+        iim = InvertedIndexManager.createOrOpen(file, an);
+        checkNorms();
+    }
+
+    /**
+     * Test that the statistics of the documents of a positional index are written at flush time, and merged without the
+     * deleted documents
+     */
+
+    @Test
+    public void test2() {
+        iim = InvertedIndexManager.createOrOpenPositional(file, an, new DeltaVarLenCompressor());
+        checkNorms();
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+    }
+
+}
@@ -0,0 +1,122 @@
+package engine.index.inverted;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.InvertedIndexManager;
+import engine.index.InvertedIndexSegmentForTest;
+import engine.index.PageFileChannel;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class ExpungeDeletesTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/ExpungeDeletesTest";
+    private InvertedIndexManager iim;
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 3;
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 1000;
+        iim = InvertedIndexManager.createOrOpen(file, an);
+    }
+
+    /**
+     * Test that a merge drops the deleted documents and their postings, and gives the other documents consecutive
+     * docIDs
+     */
+
+    @Test
+    public void test1() {
+        iim.addDocument(new Document("cat dog"));
+        iim.addDocument(new Document("dog wolf"));
+        iim.addDocument(new Document("cat bird"));
+        iim.addDocument(new Document("cat wolf"));
+        iim.addDocument(new Document("bird mouse"));
+        iim.addDocument(new Document("dog mouse"));
+        iim.deleteDocuments("cat");
+        iim.mergeAllSegments();
+
+        assertEquals(1, iim.getNumSegments());
+        InvertedIndexSegmentForTest segment = iim.getIndexSegment(0);
+        Map<Integer, Document> expectedDocs = new HashMap<>();
+        expectedDocs.put(0, new Document("dog wolf"));
+        expectedDocs.put(1, new Document("bird mouse"));
+        expectedDocs.put(2, new Document("dog mouse"));
+        assertEquals(expectedDocs, segment.getDocuments());
+
+        Map<String, List<Integer>> expectedLists = new HashMap<>();
+        expectedLists.put("dog", Arrays.asList(0, 2));
+        expectedLists.put("wolf", Arrays.asList(0));
+        expectedLists.put("bird", Arrays.asList(1));
+        expectedLists.put("mouse", Arrays.asList(1, 2));
+        assertEquals(expectedLists, segment.getInvertedLists());
+        assertFalse(iim.searchQuery("cat").hasNext());
+    }
+
+    /**
+     * Test that expungeDeletes rewrites only the segments above the deleted ratio and removes the segments whose
+     * documents are all deleted
+     */
+
+    @Test
+    public void test2() {
+        InvertedIndexManager.DEFAULT_EXPUNGE_DELETES_RATIO = 0.5;
+        iim.addDocument(new Document("cat dog"));
+        iim.addDocument(new Document("cat wolf"));
+        iim.addDocument(new Document("bird"));
+        iim.addDocument(new Document("cat mouse"));
+        iim.addDocument(new Document("dog mouse"));
+        iim.addDocument(new Document("wolf mouse"));
+        iim.addDocument(new Document("cat tiger"));
+        iim.addDocument(new Document("cat puma"));
+        iim.addDocument(new Document("cat lion"));
+        iim.deleteDocuments("cat");
+        iim.expungeDeletes();
+
+        // 2 of 3 deleted, 1 of 3 deleted, all deleted
+        assertEquals(2, iim.getNumSegments());
+        assertEquals(1, iim.getNumDocuments(0));
+        assertEquals(3, iim.getNumDocuments(1));
+        assertEquals(1, iim.getDocumentFrequency(0, "bird"));
+        assertEquals(0, iim.getDocumentFrequency(0, "cat"));
+
+        List<String> texts = new ArrayList<>();
+        Iterator<Document> itr = iim.searchQuery("wolf");
+        while (itr.hasNext()) {
+            texts.add(itr.next().getText());
+        }
+        assertEquals(Arrays.asList("wolf mouse"), texts);
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 8;
+        InvertedIndexManager.DEFAULT_EXPUNGE_DELETES_RATIO = 0.1;
+    }
+
+}
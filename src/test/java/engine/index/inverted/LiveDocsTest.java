@@ -0,0 +1,120 @@
+package engine.index.inverted;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.index.Pair;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LiveDocsTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/LiveDocsTest";
+    private InvertedIndexManager iim;
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 3;
+        iim = InvertedIndexManager.createOrOpen(file, an);
+        iim.addDocument(new Document("cat dog"));
+        iim.addDocument(new Document("dog wolf"));
+        iim.addDocument(new Document("cat bird"));
+        iim.addDocument(new Document("bird dog"));
+        iim.addDocument(new Document("cat mouse dog"));
+        iim.addDocument(new Document("wolf mouse"));
+    }
+
+    /**
+     * get the texts of the documents of an iterator
+     */
+
+    private static List<String> texts(Iterator<Document> itr) {
+        List<String> texts = new ArrayList<>();
+        while (itr.hasNext()) {
+            texts.add(itr.next().getText());
+        }
+        return texts;
+    }
+
+    /**
+     * Test that the deleted documents are skipped by the keyword, boolean and tf-idf searches and by the document
+     * iterator before the deletions are written
+     */
+
+    @Test
+    public void test1() {
+        iim.deleteDocuments("cat");
+
+        assertEquals(Collections.emptyList(), texts(iim.searchQuery("cat")));
+        assertEquals(Arrays.asList("dog wolf", "bird dog"), texts(iim.searchQuery("dog")));
+        assertEquals(Arrays.asList("bird dog"), texts(iim.searchAndQuery(Arrays.asList("dog", "bird"))));
+        assertEquals(Arrays.asList("dog wolf", "bird dog", "wolf mouse"),
+                texts(iim.searchOrQuery(Arrays.asList("bird", "mouse", "wolf"))));
+        assertEquals(Arrays.asList("dog wolf", "bird dog", "wolf mouse"), texts(iim.documentIterator()));
+
+        int numResults = 0;
+        Iterator<Pair<Document, Double>> itr = iim.searchTfIdf(Arrays.asList("cat", "dog"), null);
+        while (itr.hasNext()) {
+            assertFalse(itr.next().getLeft().getText().contains("cat"));
+            numResults += 1;
+        }
+        assertEquals(2, numResults);
+    }
+
+    /**
+     * Test that the deletions are written to a new generation of the live-docs file at flush, which replaces the previous
+     * generation, and only for the segments having new deletions
+     */
+
+    @Test
+    public void test2() {
+        iim.deleteDocuments("cat");
+        assertFalse(new File(file + "/segment0_1.liv").exists());
+        iim.flush();
+        assertTrue(new File(file + "/segment0_1.liv").exists());
+        assertTrue(new File(file + "/segment1_1.liv").exists());
+
+        iim.deleteDocuments("wolf");
+        iim.flush();
+        assertFalse(new File(file + "/segment0_1.liv").exists());
+        assertTrue(new File(file + "/segment0_2.liv").exists());
+        assertTrue(new File(file + "/segment1_2.liv").exists());
+
+        iim.deleteDocuments("bird");
+        iim.flush();
+        assertTrue(new File(file + "/segment0_2.liv").exists());
+        assertTrue(new File(file + "/segment1_3.liv").exists());
+        assertEquals(Collections.emptyList(), texts(iim.documentIterator()));
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+    }
+
+}
@@ -0,0 +1,177 @@
+package engine.index.inverted;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.DeltaVarLenCompressor;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelSearchTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/ParallelSearchTest";
+    private InvertedIndexManager iim;
+    private ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    /**
+     * add documents of random words to several segments, then delete a few of them
+     */
+
+    private void addDocuments() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 50;
+        Random random = new Random(7);
+        for (int i = 0; i < 300; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = 2 + random.nextInt(8);
+            for (int j = 0; j < length; j++) {
+                double r = random.nextDouble();
+                text.append(j == 0 ? "" : " ").append("w").append((int) (20 * r * r));
+            }
+            iim.addDocument(new Document(text.toString()));
+        }
+        iim.flush();
+        iim.deleteDocuments("w19");
+        assertTrue(iim.getNumSegments() > 1);
+    }
+
+    /**
+     * get the results of a search
+     */
+
+    private static <T> List<T> toList(Iterator<T> itr) {
+        List<T> list = new ArrayList<>();
+        while (itr.hasNext()) {
+            list.add(itr.next());
+        }
+        return list;
+    }
+
+    /**
+     * get the results of the queries, the keyword, boolean and ranked ones, and the phrase ones if positional
+     */
+
+    private List<Object> search(boolean positional) {
+        List<Object> results = new ArrayList<>();
+        for (String keyword : Arrays.asList("w0", "w3", "w17", "missing")) {
+            results.add(toList(iim.searchQuery(keyword)));
+        }
+        List<List<String>> queries = Arrays.asList(
+                Arrays.asList("w0", "w1"),
+                Arrays.asList("w2", "w5", "w9"),
+                Arrays.asList("w4", "missing"));
+        for (List<String> query : queries) {
+            results.add(toList(iim.searchAndQuery(query)));
+            results.add(toList(iim.searchOrQuery(query)));
+            if (positional) {
+                results.add(toList(iim.searchPhraseQuery(query)));
+            }
+            for (int k : new int[] {1, 10, 50}) {
+                results.add(toList(iim.searchTfIdf(query, k)));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Test that the searches of an inverted index give the same results when the segments are searched concurrently
+     */
+
+    @Test
+    public void test1() {
+        iim = InvertedIndexManager.createOrOpen(file, an);
+        addDocuments();
+        List<Object> expected = search(false);
+        iim.setSearchExecutor(executor);
+        assertEquals(expected, search(false));
+        iim.setSearchExecutor(ForkJoinPool.commonPool());
+        assertEquals(expected, search(false));
+    }
+
+    /**
+     * Test that the searches of a positional index give the same results when the segments are searched concurrently
+     */
+
+    @Test
+    public void test2() {
+        iim = InvertedIndexManager.createOrOpenPositional(file, an, new DeltaVarLenCompressor());
+        addDocuments();
+        List<Object> expected = search(true);
+        iim.setSearchExecutor(executor);
+        assertEquals(expected, search(true));
+    }
+
+    /**
+     * run keyword and boolean searches, whose reads don't depend on the order the segments are searched in
+     */
+
+    private void searchRepeatedly() {
+        for (int i = 0; i < 200; i++) {
+            for (String keyword : Arrays.asList("w0", "w1", "w3")) {
+                toList(iim.searchQuery(keyword));
+            }
+            toList(iim.searchAndQuery(Arrays.asList("w0", "w1")));
+            toList(iim.searchOrQuery(Arrays.asList("w2", "w5", "w9")));
+        }
+    }
+
+    /**
+     * Test that the pages read by the segments searched concurrently, by concurrent queries, are all counted
+     */
+
+    @Test
+    public void test3() throws Exception {
+        iim = InvertedIndexManager.createOrOpen(file, an);
+        addDocuments();
+        searchRepeatedly();
+        PageFileChannel.resetCounters();
+        searchRepeatedly();
+        int reads = PageFileChannel.readCounter;
+
+        iim.setSearchExecutor(executor);
+        PageFileChannel.resetCounters();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            threads.add(new Thread(this::searchRepeatedly));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(4 * reads, PageFileChannel.readCounter);
+    }
+
+    @After
+    public void cleanUp() {
+        executor.shutdown();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        PageFileChannel.resetCounters();
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+    }
+
+}
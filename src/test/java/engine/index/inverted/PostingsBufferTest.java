@@ -0,0 +1,85 @@
+package engine.index.inverted;
+
+import engine.index.PostingsBuffer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PostingsBufferTest {
+
+    /**
+     * Test that the terms come out sorted with their docIDs, frequencies and positions
+     */
+
+    @Test
+    public void test1() {
+        PostingsBuffer postings = new PostingsBuffer();
+        postings.addDocument(0, Arrays.asList("dog", "cat", "dog"));
+        postings.addDocument(1, Arrays.asList("cat", "bird"));
+        postings.addDocument(3, Arrays.asList("dog"));
+
+        int[] termIDs = postings.getSortedTermIDs();
+        List<String> terms = new ArrayList<>();
+        for (int termID : termIDs) {
+            terms.add(postings.getTerm(termID));
+        }
+        assertEquals(Arrays.asList("bird", "cat", "dog"), terms);
+
+        int dog = termIDs[2];
+        assertEquals(2, postings.getNumDocs(dog));
+        assertEquals(0, postings.getDocID(dog, 0));
+        assertEquals(3, postings.getDocID(dog, 1));
+        assertEquals(2, postings.getFreq(dog, 0));
+        assertEquals(1, postings.getFreq(dog, 1));
+        assertEquals(Arrays.asList(0, 2), postings.getPositions(dog, 0, 2));
+        assertEquals(Arrays.asList(0), postings.getPositions(dog, 2, 1));
+
+        int cat = termIDs[1];
+        assertEquals(2, postings.getNumDocs(cat));
+        assertEquals(Arrays.asList(1, 0), postings.getPositions(cat, 0, 2));
+    }
+
+    /**
+     * Test that the arrays grow past their initial size and that clear() empties the buffer
+     */
+
+    @Test
+    public void test2() {
+        PostingsBuffer postings = new PostingsBuffer();
+        for (int docID = 0; docID < 500; docID++) {
+            postings.addDocument(docID, Arrays.asList("word" + docID, "common", "common"));
+        }
+        assertEquals(501, postings.getNumTerms());
+        int[] termIDs = postings.getSortedTermIDs();
+        int common = termIDs[0];
+        assertEquals("common", postings.getTerm(common));
+        assertEquals(500, postings.getNumDocs(common));
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, postings.getDocID(common, i));
+            assertEquals(2, postings.getFreq(common, i));
+        }
+        assertEquals(Arrays.asList(1, 2), postings.getPositions(common, 998, 2));
+
+        postings.clear();
+        assertTrue(postings.isEmpty());
+        assertEquals(0, postings.getNumTerms());
+    }
+
+    /**
+     * Test that documents added out of order are rejected
+     */
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test3() {
+        PostingsBuffer postings = new PostingsBuffer();
+        postings.addDocument(2, Arrays.asList("cat"));
+        postings.addDocument(1, Arrays.asList("cat"));
+    }
+
+}
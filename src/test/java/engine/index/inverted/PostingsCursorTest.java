@@ -0,0 +1,155 @@
+package engine.index.inverted;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.DeltaVarLenCompressor;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class PostingsCursorTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/PostingsCursorTest";
+    private InvertedIndexManager iim;
+    private int numDocs = 1000;
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 400;
+    }
+
+    /**
+     * the text of the i-th document: "a" in every other document, "b" in every third, "c" in every fifth and "d" in
+     * every seventh, in this order
+     */
+
+    private static String text(int i) {
+        StringBuilder text = new StringBuilder("doc");
+        if (i % 2 == 0) {
+            text.append(" a");
+        }
+        if (i % 3 == 0) {
+            text.append(" b");
+        }
+        if (i % 5 == 0) {
+            text.append(" c");
+        }
+        if (i % 7 == 0) {
+            text.append(" d");
+        }
+        return text.toString();
+    }
+
+    /**
+     * add the documents, then delete the ones having "d"
+     */
+
+    private void addDocuments() {
+        for (int i = 0; i < numDocs; i++) {
+            iim.addDocument(new Document(text(i)));
+        }
+        iim.flush();
+        iim.deleteDocuments("d");
+    }
+
+    /**
+     * get the texts of the documents of an iterator
+     */
+
+    private static List<String> texts(Iterator<Document> itr) {
+        List<String> texts = new ArrayList<>();
+        while (itr.hasNext()) {
+            texts.add(itr.next().getText());
+        }
+        return texts;
+    }
+
+    /**
+     * Test the keyword, and, or searches on posting lists of several blocks in several segments, skipping the deleted
+     * documents
+     */
+
+    @Test
+    public void test1() {
+        iim = InvertedIndexManager.createOrOpen(file, an);
+        addDocuments();
+
+        List<String> expectedAnd = new ArrayList<>();
+        List<String> expectedOr = new ArrayList<>();
+        List<String> expectedKeyword = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            if (i % 7 == 0) {
+                continue;
+            }
+            if (i % 2 == 0 && i % 3 == 0 && i % 5 == 0) {
+                expectedAnd.add(text(i));
+            }
+            if (i % 3 == 0 || i % 5 == 0) {
+                expectedOr.add(text(i));
+            }
+            if (i % 2 == 0) {
+                expectedKeyword.add(text(i));
+            }
+        }
+
+        assertEquals(expectedKeyword, texts(iim.searchQuery("a")));
+        assertEquals(expectedAnd, texts(iim.searchAndQuery(Arrays.asList("a", "b", "c"))));
+        assertEquals(expectedAnd, texts(iim.searchAndQuery(Arrays.asList("c", "a", "b", "a"))));
+        assertEquals(expectedOr, texts(iim.searchOrQuery(Arrays.asList("b", "c", "b", "e"))));
+        assertEquals(new ArrayList<>(), texts(iim.searchAndQuery(Arrays.asList("a", "e"))));
+    }
+
+    /**
+     * Test the phrase search on posting lists of several blocks in several segments, skipping the deleted documents
+     */
+
+    @Test
+    public void test2() {
+        iim = InvertedIndexManager.createOrOpenPositional(file, an, new DeltaVarLenCompressor());
+        addDocuments();
+
+        List<String> expectedAB = new ArrayList<>();
+        List<String> expectedABC = new ArrayList<>();
+        for (int i = 0; i < numDocs; i++) {
+            if (i % 7 == 0 || i % 2 != 0 || i % 3 != 0) {
+                continue;
+            }
+            expectedAB.add(text(i));
+            if (i % 5 == 0) {
+                expectedABC.add(text(i));
+            }
+        }
+
+        assertEquals(expectedAB, texts(iim.searchPhraseQuery(Arrays.asList("a", "b"))));
+        assertEquals(expectedABC, texts(iim.searchPhraseQuery(Arrays.asList("doc", "a", "b", "c"))));
+        assertEquals(new ArrayList<>(), texts(iim.searchPhraseQuery(Arrays.asList("b", "a"))));
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+    }
+
+}
@@ -0,0 +1,134 @@
+package engine.index.inverted;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RamBudgetFlushTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/RamBudgetFlushTest";
+    private InvertedIndexManager iim;
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 1000;
+        iim = InvertedIndexManager.createOrOpen(file, an);
+    }
+
+    /**
+     * Test that the buffered bytes grow with the documents added and drop back after a flush
+     */
+
+    @Test
+    public void test1() {
+        long before = iim.getBufferedBytes();
+        iim.addDocument(new Document("cat dog wolf"));
+        long small = iim.getBufferedBytes();
+        assertTrue(small > before);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            sb.append("word").append(i).append(" ");
+        }
+        iim.addDocument(new Document(sb.toString()));
+        assertTrue(iim.getBufferedBytes() > small + 1000 * 8);
+
+        iim.flush();
+        assertEquals(1, iim.getNumSegments());
+        assertEquals(before, iim.getBufferedBytes());
+    }
+
+    /**
+     * Test that a few large documents are flushed once the RAM budget is reached
+     */
+
+    @Test
+    public void test2() {
+        InvertedIndexManager.DEFAULT_FLUSH_RAM_BUDGET = 64 * 1024;
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            sb.append("word").append(i).append(" ");
+        }
+        for (int i = 0; i < 5; i++) {
+            iim.addDocument(new Document(sb.toString()));
+        }
+        assertTrue(iim.getNumSegments() >= 2);
+        assertTrue(iim.getBufferedBytes() < InvertedIndexManager.DEFAULT_FLUSH_RAM_BUDGET);
+        iim.flush();
+
+        int total = 0;
+        for (int seg = 0; seg < iim.getNumSegments(); seg++) {
+            total += iim.getDocumentFrequency(seg, "word7");
+        }
+        assertEquals(5, total);
+    }
+
+    /**
+     * Test that the RAM budget covers the buffers of all the indexing threads together, each thread adds a document
+     * smaller than the budget, and the largest buffer is flushed once the buffers together reach it
+     */
+
+    @Test
+    public void test3() throws InterruptedException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            sb.append("word").append(i).append(" ");
+        }
+        Document doc = new Document(sb.toString());
+        addInNewThread(doc);
+        long docBytes = iim.getBufferedBytes();
+        InvertedIndexManager.DEFAULT_FLUSH_RAM_BUDGET = docBytes * 5 / 2;
+
+        for (int i = 0; i < 3; i++) {
+            addInNewThread(doc);
+        }
+        assertEquals(2, iim.getNumSegments());
+        assertTrue(iim.getBufferedBytes() < InvertedIndexManager.DEFAULT_FLUSH_RAM_BUDGET);
+        iim.flush();
+
+        int total = 0;
+        for (int seg = 0; seg < iim.getNumSegments(); seg++) {
+            total += iim.getDocumentFrequency(seg, "word7");
+        }
+        assertEquals(4, total);
+    }
+
+    /**
+     * add a document from a new indexing thread, and wait for it
+     */
+
+    private void addInNewThread(Document doc) throws InterruptedException {
+        Thread thread = new Thread(() -> iim.addDocument(doc));
+        thread.start();
+        thread.join();
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 8;
+        InvertedIndexManager.DEFAULT_FLUSH_RAM_BUDGET = 64L * 1024 * 1024;
+    }
+
+}
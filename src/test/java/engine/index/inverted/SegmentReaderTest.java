@@ -0,0 +1,83 @@
+package engine.index.inverted;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+
+public class SegmentReaderTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/SegmentReaderTest";
+    private InvertedIndexManager iim;
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 1000;
+        iim = InvertedIndexManager.createOrOpen(file, an);
+    }
+
+    /**
+     * Test that the opened segments see the segment written by a later flush
+     */
+
+    @Test
+    public void test1() {
+        iim.addDocument(new Document("cat dog"));
+        iim.addDocument(new Document("cat wolf"));
+        iim.flush();
+        assertEquals(2, iim.getDocumentFrequency(0, "cat"));
+        assertEquals(0, iim.getDocumentFrequency(1, "cat"));
+
+        iim.addDocument(new Document("cat bird"));
+        iim.flush();
+        assertEquals(2, iim.getDocumentFrequency(0, "cat"));
+        assertEquals(1, iim.getDocumentFrequency(1, "cat"));
+        assertEquals(1, iim.getDocumentFrequency(1, "bird"));
+    }
+
+    /**
+     * Test that the opened segments are dropped when they are merged away
+     */
+
+    @Test
+    public void test2() {
+        iim.addDocument(new Document("cat dog"));
+        iim.flush();
+        iim.addDocument(new Document("cat wolf"));
+        iim.flush();
+        assertEquals(1, iim.getDocumentFrequency(0, "cat"));
+        assertEquals(1, iim.getDocumentFrequency(1, "wolf"));
+
+        iim.mergeAllSegments();
+        assertEquals(1, iim.getNumSegments());
+        assertEquals(2, iim.getDocumentFrequency(0, "cat"));
+        assertEquals(1, iim.getDocumentFrequency(0, "wolf"));
+        assertEquals(1, iim.getDocumentFrequency(0, "dog"));
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_MERGE_THRESHOLD = 8;
+    }
+
+}
@@ -0,0 +1,93 @@
+package engine.index.inverted;
+
+import engine.index.PageFileChannel;
+import engine.index.SegmentWriter;
+import engine.index.WordInfo;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class SegmentWriterTest {
+
+    private String file = "./index/SegmentWriterTest";
+    private int pageSize;
+
+    @Before
+    public void setup() {
+        pageSize = PageFileChannel.PAGE_SIZE;
+        new File(file).mkdirs();
+    }
+
+    /**
+     * Test that the bytes written across several pages are read back in order, and that the file is only as long as
+     * the bytes written, rounded up to a page
+     */
+
+    @Test
+    public void test1() throws Exception {
+        PageFileChannel.PAGE_SIZE = 16;
+        SegmentWriter writer = new SegmentWriter(file, 0);
+        WordInfo wi = new WordInfo();
+        wi.setWordInfo("cat", 0, 0, 10);
+        writer.addWord(wi);
+        writer.writeBytes("b", new byte[] {1, 2, 3});
+        for (int i = 0; i < 10; i++) {
+            writer.writeInt("b", i);
+        }
+        assertEquals(43, writer.getOffset("b"));
+        assertEquals(0, writer.getOffset("c"));
+        writer.close();
+
+        byte[] bytes = Files.readAllBytes(Paths.get(file + "/segment0b"));
+        assertEquals(48, bytes.length);
+        assertArrayEquals(new byte[] {1, 2, 3}, new byte[] {bytes[0], bytes[1], bytes[2]});
+        ByteBuffer bb = ByteBuffer.wrap(bytes);
+        bb.position(3);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, bb.getInt());
+        }
+        assertFalse(Files.exists(Paths.get(file + "/segment0c")));
+    }
+
+    /**
+     * Test that a new writer replaces the files of an older segment with the same ID
+     */
+
+    @Test
+    public void test2() throws Exception {
+        SegmentWriter writer = new SegmentWriter(file, 0);
+        writer.writeInt("d", 7);
+        writer.close();
+        assertEquals(PageFileChannel.PAGE_SIZE, Files.size(Paths.get(file + "/segment0d")));
+
+        writer = new SegmentWriter(file, 0);
+        writer.writeInt("b", 1);
+        writer.close();
+        assertFalse(Files.exists(Paths.get(file + "/segment0d")));
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.PAGE_SIZE = pageSize;
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+    }
+
+}
@@ -0,0 +1,103 @@
+package engine.index.inverted;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.index.Pair;
+import engine.index.TieredMergePolicy;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TieredMergeTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/TieredMergeTest";
+    private InvertedIndexManager iim;
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+        iim = InvertedIndexManager.createOrOpen(file, an);
+    }
+
+    /**
+     * Test that the policy merges runs of similarly sized segments, skips merges above the max merged size, and bounds
+     * the merges per tier
+     */
+
+    @Test
+    public void test1() {
+        TieredMergePolicy policy = new TieredMergePolicy(3, 100, 10000, 2);
+        assertEquals(Arrays.asList(), policy.findMerges(new long[] {10, 20}));
+        assertEquals(Arrays.asList(Pair.of(0, 3)), policy.findMerges(new long[] {10, 20, 30}));
+
+        // the large segment splits the small ones into a run of 2 and a run of 3
+        assertEquals(Arrays.asList(Pair.of(3, 6)), policy.findMerges(new long[] {10, 20, 5000, 30, 40, 50}));
+
+        // 3 segments of the same tier are merged unless the merged segment would be over the max merged size
+        assertEquals(Arrays.asList(Pair.of(0, 3)), policy.findMerges(new long[] {3000, 3000, 3000}));
+        assertEquals(Arrays.asList(), policy.findMerges(new long[] {4000, 4000, 4000}));
+
+        // at most 2 merges of tier 0
+        assertEquals(Arrays.asList(Pair.of(0, 3), Pair.of(3, 6)), policy.findMerges(new long[9]));
+    }
+
+    /**
+     * Test that the segments flushed under a tiered policy are merged into tiers, keeping all the documents in order
+     */
+
+    @Test
+    public void test2() {
+        iim.setMergePolicy(new TieredMergePolicy(3, 1024 * 1024, Long.MAX_VALUE, 2));
+        for (int i = 0; i < 10; i++) {
+            iim.addDocument(new Document("cat doc" + i));
+            iim.flush();
+            assertTrue(iim.getNumSegments() < 3);
+        }
+
+        // 10 flushed segments: 9 merged into 3 of tier 0, which are merged again into one, and the last one
+        assertEquals(2, iim.getNumSegments());
+        assertEquals(9, iim.getNumDocuments(0));
+        assertEquals(1, iim.getNumDocuments(1));
+        assertEquals(9, iim.getDocumentFrequency(0, "cat"));
+        assertEquals(1, iim.getDocumentFrequency(1, "doc9"));
+
+        List<String> texts = new ArrayList<>();
+        Iterator<Document> itr = iim.documentIterator();
+        while (itr.hasNext()) {
+            texts.add(itr.next().getText());
+        }
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            expected.add("cat doc" + i);
+        }
+        assertEquals(expected, texts);
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+    }
+
+}
@@ -0,0 +1,93 @@
+package engine.index.positional;
+
+import com.google.common.collect.Table;
+import com.google.common.collect.TreeBasedTable;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.DeltaVarLenCompressor;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.index.PositionalIndexSegmentForTest;
+import engine.index.TieredMergePolicy;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+
+public class MultiSegmentMergeTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/MultiSegmentMergeTest";
+    private InvertedIndexManager iim;
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 3;
+        iim = InvertedIndexManager.createOrOpenPositional(file, an, new DeltaVarLenCompressor());
+    }
+
+    /**
+     * Test that 4 segments are merged at once into one segment with the same documents, posting lists and position
+     * lists as if the documents were flushed together
+     */
+
+    @Test
+    public void test1() {
+        iim.setMergePolicy(new TieredMergePolicy(4, 1024 * 1024, Long.MAX_VALUE, 1));
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            texts.add("cat w" + i % 5 + " dog cat w" + i % 3);
+        }
+        for (String text : texts) {
+            iim.addDocument(new Document(text));
+        }
+        assertEquals(1, iim.getNumSegments());
+
+        Map<String, List<Integer>> expectedLists = new TreeMap<>();
+        Map<Integer, Document> expectedDocs = new TreeMap<>();
+        Table<String, Integer, List<Integer>> expectedPositions = TreeBasedTable.create();
+        for (int docID = 0; docID < texts.size(); docID++) {
+            expectedDocs.put(docID, new Document(texts.get(docID)));
+            String[] words = texts.get(docID).split(" ");
+            for (int pos = 0; pos < words.length; pos++) {
+                if (!expectedPositions.contains(words[pos], docID)) {
+                    expectedLists.computeIfAbsent(words[pos], w -> new ArrayList<>()).add(docID);
+                    expectedPositions.put(words[pos], docID, new ArrayList<>());
+                }
+                expectedPositions.get(words[pos], docID).add(pos);
+            }
+        }
+
+        PositionalIndexSegmentForTest segment = iim.getIndexSegmentPositional(0);
+        assertEquals(expectedLists, segment.getInvertedLists());
+        assertEquals(expectedDocs, segment.getDocuments());
+        assertEquals(expectedPositions, segment.getPositions());
+        assertEquals(12, iim.getDocumentFrequency(0, "cat"));
+        assertEquals(6, iim.getDocumentFrequency(0, "w0"));
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+    }
+
+}
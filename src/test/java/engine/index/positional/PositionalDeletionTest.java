@@ -0,0 +1,133 @@
+package engine.index.positional;
+
+import com.google.common.collect.Table;
+import com.google.common.collect.TreeBasedTable;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.DeltaVarLenCompressor;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.index.Pair;
+import engine.index.PositionalIndexSegmentForTest;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PositionalDeletionTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/PositionalDeletionTest";
+    private InvertedIndexManager iim;
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 3;
+        iim = InvertedIndexManager.createOrOpenPositional(file, an, new DeltaVarLenCompressor());
+        iim.addDocument(new Document("cat dog bird"));
+        iim.addDocument(new Document("dog bird wolf"));
+        iim.addDocument(new Document("cat bird dog"));
+        iim.addDocument(new Document("wolf dog bird"));
+        iim.addDocument(new Document("dog bird cat"));
+        iim.addDocument(new Document("bird dog"));
+    }
+
+    /**
+     * get the texts of the documents of an iterator
+     */
+
+    private static List<String> texts(Iterator<Document> itr) {
+        List<String> texts = new ArrayList<>();
+        while (itr.hasNext()) {
+            texts.add(itr.next().getText());
+        }
+        return texts;
+    }
+
+    /**
+     * Test that the phrase and tf-idf searches skip the deleted documents, and that the deletions, written at flush to
+     * their own file, leave the offsets of the position lists as they are
+     */
+
+    @Test
+    public void test1() {
+        long offsetsLength = new File(file + "/segment0d").length();
+        iim.deleteDocuments("cat");
+        iim.flush();
+
+        assertTrue(new File(file + "/segment0_1.liv").exists());
+        assertEquals(offsetsLength, new File(file + "/segment0d").length());
+        assertEquals(Arrays.asList("dog bird wolf", "wolf dog bird"),
+                texts(iim.searchPhraseQuery(Arrays.asList("dog", "bird"))));
+        assertEquals(Collections.emptyList(), texts(iim.searchPhraseQuery(Arrays.asList("bird", "cat"))));
+
+        int numResults = 0;
+        Iterator<Pair<Document, Double>> itr = iim.searchTfIdf(Arrays.asList("dog", "cat"), null);
+        while (itr.hasNext()) {
+            assertFalse(itr.next().getLeft().getText().contains("cat"));
+            numResults += 1;
+        }
+        assertEquals(3, numResults);
+    }
+
+    /**
+     * Test that a merge drops the postings and the position lists of the deleted documents
+     */
+
+    @Test
+    public void test2() {
+        iim.deleteDocuments("wolf");
+        iim.mergeAllSegments();
+
+        List<String> texts = Arrays.asList("cat dog bird", "cat bird dog", "dog bird cat", "bird dog");
+        Map<String, List<Integer>> expectedLists = new TreeMap<>();
+        Map<Integer, Document> expectedDocs = new TreeMap<>();
+        Table<String, Integer, List<Integer>> expectedPositions = TreeBasedTable.create();
+        for (int docID = 0; docID < texts.size(); docID++) {
+            expectedDocs.put(docID, new Document(texts.get(docID)));
+            String[] words = texts.get(docID).split(" ");
+            for (int pos = 0; pos < words.length; pos++) {
+                expectedLists.computeIfAbsent(words[pos], w -> new ArrayList<>()).add(docID);
+                expectedPositions.put(words[pos], docID, Collections.singletonList(pos));
+            }
+        }
+
+        assertEquals(1, iim.getNumSegments());
+        PositionalIndexSegmentForTest segment = iim.getIndexSegmentPositional(0);
+        assertEquals(expectedLists, segment.getInvertedLists());
+        assertEquals(expectedDocs, segment.getDocuments());
+        assertEquals(expectedPositions, segment.getPositions());
+        assertEquals(Arrays.asList("cat dog bird", "dog bird cat"),
+                texts(iim.searchPhraseQuery(Arrays.asList("dog", "bird"))));
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+    }
+
+}
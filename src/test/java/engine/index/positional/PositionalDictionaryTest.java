@@ -0,0 +1,74 @@
+package engine.index.positional;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.DeltaVarLenCompressor;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+
+public class PositionalDictionaryTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/PositionalDictionaryTest";
+    private InvertedIndexManager iim;
+
+    @Before
+    public void setup() {
+        iim = InvertedIndexManager.createOrOpenPositional(file, an, new DeltaVarLenCompressor());
+    }
+
+    /**
+     * Test that a positional dictionary written before the block format, the number of its bytes on the first page
+     * and records without the largest impact of their posting list, is still readable
+     */
+
+    @Test
+    public void test1() {
+        ByteBuffer wordsBuffer = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE * 4);
+        for (int i = 0; i < 500; i++) {
+            byte[] word = String.format("w%04d", i).getBytes(StandardCharsets.UTF_8);
+            wordsBuffer.putInt(word.length);
+            wordsBuffer.put(word);
+            wordsBuffer.putInt(0);
+            wordsBuffer.putInt(i % 7 + 1);
+            wordsBuffer.putInt(0);
+            wordsBuffer.putInt(0);
+        }
+        ByteBuffer firstPage = ByteBuffer.allocate(PageFileChannel.PAGE_SIZE);
+        firstPage.putInt(wordsBuffer.position());
+        PageFileChannel pfc = PageFileChannel.createOrOpen(Paths.get(file + "/segment0a"));
+        pfc.appendPage(firstPage);
+        pfc.appendAllBytes(wordsBuffer);
+        pfc.close();
+
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i % 7 + 1, iim.getDocumentFrequency(0, String.format("w%04d", i)));
+        }
+        assertEquals(0, iim.getDocumentFrequency(0, "z"));
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+    }
+
+}
@@ -0,0 +1,104 @@
+package engine.index.ranking;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.DeltaVarLenCompressor;
+import engine.index.InvertedIndexManager;
+import engine.index.Pair;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+
+public class IndexStatisticsTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/IndexStatisticsTest";
+    private InvertedIndexManager iim;
+
+    /**
+     * check that the best result of the query "a b" is the document "a b", with the score given by the IDF of "a" and
+     * "b" for N documents of which dfA have "a" and dfB have "b"
+     */
+
+    private void checkScore(int N, int dfA, int dfB) {
+        double idfA = Math.log((double) N / dfA);
+        double idfB = Math.log((double) N / dfB);
+        Iterator<Pair<Document, Double>> itr = iim.searchTfIdf(Arrays.asList("a", "b"), 1);
+        Pair<Document, Double> top = itr.next();
+        assertEquals("a b", top.getLeft().getText());
+        assertEquals((idfA * idfA + idfB * idfB) / Math.sqrt(2), top.getRight(), 1e-9);
+    }
+
+    /**
+     * add the documents and check the statistics after a flush, another flush, a deletion and a merge
+     */
+
+    private void checkStatistics() {
+        iim.addDocument(new Document("a b"));
+        iim.addDocument(new Document("a c"));
+        iim.addDocument(new Document("c"));
+        iim.flush();
+        assertEquals(3, iim.getNumDocuments(0));
+        checkScore(3, 2, 1);
+        // the statistics are cached, and give the same IDF again
+        checkScore(3, 2, 1);
+
+        iim.addDocument(new Document("b"));
+        iim.addDocument(new Document("c"));
+        iim.addDocument(new Document("c"));
+        iim.flush();
+        assertEquals(2, iim.getNumSegments());
+        checkScore(6, 2, 2);
+
+        // the deleted documents count until their segment is merged
+        iim.deleteDocuments("c");
+        checkScore(6, 2, 2);
+
+        iim.mergeAllSegments();
+        assertEquals(1, iim.getNumSegments());
+        assertEquals(2, iim.getNumDocuments(0));
+        assertEquals(1, iim.getDocumentFrequency(0, "a"));
+        assertEquals(2, iim.getDocumentFrequency(0, "b"));
+        checkScore(2, 1, 2);
+    }
+
+    /**
+     * Test that the IDF of the ranked search of an inverted index follows the flushes and the merges
+     */
+
+    @Test
+    public void test1() {
+        iim = InvertedIndexManager.createOrOpen(file, an);
+        checkStatistics();
+    }
+
+    /**
+     * Test that the IDF of the ranked search of a positional index follows the flushes and the merges
+     */
+
+    @Test
+    public void test2() {
+        iim = InvertedIndexManager.createOrOpenPositional(file, an, new DeltaVarLenCompressor());
+        checkStatistics();
+    }
+
+    @After
+    public void cleanUp() {
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+    }
+
+}
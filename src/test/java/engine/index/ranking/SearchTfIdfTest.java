@@ -187,10 +187,11 @@ public class SearchTfIdfTest {
             manager.mergeAllSegments();
         List<String> keywords = new ArrayList<>(Arrays.asList("fold","ears","round"));
         Iterator<Pair<Document, Double>> it = manager.searchTfIdf(keywords,3);
+        // the scores are normalized by the length of the whole documents, so the long docs[3] comes last
         List<Document> dList = new ArrayList<>();
         dList.add(docs[2]);
-        dList.add(docs[3]);
         dList.add(docs[0]);
+        dList.add(docs[1]);
         TestCase.assertTrue(it.hasNext());
         int counter = 0;
         while (it.hasNext()){
@@ -0,0 +1,323 @@
+package engine.index.ranking;
+
+import engine.analysis.Analyzer;
+import engine.analysis.NaiveAnalyzer;
+import engine.index.BlockPostings;
+import engine.index.DeltaVarLenCompressor;
+import engine.index.InvertedIndexManager;
+import engine.index.PageFileChannel;
+import engine.index.Pair;
+import engine.storage.Document;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WandTest {
+
+    private Analyzer an = new NaiveAnalyzer();
+    private String file = "./index/WandTest";
+    private InvertedIndexManager iim;
+    private List<String> texts = new ArrayList<>();
+    private List<List<String>> queries = Arrays.asList(
+            Arrays.asList("w0"),
+            Arrays.asList("w0", "w7"),
+            Arrays.asList("w1", "w12", "w25"),
+            Arrays.asList("w3", "w3", "w30"),
+            Arrays.asList("w0", "w1", "w2", "w40", "missing"));
+
+    @Before
+    public void setup() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 200;
+
+        // the frequency of the i-th word decreases with i
+        Random random = new Random(42);
+        for (int i = 0; i < 600; i++) {
+            StringBuilder text = new StringBuilder();
+            int length = 3 + random.nextInt(10);
+            for (int j = 0; j < length; j++) {
+                double r = random.nextDouble();
+                text.append(j == 0 ? "" : " ").append("w").append((int) (50 * r * r * r));
+            }
+            texts.add(text.toString());
+        }
+    }
+
+    /**
+     * add the documents, then delete a few of them
+     */
+
+    private void addDocuments() {
+        for (String text : texts) {
+            iim.addDocument(new Document(text));
+        }
+        iim.flush();
+        iim.deleteDocuments("w49");
+    }
+
+    /**
+     * get the results of a ranked search
+     */
+
+    private static List<Pair<Document, Double>> results(Iterator<Pair<Document, Double>> itr) {
+        List<Pair<Document, Double>> results = new ArrayList<>();
+        while (itr.hasNext()) {
+            results.add(itr.next());
+        }
+        return results;
+    }
+
+    /**
+     * compute the scores of the documents which are not deleted for a query, one by one, by text as some documents have
+     * the same text
+     */
+
+    private Map<String, Double> bruteForce(List<String> query, boolean keepZeroScores, List<String> matching) {
+        List<String> live = new ArrayList<>();
+        for (String text : texts) {
+            if (!Arrays.asList(text.split(" ")).contains("w49")) {
+                live.add(text);
+            }
+        }
+        Set<String> words = new HashSet<>(query);
+        Map<String, Double> idfs = new HashMap<>();
+        for (String w : words) {
+            int df = 0;
+            for (String text : texts) {
+                df += Arrays.asList(text.split(" ")).contains(w) ? 1 : 0;
+            }
+            // the number of documents and the document frequencies count the deleted documents until they are merged
+            idfs.put(w, words.size() == 1 ? 1.0 : Math.log((double) texts.size() / df));
+        }
+
+        Map<String, Double> scores = new HashMap<>();
+        for (String text : live) {
+            List<String> tokens = Arrays.asList(text.split(" "));
+            double dotProduct = 0;
+            boolean matches = false;
+            for (String w : words) {
+                int tf = 0;
+                for (String token : tokens) {
+                    tf += token.equals(w) ? 1 : 0;
+                }
+                if (tf == 0) {
+                    continue;
+                }
+                matches = true;
+                int queryTf = words.size() == 1 ? 1 : (int) query.stream().filter(w::equals).count();
+                double tfIdf = tf * idfs.get(w);
+                dotProduct += tfIdf * queryTf * idfs.get(w);
+            }
+            if (dotProduct != 0.0) {
+                scores.put(text, dotProduct / norm(tokens));
+                matching.add(text);
+            }
+            else if (matches && keepZeroScores) {
+                scores.put(text, 0.0);
+                matching.add(text);
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * the length of the vector of the frequencies of all the terms of a document
+     */
+
+    private static double norm(List<String> tokens) {
+        Map<String, Integer> freqs = new HashMap<>();
+        for (String token : tokens) {
+            freqs.merge(token, 1, Integer::sum);
+        }
+        long sumSquares = 0;
+        for (int freq : freqs.values()) {
+            sumSquares += freq * freq;
+        }
+        return Math.sqrt(sumSquares);
+    }
+
+    /**
+     * check that the top-k results are the first k of all the results, whose scores are the ones of every document
+     */
+
+    private void checkResults(boolean keepZeroScores) {
+        for (List<String> query : queries) {
+            List<Pair<Document, Double>> all = results(iim.searchTfIdf(query, null));
+            List<String> matching = new ArrayList<>();
+            Map<String, Double> expected = bruteForce(query, keepZeroScores, matching);
+            assertEquals(matching.size(), all.size());
+            for (int i = 0; i < all.size(); i++) {
+                assertEquals(expected.get(all.get(i).getLeft().getText()), all.get(i).getRight(), 1e-9);
+                if (i > 0) {
+                    assertTrue(all.get(i - 1).getRight() >= all.get(i).getRight());
+                }
+            }
+
+            for (int k : new int[] {1, 5, 20, 100}) {
+                List<Pair<Document, Double>> top = results(iim.searchTfIdf(query, k));
+                assertEquals(all.subList(0, Math.min(k, all.size())), top);
+            }
+        }
+    }
+
+    /**
+     * Test that the top-k results of the ranked search of an inverted index are the same as without skipping any
+     * document
+     */
+
+    @Test
+    public void test1() {
+        iim = InvertedIndexManager.createOrOpen(file, an);
+        addDocuments();
+        checkResults(false);
+    }
+
+    /**
+     * Test that the top-k results of the ranked search of a positional index are the same as without skipping any
+     * document
+     */
+
+    @Test
+    public void test2() {
+        iim = InvertedIndexManager.createOrOpenPositional(file, an, new DeltaVarLenCompressor());
+        addDocuments();
+        checkResults(true);
+    }
+
+    /**
+     * check that once short documents having the query terms are found, the ranked search skips the blocks of the long
+     * documents without reading them, as their impacts are too low, although they have all the query terms
+     */
+
+    private void checkBlocksSkipped() {
+        StringBuilder filler = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            filler.append(" f").append(i);
+        }
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            iim.addDocument(new Document("a b"));
+            expected.add("a b");
+        }
+        for (int i = 0; i < 1500; i++) {
+            iim.addDocument(new Document("a b" + filler));
+        }
+        for (int i = 0; i < 300; i++) {
+            iim.addDocument(new Document("a z"));
+            iim.addDocument(new Document("x y"));
+        }
+        iim.flush();
+
+        PageFileChannel.resetCounters();
+        List<Pair<Document, Double>> top = results(iim.searchTfIdf(Arrays.asList("a", "b"), 10));
+        int reads = PageFileChannel.readCounter;
+        List<String> texts = new ArrayList<>();
+        for (Pair<Document, Double> result : top) {
+            texts.add(result.getLeft().getText());
+        }
+        assertEquals(expected.subList(0, 10), texts);
+        // reading every block of the two posting lists would take one read per block
+        assertTrue(reads < BlockPostings.getNumBlocks(1820) + BlockPostings.getNumBlocks(1520));
+    }
+
+    /**
+     * Test that the ranked search of an inverted index skips the blocks whose impacts are too low
+     */
+
+    @Test
+    public void test3() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 10000;
+        iim = InvertedIndexManager.createOrOpen(file, an);
+        checkBlocksSkipped();
+    }
+
+    /**
+     * Test that once short documents having the query terms are found, the ranked search skips the segments whose
+     * posting lists of a single block have too low impacts, without reading their postings
+     */
+
+    @Test
+    public void test4() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 100;
+        iim = InvertedIndexManager.createOrOpen(file, an);
+        iim.setMergePolicy(segmentSizes -> Collections.emptyList());
+        StringBuilder filler = new StringBuilder();
+        for (int i = 0; i < 20; i++) {
+            filler.append(" f").append(i);
+        }
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            iim.addDocument(new Document("a b"));
+            expected.add("a b");
+        }
+        for (int i = 0; i < 80; i++) {
+            iim.addDocument(new Document("x y"));
+        }
+        int numSegments = 10;
+        for (int seg = 0; seg < numSegments; seg++) {
+            for (int i = 0; i < 50; i++) {
+                iim.addDocument(new Document("a b" + filler));
+                iim.addDocument(new Document("x y"));
+            }
+        }
+        iim.flush();
+        assertEquals(numSegments + 1, iim.getNumSegments());
+
+        assertEquals(20 + 50 * numSegments, results(iim.searchTfIdf(Arrays.asList("a", "b"), null)).size());
+        PageFileChannel.resetCounters();
+        results(iim.searchTfIdf(Arrays.asList("a", "b"), null));
+        int allReads = PageFileChannel.readCounter;
+
+        PageFileChannel.resetCounters();
+        List<Pair<Document, Double>> top = results(iim.searchTfIdf(Arrays.asList("a", "b"), 10));
+        int reads = PageFileChannel.readCounter;
+        List<String> texts = new ArrayList<>();
+        for (Pair<Document, Double> result : top) {
+            texts.add(result.getLeft().getText());
+        }
+        assertEquals(expected.subList(0, 10), texts);
+        // the two posting lists of every segment of long documents are not read
+        assertTrue(reads <= allReads - 2 * numSegments);
+    }
+
+    /**
+     * Test that the ranked search of a positional index skips the blocks whose impacts are too low
+     */
+
+    @Test
+    public void test5() {
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 10000;
+        iim = InvertedIndexManager.createOrOpenPositional(file, an, new DeltaVarLenCompressor());
+        checkBlocksSkipped();
+    }
+
+    @After
+    public void cleanUp() {
+        PageFileChannel.resetCounters();
+        File local = new File(file);
+        File[] files = local.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        local.delete();
+        InvertedIndexManager.DEFAULT_FLUSH_THRESHOLD = 1000;
+    }
+
+}
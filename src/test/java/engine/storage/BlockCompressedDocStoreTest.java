@@ -0,0 +1,123 @@
+package engine.storage;
+
+import com.google.common.collect.Iterators;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+public class BlockCompressedDocStoreTest {
+
+    private String file = "BlockCompressedDocStoreTest.db";
+    private String mapdbFile = "BlockCompressedDocStoreTest.mapdb";
+    private DocumentStore documentStore;
+
+    @After
+    public void cleanup() throws Exception {
+        if (documentStore != null) {
+            documentStore.close();
+        }
+        Files.deleteIfExists(Paths.get(file));
+        Files.deleteIfExists(Paths.get(mapdbFile));
+        BlockCompressedDocStore.DEFAULT_BLOCK_SIZE = 32 * 1024;
+    }
+
+    /**
+     * documents of repetitive text, the ones whose ID is a multiple of 3 missing
+     */
+
+    private static Map<Integer, Document> documents(int numDocs) {
+        Map<Integer, Document> documents = new TreeMap<>();
+        for (int i = 0; i < numDocs; i++) {
+            if (i % 3 != 0) {
+                documents.put(i, new Document("page " + i + " of the crawl: the quick brown fox jumps over the lazy dog é"));
+            }
+        }
+        return documents;
+    }
+
+    /**
+     * Test that the documents of a bulk-loaded store spanning many blocks are read one by one, in bulk and in order
+     */
+
+    @Test
+    public void test1() {
+        BlockCompressedDocStore.DEFAULT_BLOCK_SIZE = 1024;
+        Map<Integer, Document> documents = documents(3000);
+        documentStore = BlockCompressedDocStore.createWithBulkLoad(file, documents.entrySet().iterator());
+        documentStore.close();
+        assertTrue(BlockCompressedDocStore.isBlockCompressed(file));
+
+        documentStore = BlockCompressedDocStore.createOrOpenReadOnly(file);
+        assertEquals(documents.size(), documentStore.size());
+        for (int i = 2999; i >= -1; i -= 7) {
+            assertEquals(documents.get(i), documentStore.getDocument(i));
+        }
+        assertNull(documentStore.getDocument(3000));
+
+        int[] ids = {0, 1, 2, 5, 6, 1000, 1001, 2998, 2999, 5000};
+        List<Document> expected = new ArrayList<>();
+        for (int id : ids) {
+            expected.add(documents.get(id));
+        }
+        assertEquals(expected, documentStore.getDocuments(ids));
+
+        List<Map.Entry<Integer, Document>> entries = new ArrayList<>();
+        Iterators.addAll(entries, documentStore.iterator());
+        assertEquals(new ArrayList<>(documents.entrySet()), entries);
+        List<Integer> keys = new ArrayList<>();
+        Iterators.addAll(keys, documentStore.keyIterator());
+        assertEquals(new ArrayList<>(documents.keySet()), keys);
+    }
+
+    /**
+     * Test that the documents added to a store are written when it is closed, replacing the ones with the same ID
+     */
+
+    @Test
+    public void test2() {
+        documentStore = BlockCompressedDocStore.createOrOpen(file);
+        assertEquals(0, documentStore.size());
+        documentStore.addDocument(1, new Document("test1"));
+        documentStore.addDocument(3, new Document("test3"));
+        documentStore.close();
+
+        documentStore = BlockCompressedDocStore.createOrOpen(file);
+        documentStore.addDocument(2, new Document("test2"));
+        documentStore.addDocument(3, new Document("test3 updated"));
+        assertEquals(3, documentStore.size());
+        assertEquals(new Document("test3 updated"), documentStore.getDocument(3));
+        documentStore.close();
+
+        documentStore = BlockCompressedDocStore.createOrOpenReadOnly(file);
+        assertEquals(3, documentStore.size());
+        assertEquals(new Document("test1"), documentStore.getDocument(1));
+        assertEquals(new Document("test2"), documentStore.getDocument(2));
+        assertEquals(new Document("test3 updated"), documentStore.getDocument(3));
+        assertNull(documentStore.getDocument(4));
+    }
+
+    /**
+     * Test that compressible documents take less space than in MapDB
+     */
+
+    @Test
+    public void test3() throws Exception {
+        Map<Integer, Document> documents = documents(3000);
+        documentStore = BlockCompressedDocStore.createWithBulkLoad(file, documents.entrySet().iterator());
+        documentStore.close();
+        documentStore = MapdbDocStore.createWithBulkLoad(mapdbFile, documents.entrySet().iterator());
+        documentStore.close();
+        documentStore = null;
+        assertFalse(BlockCompressedDocStore.isBlockCompressed(mapdbFile));
+        assertTrue(Files.size(Paths.get(file)) * 4 < Files.size(Paths.get(mapdbFile)));
+    }
+
+}
@@ -7,6 +7,11 @@ import org.junit.Test;
 
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 
 import static org.junit.Assert.*;
 
@@ -50,4 +55,29 @@ public class MapDocStoreTest {
         documentStore.close();
     }
 
+    @Test
+    public void test3() {
+        // the IDs which are multiples of 3 are missing
+        Map<Integer, Document> documents = new TreeMap<>();
+        for (int i = 0; i < 1000; i++) {
+            if (i % 3 != 0) {
+                documents.put(i, new Document("test" + i));
+            }
+        }
+        documentStore = MapdbDocStore.createWithBulkLoad(file, documents.entrySet().iterator());
+        documentStore.close();
+        documentStore = MapdbDocStore.createOrOpenReadOnly(file);
+
+        // dense IDs are scanned, sparse ones are looked up one by one
+        int[][] queries = {{}, {5}, {1, 2, 3, 4, 5, 6, 7}, {10, 11, 13, 14, 998, 999}, {0, 500, 999, 1000}};
+        for (int[] ids : queries) {
+            List<Document> expected = new ArrayList<>();
+            for (int id : ids) {
+                expected.add(documents.get(id));
+            }
+            assertEquals(Arrays.toString(ids), expected, documentStore.getDocuments(ids));
+        }
+        documentStore.close();
+    }
+
 }